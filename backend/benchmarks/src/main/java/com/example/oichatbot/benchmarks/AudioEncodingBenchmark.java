@@ -0,0 +1,86 @@
+package com.example.oichatbot.benchmarks;
+
+import com.example.oichatbot.domains.Message;
+import com.example.oichatbot.managers.AudioManager;
+import com.example.oichatbot.managers.ExtremeAudioBank;
+import com.example.oichatbot.managers.SpeechCache;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Cost of getting audio into a reply: plain Base64 encoding of a clip, and AudioManager.attachAudio() for
+ * synthesized speech (read from the speech cache and encoded) and extremes (preloaded), with and without inline audio.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AudioEncodingBenchmark {
+
+    @Param({"8192", "32768", "131072"})
+    public int clipBytes;
+
+    @Param({"false", "true"})
+    public boolean inlineAudio;
+
+    private byte[] clip;
+    private String speechClipId;
+    private String extremeClipId;
+    private Path directory;
+
+    @Setup
+    public void setUp() throws IOException {
+        clip = new byte[clipBytes];
+        new Random(42).nextBytes(clip);
+
+        directory = Files.createTempDirectory("audio-benchmark");
+        Path extremes = Files.createDirectories(directory.resolve("extremes"));
+        Files.write(extremes.resolve("goaway.mp3"), clip);
+        ExtremeAudioBank.getInstance().start(extremes.toString(), Collections.singletonList("goaway"), false);
+        extremeClipId = AudioManager.getInstance().extremeClipId("goaway");
+
+        // Tiny memory budget, so speech clips are read from disk like a cold cache would.
+        SpeechCache.getInstance().configure(directory.resolve("tts-cache").toString(), 1L);
+        speechClipId = SpeechCache.key("Benchmark reply " + clipBytes, "FEMALE", "en-US", 0.0, 1.0, 0.0);
+        SpeechCache.getInstance().put(speechClipId, clip);
+
+        AudioManager.getInstance().setInlineAudio(inlineAudio);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        ExtremeAudioBank.getInstance().stop();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Collections.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public String encodeBase64() {
+        return Base64.getEncoder().encodeToString(clip);
+    }
+
+    @Benchmark
+    public Message attachSpeech() {
+        Message message = new Message("Benchmark reply", true);
+        AudioManager.getInstance().attachAudio(message, speechClipId);
+        return message;
+    }
+
+    @Benchmark
+    public Message attachExtreme() {
+        Message message = new Message("Go away!", true);
+        AudioManager.getInstance().attachAudio(message, extremeClipId);
+        return message;
+    }
+}
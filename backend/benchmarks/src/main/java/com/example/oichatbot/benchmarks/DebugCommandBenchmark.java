@@ -0,0 +1,42 @@
+package com.example.oichatbot.benchmarks;
+
+import com.example.oichatbot.domains.ConversationState;
+import com.example.oichatbot.managers.DebugManager;
+import com.example.oichatbot.managers.PersonalityManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DebugManager.parseCommand() for every kind of command, plus the enter/exit checks every message goes through.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DebugCommandBenchmark {
+
+    @Param({"what is your patience", "set desire to 0.5", "set desire 0.5, curiosity 0.2, patience -1", "toggle audio now", "dump state", "do a barrel roll"})
+    public String command;
+
+    private ConversationState state;
+
+    @Setup
+    public void setUp() {
+        state = new ConversationState("benchmark");
+        PersonalityManager.getInstance().initState(state);
+        DebugManager.getInstance().enterDebug(state);
+    }
+
+    @Benchmark
+    public String parseCommand() {
+        return DebugManager.getInstance().parseCommand(state, command);
+    }
+
+    @Benchmark
+    public boolean wantsToEnterDebug() {
+        return DebugManager.getInstance().wantsToEnterDebug(command);
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.oichatbot.benchmarks;
+
+import com.example.oichatbot.domains.ConversationState;
+import com.example.oichatbot.domains.PersonalitySnapshot;
+import com.example.oichatbot.managers.MessageParser;
+import com.example.oichatbot.managers.MessageTemplate;
+import com.example.oichatbot.managers.PersonalityManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MessageParser.parseMessage() for replies with 0, 1 and many emotion blocks.
+ * "parse" is the normal (cached template) path, "compile" is what a never-seen-before reply costs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageParserBenchmark {
+
+    @Param({"0", "1", "16"})
+    public int blocks;
+
+    private String message;
+    private PersonalitySnapshot snapshot;
+
+    @Setup
+    public void setUp() {
+        ConversationState state = new ConversationState("benchmark");
+        PersonalityManager.getInstance().initState(state);
+        snapshot = PersonalityManager.getInstance().takeSnapshot(state);
+
+        StringBuilder sb = new StringBuilder("Hello there, how are you doing today?");
+        for (int i = 0; i < blocks; i++) {
+            // Alternate between blocks that are shown and hidden.
+            sb.append(i % 2 == 0 ? " [Patience;>0.5;I'm in a good mood.]" : " [Patience;<=-0.5;Leave me alone!]");
+        }
+        message = sb.toString();
+        MessageParser.getInstance().getTemplate(message);     // Warm the template cache.
+    }
+
+    @Benchmark
+    public String parse() {
+        return MessageParser.getInstance().parseMessage(snapshot, message);
+    }
+
+    @Benchmark
+    public MessageTemplate compile() {
+        return MessageTemplate.compile(message);
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.oichatbot.benchmarks;
+
+import com.example.oichatbot.domains.Message;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization of a reply, as done by Spring MVC for every /test/chat/post response.
+ * Replies normally only carry an audio URL, inline Base64 audio is what older clients get.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageSerializationBenchmark {
+
+    @Param({"0", "32768"})
+    public int inlineAudioBytes;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private Message message;
+
+    @Setup
+    public void setUp() {
+        message = new Message("Hello there! I'm in a good mood today.", true, "#b0e0e6");
+        message.setAudioUrl("/test/audio/0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef");
+        if (inlineAudioBytes > 0) {
+            byte[] audio = new byte[inlineAudioBytes];
+            new Random(42).nextBytes(audio);
+            message.setAudioFile(Base64.getEncoder().encodeToString(audio));
+        }
+    }
+
+    @Benchmark
+    public byte[] serialize() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(message);
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.oichatbot.benchmarks;
+
+import com.example.oichatbot.domains.ConversationState;
+import com.example.oichatbot.domains.EmotionModifier;
+import com.example.oichatbot.domains.PersonalitySnapshot;
+import com.example.oichatbot.domains.TraitVector;
+import com.example.oichatbot.managers.PersonalityManager;
+import com.example.oichatbot.managers.BinaryLexicon;
+import com.example.oichatbot.managers.PhraseIndex;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Emotion handling: alterEmotions() with the real modifiers.json, phrase matching as input length and lexicon size grow,
+ * and the color/snapshot calculations that run once per reply.
+ * Run from the backend directory, otherwise modifiers.json isn't found and alterEmotions() matches nothing.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PersonalityBenchmark {
+    private static final String[] FILLER = {"the", "weather", "is", "nice", "today", "please", "tell", "me", "about", "yourself"};
+
+    @Param({"8", "64", "512"})
+    public int inputWords;
+
+    @Param({"100", "1000", "10000"})
+    public int lexiconSize;
+
+    private String input;
+    private PhraseIndex lexicon;
+    private BinaryLexicon binaryLexicon;      // Same lexicon, compiled to a memory-mapped file.
+    private ConversationState state;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < inputWords; i++) {
+            sb.append(i > 0 ? " " : "").append(FILLER[random.nextInt(FILLER.length)]);
+            if (i % 16 == 7)
+                sb.append(" stupid");   // Occasional hit in modifiers.json.
+        }
+        input = sb.toString();
+
+        // Synthetic lexicon: half single words, half two-word phrases. "please" and "nice today" are in it, so there are hits.
+        List<EmotionModifier> modifiers = new ArrayList<>();
+        modifiers.add(new EmotionModifier("Patience", "please", 0.05f));
+        modifiers.add(new EmotionModifier("Patience", "nice today", 0.05f));
+        for (int i = modifiers.size(); i < lexiconSize; i++) {
+            String word = "word" + i;
+            modifiers.add(new EmotionModifier("Patience", i % 2 == 0 ? word : word + " phrase" + i, -0.01f));
+        }
+        lexicon = PhraseIndex.build(modifiers);
+        Path file = Files.createTempFile("benchmark", ".lex");
+        file.toFile().deleteOnExit();
+        BinaryLexicon.write(modifiers, file);
+        binaryLexicon = BinaryLexicon.open(file);
+
+        state = new ConversationState("benchmark");
+        PersonalityManager.getInstance().initState(state);
+    }
+
+    @Benchmark
+    public TraitVector alterEmotions() {
+        return PersonalityManager.getInstance().alterEmotions(state, input);
+    }
+
+    @Benchmark
+    public void matchLexicon(Blackhole blackhole) {
+        lexicon.match(input, blackhole::consume);
+    }
+
+    @Benchmark
+    public void matchBinaryLexicon(Blackhole blackhole) {
+        binaryLexicon.match(input, blackhole::consume);
+    }
+
+    @Benchmark
+    public String determineSuggestedColor() {
+        return PersonalityManager.getInstance().determineSuggestedColor(state);
+    }
+
+    @Benchmark
+    public String leadingPersonality() {
+        return PersonalityManager.getInstance().getLeadingPersonality(state);
+    }
+
+    @Benchmark
+    public PersonalitySnapshot takeSnapshot() {
+        return PersonalityManager.getInstance().takeSnapshot(state);
+    }
+}
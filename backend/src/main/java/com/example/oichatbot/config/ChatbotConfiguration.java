@@ -0,0 +1,485 @@
+package com.example.oichatbot.config;
+
+import com.example.oichatbot.managers.AudioManager;
+import com.example.oichatbot.managers.CachingIntentDetector;
+import com.example.oichatbot.managers.DialogFlowBridge;
+import com.example.oichatbot.managers.DialogFlowExportReader;
+import com.example.oichatbot.managers.DialogFlowIntentDetector;
+import com.example.oichatbot.managers.ExceptionManager;
+import com.example.oichatbot.managers.ExtremeAudioBank;
+import com.example.oichatbot.managers.IntentCatalogue;
+import com.example.oichatbot.managers.FutureUtils;
+import com.example.oichatbot.managers.GoogleEndpoint;
+import com.example.oichatbot.managers.GoogleStandInServer;
+import com.example.oichatbot.managers.HybridIntentDetector;
+import com.example.oichatbot.managers.IntentDetector;
+import com.example.oichatbot.managers.LatencyModel;
+import com.example.oichatbot.managers.LocalIntentDetector;
+import com.example.oichatbot.managers.LocalIntentMatcher;
+import com.example.oichatbot.managers.PersonalityManager;
+import com.example.oichatbot.managers.SessionManager;
+import com.example.oichatbot.managers.SpeechCache;
+import com.example.oichatbot.managers.SpeechManager;
+import com.example.oichatbot.managers.StateJournal;
+import com.google.cloud.texttospeech.v1.TextToSpeechClient;
+import com.google.cloud.texttospeech.v1.TextToSpeechSettings;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the chatbot settings from application.properties and hands them to the (singleton) managers at startup.
+ * Long-lived resources (like upstream clients) are created here once and closed when the application shuts down.
+ */
+@Configuration
+public class ChatbotConfiguration {
+    private static final Logger log = LoggerFactory.getLogger(ChatbotConfiguration.class);
+
+    @Value("${chatbot.sessions.max:50000}")
+    private Integer maxSessions;
+
+    @Value("${chatbot.sessions.idle-timeout-minutes:30}")
+    private Long sessionIdleTimeoutMinutes;
+
+    @Value("${chatbot.sessions.stripes:64}")
+    private Integer sessionStripes;
+
+    @Value("${chatbot.intents.backend:dialogflow}")
+    private String intentBackend;
+
+    @Value("${chatbot.dialogflow.project-id:openinno}")
+    private String dialogFlowProjectId;
+
+    @Value("${chatbot.dialogflow.channel-pool-size:4}")
+    private Integer dialogFlowChannelPoolSize;
+
+    @Value("${chatbot.dialogflow.keep-alive-seconds:60}")
+    private Long dialogFlowKeepAliveSeconds;
+
+    @Value("${chatbot.dialogflow.max-concurrent-calls:256}")
+    private Integer dialogFlowMaxConcurrentCalls;
+
+    @Value("${chatbot.intent-cache.enabled:true}")
+    private Boolean intentCacheEnabled;
+
+    @Value("${chatbot.intent-cache.ttl-minutes:60}")
+    private Long intentCacheTtlMinutes;
+
+    @Value("${chatbot.intent-cache.max-entries:10000}")
+    private Integer intentCacheMaxEntries;
+
+    @Value("${chatbot.intent-cache.cache-output-contexts:false}")
+    private Boolean intentCacheOutputContexts;
+
+    @Value("${chatbot.intent-cache.excluded-intents:}")
+    private String intentCacheExcludedIntents;
+
+    @Value("${chatbot.local-intents.enabled:true}")
+    private Boolean localIntentsEnabled;
+
+    @Value("${chatbot.local-intents.export:../dialogflow/DialogFlow export.zip}")
+    private String localIntentsExport;
+
+    @Value("${chatbot.local-intents.language:en}")
+    private String localIntentsLanguage;
+
+    @Value("${chatbot.local-intents.min-confidence:0.75}")
+    private Float localIntentsMinConfidence;
+
+    @Value("${chatbot.modifiers.file:modifiers.json}")
+    private String modifiersFile;
+
+    @Value("${chatbot.emotions.decay-half-life-minutes:20}")
+    private Long emotionDecayHalfLifeMinutes;
+
+    @Value("${chatbot.emotions.baseline:}")
+    private String emotionBaseline;
+
+    @Value("${chatbot.state.enabled:true}")
+    private Boolean stateEnabled;
+
+    @Value("${chatbot.state.directory:state}")
+    private String stateDirectory;
+
+    @Value("${chatbot.state.flush-interval-millis:200}")
+    private Long stateFlushIntervalMillis;
+
+    @Value("${chatbot.state.snapshot-interval-minutes:10}")
+    private Long stateSnapshotIntervalMinutes;
+
+    @Value("${chatbot.state.compact-after-mb:64}")
+    private Long stateCompactAfterMb;
+
+    @Value("${chatbot.state.retention-days:30}")
+    private Long stateRetentionDays;
+
+    @Value("${chatbot.intent-catalogue.refresh-minutes:10}")
+    private Long intentCatalogueRefreshMinutes;
+
+    @Value("${chatbot.pipeline.threads:4}")
+    private Integer pipelineThreads;
+
+    @Value("${chatbot.tts.enabled:true}")
+    private Boolean textToSpeechEnabled;
+
+    @Value("${chatbot.tts-cache.directory:tts-cache}")
+    private String speechCacheDirectory;
+
+    @Value("${chatbot.tts-cache.max-memory-mb:64}")
+    private Long speechCacheMaxMemoryMb;
+
+    @Value("${chatbot.audio.inline:false}")
+    private Boolean inlineAudio;
+
+    @Value("${chatbot.extremes.directory:extremes}")
+    private String extremesDirectory;
+
+    @Value("${chatbot.extremes.hot-reload:true}")
+    private Boolean extremesHotReload;
+
+    @Value("${chatbot.google.endpoint:}")
+    private String googleEndpointOverride;
+
+    @Value("${chatbot.standin.enabled:false}")
+    private Boolean standInEnabled;
+
+    @Value("${chatbot.standin.port:9090}")
+    private Integer standInPort;
+
+    @Value("${chatbot.standin.detect-intent.median-ms:80}")
+    private Double standInDetectIntentMedianMs;
+
+    @Value("${chatbot.standin.detect-intent.p99-ms:400}")
+    private Double standInDetectIntentP99Ms;
+
+    @Value("${chatbot.standin.list-intents.median-ms:150}")
+    private Double standInListIntentsMedianMs;
+
+    @Value("${chatbot.standin.list-intents.p99-ms:600}")
+    private Double standInListIntentsP99Ms;
+
+    @Value("${chatbot.standin.synthesize.median-ms:250}")
+    private Double standInSynthesizeMedianMs;
+
+    @Value("${chatbot.standin.synthesize.p99-ms:1200}")
+    private Double standInSynthesizeP99Ms;
+
+    @Value("${chatbot.standin.fulfillment-chars:120}")
+    private Integer standInFulfillmentChars;
+
+    @Value("${chatbot.standin.intent-count:200}")
+    private Integer standInIntentCount;
+
+    @Value("${chatbot.standin.intent-payload-chars:200}")
+    private Integer standInIntentPayloadChars;
+
+    @Value("${chatbot.standin.audio-bytes:24000}")
+    private Integer standInAudioBytes;
+
+    @Value("${chatbot.logging.debug-sample-rate:1.0}")
+    private Double debugSampleRate;
+
+    private final MeterRegistry meterRegistry;
+    private TextToSpeechClient textToSpeechClient;
+    private GoogleStandInServer standInServer;
+
+    public ChatbotConfiguration(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void configureManagers() throws IOException {
+        TraceSamplingFilter.setSampleRate(debugSampleRate);
+        startStandInServer();
+        DialogFlowBridge.getInstance().setGoogleEndpoint(googleEndpoint());
+        PersonalityManager.getInstance().loadModifiers(modifiersFile);
+        PersonalityManager.getInstance().configureEmotionDecay(emotionDecayHalfLifeMinutes * 60 * 1000L, parseEmotionBaseline());
+        SessionManager.getInstance().configure(maxSessions, sessionIdleTimeoutMinutes * 60 * 1000L, sessionStripes);
+        bind(registry -> Gauge.builder("chatbot.sessions", SessionManager.getInstance(), SessionManager::size)
+                .description("Conversations held in memory")
+                .register(registry));
+        startStateJournal();
+        bind(registry -> Gauge.builder("chatbot.upstream.in-flight", SpeechManager.getInstance(), SpeechManager::getSynthesesInFlight)
+                .description("Text-to-speech calls waiting for a reply")
+                .tag("api", "text-to-speech")
+                .register(registry));
+        SpeechCache.getInstance().configure(speechCacheDirectory, speechCacheMaxMemoryMb * 1024 * 1024);
+        AudioManager.getInstance().setInlineAudio(inlineAudio);
+        ExtremeAudioBank.getInstance().start(extremesDirectory, ExceptionManager.getInstance().getAudioClipNames(), extremesHotReload);
+        SpeechManager.getInstance().setTextToSpeechClient(createTextToSpeechClient());
+        // Listing intents needs DialogFlow (or the stand-in), the local backend has no agent to list.
+        if (!"local".equalsIgnoreCase(intentBackend) || standInServer != null)
+            IntentCatalogue.getInstance().start(dialogFlowProjectId, intentCatalogueRefreshMinutes);
+        else
+            log.info("Intent catalogue disabled, the local intent backend has no agent to list.");
+    }
+
+    @PreDestroy
+    public void stopManagers() {
+        StateJournal.getInstance().stop();
+        ExtremeAudioBank.getInstance().stop();
+        IntentCatalogue.getInstance().stop();
+        DialogFlowBridge.getInstance().close();
+        SpeechManager.getInstance().setTextToSpeechClient(null);
+        if (textToSpeechClient != null)
+            textToSpeechClient.close();
+        if (standInServer != null)
+            standInServer.stop();
+    }
+
+    /**
+     * Start the local imitation of the Google APIs, if enabled (offline load testing).
+     * @throws IOException If the port could not be bound.
+     */
+    private void startStandInServer() throws IOException {
+        if (!standInEnabled)
+            return;
+
+        standInServer = new GoogleStandInServer(standInPort);
+        standInServer.setDetectIntentLatency(new LatencyModel(standInDetectIntentMedianMs, standInDetectIntentP99Ms));
+        standInServer.setListIntentsLatency(new LatencyModel(standInListIntentsMedianMs, standInListIntentsP99Ms));
+        standInServer.setSynthesizeLatency(new LatencyModel(standInSynthesizeMedianMs, standInSynthesizeP99Ms));
+        standInServer.setFulfillmentChars(standInFulfillmentChars);
+        standInServer.setIntentCount(standInIntentCount);
+        standInServer.setIntentPayloadChars(standInIntentPayloadChars);
+        standInServer.setAudioBytes(standInAudioBytes);
+        standInServer.start();
+    }
+
+    /**
+     * Register meters in Spring's registry (the one Actuator exposes), never in Micrometer's global one,
+     * so they disappear together with the application context.
+     * @param binder Registers the meters.
+     */
+    private void bind(MeterBinder binder) {
+        binder.bindTo(meterRegistry);
+    }
+
+    /**
+     * Restore the conversations saved before the last shutdown and keep saving changes, if enabled.
+     * If the state directory can't be used the bot still starts, every conversation then starts fresh after a restart.
+     */
+    private void startStateJournal() {
+        if (!stateEnabled)
+            return;
+
+        StateJournal journal = StateJournal.getInstance();
+        try {
+            journal.start(Paths.get(stateDirectory), stateFlushIntervalMillis, stateSnapshotIntervalMinutes, stateCompactAfterMb * 1024 * 1024,
+                    stateRetentionDays);
+        } catch (IOException e) {
+            log.error("Could not use conversation state directory {}, conversations won't survive a restart: {}", stateDirectory, e.toString());
+            return;
+        }
+        bind(registry -> FunctionCounter.builder("chatbot.state.records", journal, StateJournal::getRecordsWritten)
+                .description("Conversation changes written to the state journal")
+                .register(registry));
+        bind(registry -> FunctionCounter.builder("chatbot.state.syncs", journal, StateJournal::getSyncs)
+                .description("Batches synced to disk (one per flush with changes)")
+                .register(registry));
+        bind(registry -> Gauge.builder("chatbot.state.pending", journal, StateJournal::getPending)
+                .description("Changed conversations waiting for the next flush")
+                .register(registry));
+        bind(registry -> Gauge.builder("chatbot.state.saved", journal, StateJournal::getSaved)
+                .description("Conversations on disk, in memory or not")
+                .register(registry));
+    }
+
+    /**
+     * Where every Google API client connects to. An explicit chatbot.google.endpoint wins,
+     * otherwise the stand-in server (if enabled), otherwise Google itself.
+     * @return The endpoint.
+     */
+    private GoogleEndpoint googleEndpoint() {
+        if (!googleEndpointOverride.trim().isEmpty())
+            return new GoogleEndpoint(googleEndpointOverride);
+        if (standInServer != null)
+            return new GoogleEndpoint("localhost:" + standInServer.getPort());
+        return GoogleEndpoint.google();
+    }
+
+    /**
+     * Create the one text-to-speech client shared by every conversation.
+     * @return The client, or null if text-to-speech is disabled or the client could not be created (replies go without audio).
+     */
+    private TextToSpeechClient createTextToSpeechClient() {
+        if (!textToSpeechEnabled)
+            return null;
+
+        try {
+            TextToSpeechSettings.Builder settings = TextToSpeechSettings.newBuilder();
+            googleEndpoint().configure(settings, TextToSpeechSettings.defaultGrpcTransportProviderBuilder());
+            textToSpeechClient = TextToSpeechClient.create(settings.build());
+        } catch (IOException e) {
+            log.warn("Could not create text-to-speech client, replies will only use cached audio: {}", e.toString());
+        }
+        return textToSpeechClient;
+    }
+
+    /**
+     * Runs the local stages of the chat pipeline (parsing, text-to-speech cache) once upstream replies arrive.
+     * Servlet threads are handed back to Tomcat as soon as the upstream calls have been started.
+     * @return The executor, also registered with DialogFlowBridge.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor chatPipelineExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(pipelineThreads);
+        executor.setMaxPoolSize(pipelineThreads);
+        executor.setThreadNamePrefix("chat-pipeline-");
+        executor.setTaskDecorator(task -> {
+            // Carry the request's logging context (trace ID) over to the pipeline thread.
+            Map<String, String> context = MDC.getCopyOfContextMap();
+            return () -> FutureUtils.withContext(context, task);
+        });
+        executor.initialize();
+
+        // Work waiting for a pipeline thread. Growing queues mean our own code (not Google) is the bottleneck.
+        bind(registry -> Gauge.builder("chatbot.pipeline.queued", executor, e -> e.getThreadPoolExecutor().getQueue().size())
+                .description("Chat pipeline stages waiting for a thread")
+                .register(registry));
+        bind(registry -> Gauge.builder("chatbot.pipeline.active", executor, ThreadPoolTaskExecutor::getActiveCount)
+                .description("Chat pipeline threads currently busy")
+                .register(registry));
+
+        DialogFlowBridge.getInstance().setExecutor(executor);
+        return executor;
+    }
+
+    /**
+     * The one intent backend shared by every conversation.
+     * "local" uses an in-process stand-in, anything else connects to DialogFlow.
+     * Messages first go to the local matcher (agent export), then the reply cache, and only then to the backend.
+     * @return The backend, also registered with DialogFlowBridge.
+     * @throws IOException If the DialogFlow client could not be created.
+     */
+    @Bean(destroyMethod = "close")
+    public IntentDetector intentDetector() throws IOException {
+        IntentDetector detector;
+        if ("local".equalsIgnoreCase(intentBackend))
+            detector = new LocalIntentDetector();
+        else {
+            DialogFlowIntentDetector dialogFlow = new DialogFlowIntentDetector(dialogFlowProjectId, dialogFlowChannelPoolSize,
+                    dialogFlowKeepAliveSeconds, dialogFlowMaxConcurrentCalls, googleEndpoint());
+            bind(registry -> Gauge.builder("chatbot.upstream.in-flight", dialogFlow, DialogFlowIntentDetector::getCallsInFlight)
+                    .description("DialogFlow calls waiting for a reply")
+                    .tag("api", "dialogflow")
+                    .register(registry));
+            detector = dialogFlow;
+        }
+
+        if (intentCacheEnabled)
+            detector = cacheIntents(detector);
+        if (localIntentsEnabled)
+            detector = matchIntentsLocally(detector);
+
+        DialogFlowBridge.getInstance().setIntentDetector(detector);
+        return detector;
+    }
+
+    /**
+     * Read chatbot.emotions.baseline, a comma-separated list of "Emotion:value" pairs. Malformed pairs are skipped.
+     * @return Emotion name -> baseline value, in the listed order.
+     */
+    private Map<String, Float> parseEmotionBaseline() {
+        Map<String, Float> baseline = new LinkedHashMap<>();
+        for (String pair : emotionBaseline.split(",")) {
+            if (pair.trim().isEmpty())
+                continue;
+
+            String[] parts = pair.split(":");
+            try {
+                if (parts.length != 2)
+                    throw new NumberFormatException("expected Emotion:value");
+                baseline.put(parts[0].trim(), Float.parseFloat(parts[1].trim()));
+            } catch (NumberFormatException e) {
+                log.warn("Ignoring malformed emotion baseline \"{}\": {}", pair.trim(), e.getMessage());
+            }
+        }
+        return baseline;
+    }
+
+    /**
+     * Put a reply cache in front of an intent backend.
+     * @param detector The backend.
+     * @return The cached backend.
+     */
+    private IntentDetector cacheIntents(IntentDetector detector) {
+        List<String> excludedIntents = new ArrayList<>();
+        for (String intent : intentCacheExcludedIntents.split(",")) {
+            if (!intent.trim().isEmpty())
+                excludedIntents.add(intent.trim());
+        }
+
+        CachingIntentDetector cache = new CachingIntentDetector(detector, intentCacheTtlMinutes * 60 * 1000L, intentCacheMaxEntries,
+                intentCacheOutputContexts, excludedIntents);
+        bind(registry -> FunctionCounter.builder("chatbot.intent-cache.requests", cache, CachingIntentDetector::getHits)
+                .tag("result", "hit")
+                .register(registry));
+        bind(registry -> FunctionCounter.builder("chatbot.intent-cache.requests", cache, CachingIntentDetector::getMisses)
+                .tag("result", "miss")
+                .register(registry));
+        bind(registry -> FunctionCounter.builder("chatbot.intent-cache.requests", cache, CachingIntentDetector::getBypassed)
+                .tag("result", "bypass")
+                .register(registry));
+        bind(registry -> Gauge.builder("chatbot.intent-cache.size", cache, CachingIntentDetector::size)
+                .description("Intent replies currently cached")
+                .register(registry));
+        return cache;
+    }
+
+    /**
+     * Answer messages from the DialogFlow agent export when possible, before they reach the given backend.
+     * @param detector The backend for everything the local matcher isn't sure about.
+     * @return The combined backend, or the given one if the export can't be read.
+     */
+    private IntentDetector matchIntentsLocally(IntentDetector detector) {
+        Path export = Paths.get(localIntentsExport);
+        if (!Files.isRegularFile(export)) {
+            log.warn("DialogFlow export {} doesn't exist, every message goes to the intent backend.", export.toAbsolutePath());
+            return detector;
+        }
+
+        LocalIntentMatcher matcher;
+        try {
+            matcher = new LocalIntentMatcher(DialogFlowExportReader.read(export));
+        } catch (IOException e) {
+            log.warn("Could not load DialogFlow export, every message goes to the intent backend: {}", e.toString());
+            return detector;
+        }
+        log.info("Matching {} intents locally (min. confidence {}).", matcher.countMatchableIntents(), localIntentsMinConfidence);
+
+        HybridIntentDetector hybrid = new HybridIntentDetector(matcher, detector, localIntentsMinConfidence, localIntentsLanguage,
+                maxSessions);
+        bind(registry -> FunctionCounter.builder("chatbot.intents.replies", hybrid, HybridIntentDetector::getLocalReplies)
+                .tag("source", "local")
+                .register(registry));
+        bind(registry -> FunctionCounter.builder("chatbot.intents.replies", hybrid, HybridIntentDetector::getUpstreamReplies)
+                .tag("source", "upstream")
+                .register(registry));
+        bind(registry -> FunctionCounter.builder("chatbot.intents.replies", hybrid, HybridIntentDetector::getRescuedReplies)
+                .tag("source", "rescued")
+                .description("Replies matched locally because the intent backend failed")
+                .register(registry));
+        return hybrid;
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.oichatbot.config;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Read or change the DEBUG sample rate at runtime: GET /actuator/logsampling, or POST {"rate": 0.05} to it.
+ * Log levels themselves are changed through the standard /actuator/loggers endpoint.
+ */
+@Component
+@Endpoint(id = "logsampling")
+public class LogSamplingEndpoint {
+
+    @ReadOperation
+    public Map<String, Double> sampleRate() {
+        return Collections.singletonMap("rate", TraceSamplingFilter.getSampleRate());
+    }
+
+    @WriteOperation
+    public Map<String, Double> setSampleRate(double rate) {
+        TraceSamplingFilter.setSampleRate(rate);
+        return sampleRate();
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.oichatbot.config;
+
+import com.example.oichatbot.managers.AudioManager;
+import com.example.oichatbot.managers.ChatManager;
+import com.example.oichatbot.managers.ChatMetrics;
+import com.example.oichatbot.managers.DebugManager;
+import com.example.oichatbot.managers.DialogFlowBridge;
+import com.example.oichatbot.managers.ExceptionManager;
+import com.example.oichatbot.managers.ExtremeAudioBank;
+import com.example.oichatbot.managers.IntentCatalogue;
+import com.example.oichatbot.managers.MessageParser;
+import com.example.oichatbot.managers.PersonalityManager;
+import com.example.oichatbot.managers.SessionManager;
+import com.example.oichatbot.managers.SpeechCache;
+import com.example.oichatbot.managers.SpeechManager;
+import com.example.oichatbot.managers.StateJournal;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Registers the singleton managers as Spring beans, so they are all created while the context starts
+ * (reading modifiers.json, building the voice tables, loading AWT for the colours, ...) instead of during the first request.
+ * getInstance() keeps returning the same objects, so code outside of Spring (e.g. the benchmarks) works unchanged.
+ * Their settings and shutdown stay in ChatbotConfiguration; destroyMethod is empty so Spring doesn't close anything twice.
+ * ChatMetrics is a MeterBinder, so Spring Boot binds it to the application's MeterRegistry by itself.
+ */
+@Configuration
+public class ManagerConfiguration {
+
+    @Bean(destroyMethod = "")
+    public PersonalityManager personalityManager() {
+        return PersonalityManager.getInstance();
+    }
+
+    @Bean(destroyMethod = "")
+    public MessageParser messageParser() {
+        return MessageParser.getInstance();
+    }
+
+    @Bean(destroyMethod = "")
+    public DebugManager debugManager() {
+        return DebugManager.getInstance();
+    }
+
+    @Bean(destroyMethod = "")
+    public ExceptionManager exceptionManager() {
+        return ExceptionManager.getInstance();
+    }
+
+    @Bean(destroyMethod = "")
+    public SpeechManager speechManager() {
+        return SpeechManager.getInstance();
+    }
+
+    @Bean(destroyMethod = "")
+    public SpeechCache speechCache() {
+        return SpeechCache.getInstance();
+    }
+
+    @Bean(destroyMethod = "")
+    public AudioManager audioManager() {
+        return AudioManager.getInstance();
+    }
+
+    @Bean(destroyMethod = "")
+    public ExtremeAudioBank extremeAudioBank() {
+        return ExtremeAudioBank.getInstance();
+    }
+
+    @Bean(destroyMethod = "")
+    public SessionManager sessionManager() {
+        return SessionManager.getInstance();
+    }
+
+    @Bean(destroyMethod = "")
+    public StateJournal stateJournal() {
+        return StateJournal.getInstance();
+    }
+
+    @Bean(destroyMethod = "")
+    public DialogFlowBridge dialogFlowBridge() {
+        return DialogFlowBridge.getInstance();
+    }
+
+    @Bean(destroyMethod = "")
+    public IntentCatalogue intentCatalogue() {
+        return IntentCatalogue.getInstance();
+    }
+
+    @Bean(destroyMethod = "")
+    public ChatMetrics chatMetrics() {
+        return ChatMetrics.getInstance();
+    }
+
+    @Bean(destroyMethod = "")
+    public ChatManager chatManager() {
+        return ChatManager.getInstance();
+    }
+}
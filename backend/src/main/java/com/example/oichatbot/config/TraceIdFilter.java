@@ -0,0 +1,43 @@
+package com.example.oichatbot.config;
+
+import org.slf4j.MDC;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+/**
+ * Gives every request a trace ID, so all log entries of one chat message can be found (and sampled) together.
+ * The ID is kept in the logging context (MDC), which the chat pipeline carries along to its other threads.
+ * Clients may send their own ID (X-Trace-Id), it is handed back in the same header either way.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class TraceIdFilter extends OncePerRequestFilter {
+    public static final String MDC_KEY = "traceId";
+    public static final String TRACE_HEADER = "X-Trace-Id";
+    private static final Pattern VALID_TRACE_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws ServletException, IOException {
+        String traceId = request.getHeader(TRACE_HEADER);
+        if (traceId == null || !VALID_TRACE_ID.matcher(traceId).matches())
+            traceId = Long.toHexString(ThreadLocalRandom.current().nextLong());
+
+        response.setHeader(TRACE_HEADER, traceId);
+        MDC.put(MDC_KEY, traceId);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            MDC.remove(MDC_KEY);
+        }
+    }
+}
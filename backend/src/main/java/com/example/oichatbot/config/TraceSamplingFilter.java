@@ -0,0 +1,44 @@
+package com.example.oichatbot.config;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.MDC;
+import org.slf4j.Marker;
+
+/**
+ * Keeps DEBUG (and TRACE) entries for only a share of all requests, so debug logging can stay on under load.
+ * The decision is made per trace ID: a sampled request logs every step, the others log none.
+ * INFO and above, and entries outside a request (e.g. startup), are never dropped.
+ * Runs before the message is formatted, so dropped entries cost next to nothing. Registered in logback-spring.xml.
+ */
+public class TraceSamplingFilter extends TurboFilter {
+    private static final int SCALE = 10000;
+    private static volatile int threshold = SCALE;      // Requests whose hash falls below this are sampled (out of SCALE).
+
+    /**
+     * Change the share of requests that log DEBUG entries. Takes effect immediately.
+     * @param rate Between 0 (none) and 1 (all).
+     */
+    public static void setSampleRate(double rate) {
+        threshold = (int) Math.round(Math.max(0.0d, Math.min(1.0d, rate)) * SCALE);
+    }
+
+    public static double getSampleRate() {
+        return threshold / (double) SCALE;
+    }
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        int current = threshold;
+        if (current >= SCALE || level == null || level.isGreaterOrEqual(Level.INFO))
+            return FilterReply.NEUTRAL;
+
+        String traceId = MDC.get(TraceIdFilter.MDC_KEY);
+        if (traceId == null)
+            return FilterReply.NEUTRAL;
+
+        return (traceId.hashCode() & Integer.MAX_VALUE) % SCALE < current ? FilterReply.NEUTRAL : FilterReply.DENY;
+    }
+}
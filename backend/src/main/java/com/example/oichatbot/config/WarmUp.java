@@ -0,0 +1,144 @@
+package com.example.oichatbot.config;
+
+import com.example.oichatbot.domains.ConversationState;
+import com.example.oichatbot.domains.PersonalitySnapshot;
+import com.example.oichatbot.domains.TraitVector;
+import com.example.oichatbot.managers.DebugManager;
+import com.example.oichatbot.managers.IntentDetector;
+import com.example.oichatbot.managers.MessageParser;
+import com.example.oichatbot.managers.PersonalityManager;
+import com.example.oichatbot.managers.SpeechManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gets a freshly started node up to speed before it receives traffic: opens the upstream connections
+ * and runs the local stages of the chat pipeline (emotions, colour, voice, message parsing, debug checks)
+ * often enough for the JIT compiler to optimize them.
+ * Also the "warmUp" health indicator: OUT_OF_SERVICE until warm-up is done, so the readiness probe
+ * (/actuator/health/readiness) keeps the load balancer away until then.
+ */
+@Component
+public class WarmUp implements ApplicationRunner, HealthIndicator {
+    private static final Logger log = LoggerFactory.getLogger(WarmUp.class);
+
+    // Typical messages and fulfillment texts, covering plain text, modifiers and (nested) emotion blocks.
+    private static final String[] INPUTS = {
+            "Hi! How are you doing?", "What's the weather like today?", "Tell me a fact", "Thank you so much",
+            "Shut up, you stupid bot", "I don't get it", "Who made you?", "Sorry, that was rude of me"
+    };
+    private static final String[] RESPONSES = {
+            "Hello! How can I help you?",
+            "[Patience;<0.0;Ugh, fine. ]Did you know honey never spoils?",
+            "[Patience;>0.5;Sure thing! [Patience;>0.9;Anything for you. ]]It's sunny right now.",
+            "[Patience;<-0.5;Leave me alone!]"
+    };
+
+    @Value("${chatbot.warm-up.enabled:true}")
+    private Boolean enabled;
+
+    @Value("${chatbot.warm-up.iterations:10000}")
+    private Integer iterations;
+
+    @Value("${chatbot.warm-up.upstream:true}")
+    private Boolean upstream;
+
+    @Value("${chatbot.warm-up.upstream-timeout-seconds:10}")
+    private Long upstreamTimeoutSeconds;
+
+    private final IntentDetector intentDetector;
+    private final PersonalityManager personalityManager;
+    private final SpeechManager speechManager;
+    private final MessageParser messageParser;
+    private final DebugManager debugManager;
+
+    private volatile boolean done = false;
+    private volatile long durationMillis;
+    private volatile String upstreamResult = "skipped";
+
+    public WarmUp(IntentDetector intentDetector, PersonalityManager personalityManager, SpeechManager speechManager,
+                  MessageParser messageParser, DebugManager debugManager) {
+        this.intentDetector = intentDetector;
+        this.personalityManager = personalityManager;
+        this.speechManager = speechManager;
+        this.messageParser = messageParser;
+        this.debugManager = debugManager;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            done = true;
+            return;
+        }
+
+        long start = System.nanoTime();
+        // Start connecting first, the local part runs while the handshakes are in progress.
+        CompletableFuture<Void> connections = upstream
+                ? CompletableFuture.allOf(intentDetector.warmUp(), speechManager.warmUp())
+                : CompletableFuture.completedFuture(null);
+
+        int checksum = exercisePipeline();
+
+        if (upstream) {
+            try {
+                connections.get(upstreamTimeoutSeconds, TimeUnit.SECONDS);
+                upstreamResult = "connected";
+            } catch (Exception e) {
+                // Not fatal: the connections are simply opened by the first real requests instead.
+                upstreamResult = "failed: " + e;
+                log.warn("Could not open upstream connections during warm-up: {}", e.toString());
+            }
+        }
+
+        durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        done = true;
+        log.info("Warm-up done in {} ms ({} iterations, upstream {}, checksum {}).", durationMillis, iterations, upstreamResult, checksum);
+    }
+
+    /**
+     * Run the local stages on a throwaway conversation. Metrics are bypassed, so warm-up doesn't show up in the stage timers.
+     * @return Meaningless number computed from every result, so the JIT can't skip any of the work.
+     */
+    private int exercisePipeline() {
+        ConversationState state = new ConversationState("warm-up");
+        personalityManager.initState(state);
+
+        int checksum = 0;
+        for (int i = 0; i < iterations; i++) {
+            String input = INPUTS[i % INPUTS.length];
+            checksum += debugManager.wantsToEnterDebug(input) ? 1 : 0;
+
+            TraitVector emotions = personalityManager.alterEmotions(state, input);
+            TraitVector personality = state.getPersonality();
+            String leadingPersonality = personality.getLeaderName();
+            PersonalitySnapshot snapshot = new PersonalitySnapshot(personality, emotions, leadingPersonality,
+                    personalityManager.determineSuggestedColor(state), speechManager.determineVoice(leadingPersonality, emotions));
+            checksum += messageParser.parseMessage(snapshot, RESPONSES[i % RESPONSES.length]).length();
+
+            // Keep the mood from drifting to one extreme, so every branch of the emotion blocks is taken.
+            if (i % 64 == 0)
+                personalityManager.resetState(state);
+        }
+        return checksum;
+    }
+
+    @Override
+    public Health health() {
+        if (!done)
+            return Health.outOfService().withDetail("warmUp", "in progress").build();
+        return Health.up()
+                .withDetail("durationMillis", durationMillis)
+                .withDetail("upstream", upstreamResult)
+                .build();
+    }
+}
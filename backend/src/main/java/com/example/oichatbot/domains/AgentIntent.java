@@ -0,0 +1,65 @@
+package com.example.oichatbot.domains;
+
+import java.util.List;
+
+/**
+ * One intent of the DialogFlow agent, as read from its export (see DialogFlowExportReader).
+ * Only what is needed to match and answer messages locally.
+ */
+public class AgentIntent {
+    private String name;
+    private List<String> inputContexts;     // Lowercase, all of them have to be active for this intent to match.
+    private List<String> trainingPhrases;
+    private List<String> responses;         // Raw fulfillment texts, may contain emotion blocks. One is picked at random.
+    private Boolean setsOutputContexts;     // True if answering this intent starts a follow-up conversation in DialogFlow.
+    private Boolean hasParameters;          // True if the responses use parameters ($person, $from, ...) that only DialogFlow can extract.
+    private Boolean fallback;
+
+    public AgentIntent(String name, List<String> inputContexts, List<String> trainingPhrases, List<String> responses,
+                       Boolean setsOutputContexts, Boolean hasParameters, Boolean fallback) {
+        this.name = name;
+        this.inputContexts = inputContexts;
+        this.trainingPhrases = trainingPhrases;
+        this.responses = responses;
+        this.setsOutputContexts = setsOutputContexts;
+        this.hasParameters = hasParameters;
+        this.fallback = fallback;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getInputContexts() {
+        return inputContexts;
+    }
+
+    public List<String> getTrainingPhrases() {
+        return trainingPhrases;
+    }
+
+    public List<String> getResponses() {
+        return responses;
+    }
+
+    public Boolean getSetsOutputContexts() {
+        return setsOutputContexts;
+    }
+
+    public Boolean getHasParameters() {
+        return hasParameters;
+    }
+
+    /**
+     * Only DialogFlow can answer intents that start a follow-up conversation or fill in parameters, a local answer would
+     * lose the follow-up or show placeholders like "$person".
+     * @return True if this intent can be answered without DialogFlow.
+     */
+    public boolean isAnswerableLocally() {
+        return !setsOutputContexts && !hasParameters;
+    }
+
+    public Boolean getFallback() {
+        return fallback;
+    }
+}
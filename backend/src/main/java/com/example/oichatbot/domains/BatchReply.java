@@ -0,0 +1,45 @@
+package com.example.oichatbot.domains;
+
+/**
+ * One line of a batch chat response: the reply to the message at a given position, or why there is none.
+ * Replies are streamed as they complete, so the index tells the client which message they belong to.
+ */
+public class BatchReply {
+    private Integer index;
+    private Message reply;      // Null if this message failed.
+    private String error;       // Null if this message succeeded.
+
+    public BatchReply() {
+
+    }
+
+    public BatchReply(Integer index, Message reply, String error) {
+        this.index = index;
+        this.reply = reply;
+        this.error = error;
+    }
+
+    public Integer getIndex() {
+        return index;
+    }
+
+    public void setIndex(Integer index) {
+        this.index = index;
+    }
+
+    public Message getReply() {
+        return reply;
+    }
+
+    public void setReply(Message reply) {
+        this.reply = reply;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
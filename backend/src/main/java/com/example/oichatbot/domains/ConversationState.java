@@ -0,0 +1,93 @@
+package com.example.oichatbot.domains;
+
+import java.util.function.Consumer;
+
+/**
+ * Holds everything that belongs to one single conversation (session) with the bot.
+ * Emotions, personality traits and debug/audio settings used to be shared by every user.
+ * Each session now gets its own instance so concurrent users no longer alter each other's mood.
+ */
+public class ConversationState {
+    private final String sessionId;
+    private final TraitValues emotions = new TraitValues(TraitRegistry.EMOTIONS, -1.0f, 1.0f);         // Emotions that range from -1.0f to 1.0f.
+    private final TraitValues personality = new TraitValues(TraitRegistry.PERSONALITY, 0.0f, 1.0f);    // Personality traits that range from 0.0f to 1.0f.
+    private volatile boolean inDebug = false;
+    private volatile boolean audioEnabled = true;
+    private volatile long lastAccess;       // Millis, used by SessionManager for idle-time eviction.
+    private volatile Consumer<ConversationState> changeListener;     // Told about every change, e.g. to persist it. May be null.
+
+    public ConversationState(String sessionId) {
+        this.sessionId = sessionId;
+        this.lastAccess = System.currentTimeMillis();
+        emotions.setListener(this::changed);
+        personality.setListener(this::changed);
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * @return Read-only snapshot of the current emotions, use getEmotionValues() to change them.
+     */
+    public TraitVector getEmotions() {
+        return emotions.snapshot();
+    }
+
+    /**
+     * @return Read-only snapshot of the current personality traits, use getPersonalityValues() to change them.
+     */
+    public TraitVector getPersonality() {
+        return personality.snapshot();
+    }
+
+    public TraitValues getEmotionValues() {
+        return emotions;
+    }
+
+    public TraitValues getPersonalityValues() {
+        return personality;
+    }
+
+    public boolean isInDebug() {
+        return inDebug;
+    }
+
+    public void setInDebug(boolean inDebug) {
+        this.inDebug = inDebug;
+        changed();
+    }
+
+    public boolean isAudioEnabled() {
+        return audioEnabled;
+    }
+
+    public void setAudioEnabled(boolean audioEnabled) {
+        this.audioEnabled = audioEnabled;
+        changed();
+    }
+
+    public long getLastAccess() {
+        return lastAccess;
+    }
+
+    /**
+     * Mark this conversation as recently used.
+     */
+    public void touch() {
+        lastAccess = System.currentTimeMillis();
+    }
+
+    /**
+     * @param changeListener Called (on the changing thread, so it must be quick) whenever emotions, personality or settings change. May be null.
+     */
+    public void setChangeListener(Consumer<ConversationState> changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    private void changed() {
+        Consumer<ConversationState> listener = changeListener;
+        if (listener != null)
+            listener.accept(this);
+    }
+}
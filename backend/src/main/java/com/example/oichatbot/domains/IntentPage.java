@@ -0,0 +1,52 @@
+package com.example.oichatbot.domains;
+
+import java.util.List;
+
+/**
+ * One page of the intent catalogue, as served by /test/list.
+ */
+public class IntentPage {
+    private List<IntentSummary> intents;
+    private Integer offset;
+    private Integer limit;
+    private Integer total;
+    private Long refreshedAt;       // When the catalogue was last fetched from DialogFlow (epoch millis).
+    private String version;         // Version of the catalogue this page was taken from, changes whenever the agent does.
+
+    public IntentPage() {
+
+    }
+
+    public IntentPage(List<IntentSummary> intents, Integer offset, Integer limit, Integer total, Long refreshedAt, String version) {
+        this.intents = intents;
+        this.offset = offset;
+        this.limit = limit;
+        this.total = total;
+        this.refreshedAt = refreshedAt;
+        this.version = version;
+    }
+
+    public List<IntentSummary> getIntents() {
+        return intents;
+    }
+
+    public Integer getOffset() {
+        return offset;
+    }
+
+    public Integer getLimit() {
+        return limit;
+    }
+
+    public Integer getTotal() {
+        return total;
+    }
+
+    public Long getRefreshedAt() {
+        return refreshedAt;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+}
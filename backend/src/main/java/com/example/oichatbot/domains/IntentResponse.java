@@ -0,0 +1,54 @@
+package com.example.oichatbot.domains;
+
+/**
+ * The (raw) result of detecting the intent behind a user's message.
+ * The fulfillment text may still contain special emotion blocks that MessageParser has to process.
+ */
+public class IntentResponse {
+    private String fulfillmentText;
+    private String intentName;
+    private Float confidence;
+    private Boolean hasOutputContexts = false;     // True if the intent activated follow-up contexts (stateful conversation).
+
+    public IntentResponse() {
+    }
+
+    public IntentResponse(String fulfillmentText, String intentName, Float confidence, Boolean hasOutputContexts) {
+        this.fulfillmentText = fulfillmentText;
+        this.intentName = intentName;
+        this.confidence = confidence;
+        this.hasOutputContexts = hasOutputContexts;
+    }
+
+    public String getFulfillmentText() {
+        return fulfillmentText;
+    }
+
+    public void setFulfillmentText(String fulfillmentText) {
+        this.fulfillmentText = fulfillmentText;
+    }
+
+    public String getIntentName() {
+        return intentName;
+    }
+
+    public void setIntentName(String intentName) {
+        this.intentName = intentName;
+    }
+
+    public Float getConfidence() {
+        return confidence;
+    }
+
+    public void setConfidence(Float confidence) {
+        this.confidence = confidence;
+    }
+
+    public Boolean getHasOutputContexts() {
+        return hasOutputContexts;
+    }
+
+    public void setHasOutputContexts(Boolean hasOutputContexts) {
+        this.hasOutputContexts = hasOutputContexts;
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.oichatbot.domains;
+
+import java.util.List;
+
+/**
+ * What the intent catalogue tells about one DialogFlow intent. Plain data, so it can be served as JSON.
+ */
+public class IntentSummary {
+    private String name;
+    private String displayName;
+    private String action;
+    private String rootFollowupIntentName;
+    private String parentFollowupIntentName;
+    private List<String> inputContexts;
+    private List<String> outputContexts;
+    private List<String> responses;         // Text responses, may contain emotion blocks.
+
+    public IntentSummary() {
+
+    }
+
+    public IntentSummary(String name, String displayName, String action, String rootFollowupIntentName, String parentFollowupIntentName,
+                         List<String> inputContexts, List<String> outputContexts, List<String> responses) {
+        this.name = name;
+        this.displayName = displayName;
+        this.action = action;
+        this.rootFollowupIntentName = rootFollowupIntentName;
+        this.parentFollowupIntentName = parentFollowupIntentName;
+        this.inputContexts = inputContexts;
+        this.outputContexts = outputContexts;
+        this.responses = responses;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public String getRootFollowupIntentName() {
+        return rootFollowupIntentName;
+    }
+
+    public String getParentFollowupIntentName() {
+        return parentFollowupIntentName;
+    }
+
+    public List<String> getInputContexts() {
+        return inputContexts;
+    }
+
+    public List<String> getOutputContexts() {
+        return outputContexts;
+    }
+
+    public List<String> getResponses() {
+        return responses;
+    }
+}
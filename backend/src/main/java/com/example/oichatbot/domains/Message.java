@@ -7,11 +7,13 @@ import java.util.Calendar;
  * Simple prototype class for messages sent by either the user or the AI.
  */
 public class Message {
+    private String id = "";            // Set on streamed replies, so the client can match a later audio event.
     private String content;
     private String time;
     private Boolean fromBot;
     private String suggestedColor;
-    private String audioFile = "";
+    private String audioFile = "";     // Base64 clip, only filled when inline audio is enabled.
+    private String audioUrl = "";      // Where to download the clip (see AudioResource).
     private Integer fontSize = 1;       // em.
     private String font = "Helvetica";
 
@@ -45,6 +47,14 @@ public class Message {
         this.suggestedColor = suggestedColor;
     }
 
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
     public String getContent() {
         return content;
     }
@@ -85,6 +95,14 @@ public class Message {
         this.audioFile = audioFile;
     }
 
+    public String getAudioUrl() {
+        return audioUrl;
+    }
+
+    public void setAudioUrl(String audioUrl) {
+        this.audioUrl = audioUrl;
+    }
+
     public Integer getFontSize() {
         return fontSize;
     }
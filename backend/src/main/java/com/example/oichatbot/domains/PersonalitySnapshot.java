@@ -0,0 +1,44 @@
+package com.example.oichatbot.domains;
+
+/**
+ * Everything the bot's personality and mood decide about one reply, determined once per request.
+ * Every stage of the pipeline (DialogFlow context, message parsing, color, text-to-speech) reads from the same snapshot,
+ * so a reply is always consistent even if another request changes the conversation's mood halfway through.
+ * Immutable.
+ */
+public final class PersonalitySnapshot {
+    private final TraitVector personality;
+    private final TraitVector emotions;
+    private final String leadingPersonality;
+    private final String suggestedColor;
+    private final VoiceSettings voice;
+
+    public PersonalitySnapshot(TraitVector personality, TraitVector emotions, String leadingPersonality,
+                               String suggestedColor, VoiceSettings voice) {
+        this.personality = personality;
+        this.emotions = emotions;
+        this.leadingPersonality = leadingPersonality;
+        this.suggestedColor = suggestedColor;
+        this.voice = voice;
+    }
+
+    public TraitVector getPersonality() {
+        return personality;
+    }
+
+    public TraitVector getEmotions() {
+        return emotions;
+    }
+
+    public String getLeadingPersonality() {
+        return leadingPersonality;
+    }
+
+    public String getSuggestedColor() {
+        return suggestedColor;
+    }
+
+    public VoiceSettings getVoice() {
+        return voice;
+    }
+}
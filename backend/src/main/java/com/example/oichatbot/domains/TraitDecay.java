@@ -0,0 +1,62 @@
+package com.example.oichatbot.domains;
+
+import java.util.Arrays;
+
+/**
+ * Lets values drift back to a baseline over time, e.g. an angry bot slowly calming down again.
+ * The drift is exponential: after every half-life, the distance to the baseline is halved.
+ * Because that has a closed form, nothing runs in the background: the decay is worked out from the elapsed time
+ * whenever a conversation's values are read or changed (see TraitValues), so idle conversations cost nothing.
+ * Immutable, one instance is shared by every conversation.
+ */
+public final class TraitDecay {
+    private final float[] baseline;         // Indexed by TraitRegistry ID, IDs beyond the array drift to zero.
+    private final double halfLifeMillis;
+
+    /**
+     * @param baseline Value every ID drifts towards, indexed by registry ID. Copied.
+     * @param halfLifeMillis Time after which half of the distance to the baseline is gone. Must be positive.
+     */
+    public TraitDecay(float[] baseline, long halfLifeMillis) {
+        if (halfLifeMillis <= 0)
+            throw new IllegalArgumentException("Half-life must be positive: " + halfLifeMillis);
+        this.baseline = Arrays.copyOf(baseline, baseline.length);
+        this.halfLifeMillis = halfLifeMillis;
+    }
+
+    /**
+     * @param id ID from the registry.
+     * @return The value this ID drifts towards.
+     */
+    public float baselineOf(int id) {
+        return id < baseline.length ? baseline[id] : 0.0f;
+    }
+
+    public long getHalfLifeMillis() {
+        return (long) halfLifeMillis;
+    }
+
+    /**
+     * Work out what the values have drifted to at a given moment.
+     * Decaying in several steps gives the same result as decaying once over the whole period, so it doesn't matter how often this is called.
+     * @param values Values as they were at values.getUpdatedAt().
+     * @param now Current time (millis since the epoch).
+     * @param min Lowest allowed value.
+     * @param max Highest allowed value.
+     * @return The decayed values (stamped with now), or the given vector itself if no time has passed.
+     */
+    public TraitVector apply(TraitVector values, long now, float min, float max) {
+        long elapsed = now - values.getUpdatedAt();
+        if (elapsed <= 0)
+            return values;
+
+        // Share of the distance to the baseline that is still left.
+        float remaining = (float) Math.pow(0.5, elapsed / halfLifeMillis);
+        TraitVector.Editor editor = values.edit(min, max);
+        for (int id = 0; id < values.getRegistry().size(); id++) {
+            float target = baselineOf(id);
+            editor.set(id, target + (editor.get(id) - target) * remaining);
+        }
+        return editor.build(now);
+    }
+}
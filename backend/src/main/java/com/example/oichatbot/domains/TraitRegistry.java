@@ -0,0 +1,65 @@
+package com.example.oichatbot.domains;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Assigns a dense, stable ID (0, 1, 2, ...) to every known emotion or personality trait.
+ * Values are stored in plain float arrays indexed by these IDs (see TraitVector), names are only needed at the edges
+ * (modifiers.json, message templates, debug commands). IDs are never reused or removed.
+ * Registering is rare (startup) and synchronized, lookups are lock-free.
+ */
+public final class TraitRegistry {
+    public static final TraitRegistry EMOTIONS = new TraitRegistry();
+    public static final TraitRegistry PERSONALITY = new TraitRegistry();
+
+    private volatile String[] names = new String[0];
+    private volatile Map<String, Integer> ids = Collections.emptyMap();
+
+    private TraitRegistry() {
+    }
+
+    /**
+     * Register a name, or get its existing ID.
+     * @param name Name of the emotion or trait, e.g. "Patience".
+     * @return Its ID.
+     */
+    public synchronized int register(String name) {
+        Integer existing = ids.get(name);
+        if (existing != null)
+            return existing;
+
+        int id = names.length;
+        String[] newNames = Arrays.copyOf(names, id + 1);
+        newNames[id] = name;
+        Map<String, Integer> newIds = new HashMap<>(ids);
+        newIds.put(name, id);
+
+        // Publish the map last: whoever sees the new ID can also see its name.
+        names = newNames;
+        ids = Collections.unmodifiableMap(newIds);
+        return id;
+    }
+
+    /**
+     * @param name Name of the emotion or trait.
+     * @return Its ID, or -1 if the name was never registered.
+     */
+    public int idOf(String name) {
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    public String nameOf(int id) {
+        return names[id];
+    }
+
+    /**
+     * @return Amount of registered names, every ID is lower than this.
+     */
+    public int size() {
+        return names.length;
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.oichatbot.domains;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Thread-safe set of emotion or personality values, all clamped to the same range.
+ * The values live in an immutable TraitVector behind an AtomicReference: readers simply take the current vector (no locks, never half-updated),
+ * writers edit a copy and swap it in with compare-and-set, retrying if another request got there first.
+ * That way concurrent requests in the same conversation never lose each other's updates.
+ * With a TraitDecay set, the values drift back to a baseline over time. The drift is applied lazily, whenever the values
+ * are read or changed, so there is no timer per conversation.
+ */
+public class TraitValues {
+    private final float min;
+    private final float max;
+    private final AtomicReference<TraitVector> values;
+    private volatile TraitDecay decay;      // Null -> values stay put between updates.
+    private volatile Runnable listener;     // Told about every successful update, e.g. to persist it. May be null.
+
+    /**
+     * @param registry Registry that names the values, every registered value starts at zero.
+     * @param min Lowest allowed value.
+     * @param max Highest allowed value.
+     */
+    public TraitValues(TraitRegistry registry, float min, float max) {
+        this.min = min;
+        this.max = max;
+        this.values = new AtomicReference<>(TraitVector.empty(registry));
+    }
+
+    /**
+     * Get a consistent, read-only view of every value at this moment. Later updates don't change it.
+     * @return The current values.
+     */
+    public TraitVector snapshot() {
+        TraitVector current = values.get();
+        TraitDecay decay = this.decay;
+        // Reads don't store the decayed values, so they never contend with writers. Working it out again is cheap.
+        return decay == null ? current : decay.apply(current, System.currentTimeMillis(), min, max);
+    }
+
+    /**
+     * Set a value (clamped).
+     * @param name Name of the value, e.g. "Patience".
+     * @param value New value.
+     * @return The value that was actually stored, or null if the name is unknown (nothing changed).
+     */
+    public Float set(String name, Float value) {
+        int id = values.get().getRegistry().idOf(name);
+        if (id < 0)
+            return null;
+
+        return update(editor -> editor.set(id, value)).get(id);
+    }
+
+    /**
+     * Add an amount to a value (clamped). Can be negative.
+     * @param id ID of the value.
+     * @param amount Amount to add/substract.
+     * @return The new value.
+     */
+    public float add(int id, float amount) {
+        return update(editor -> editor.add(id, amount)).get(id);
+    }
+
+    /**
+     * Apply several changes as one atomic update, so other requests either see all of them or none.
+     * The change may be run more than once (if another update wins the race), so it must only touch the given editor.
+     * @param change Changes a private copy of the current values. Every value is clamped when set.
+     * @return The values after this update.
+     */
+    public TraitVector update(Consumer<TraitVector.Editor> change) {
+        while (true) {
+            TraitVector current = values.get();
+            long now = System.currentTimeMillis();
+            TraitDecay decay = this.decay;
+            // Changes start from the decayed values, the result is stamped with now so the drift continues from here.
+            TraitVector base = decay == null ? current : decay.apply(current, now, min, max);
+            TraitVector.Editor editor = base.edit(min, max);
+            change.accept(editor);
+            TraitVector next = editor.build(now);
+            if (values.compareAndSet(current, next)) {
+                Runnable listener = this.listener;
+                if (listener != null)
+                    listener.run();
+                return next;
+            }
+        }
+    }
+
+    /**
+     * Overwrite the values with previously saved ones (see StateJournal), without decay and without telling the listener.
+     * @param change Sets the saved values on a copy of the current values.
+     * @param updatedAt When the saved values were set (millis since the epoch), decay continues from there.
+     */
+    public void restore(Consumer<TraitVector.Editor> change, long updatedAt) {
+        TraitVector.Editor editor = values.get().edit(min, max);
+        change.accept(editor);
+        values.set(editor.build(updatedAt));
+    }
+
+    public TraitDecay getDecay() {
+        return decay;
+    }
+
+    /**
+     * Let the values drift back to a baseline over time, from now on.
+     * @param decay How the values drift, or null to keep them as they are between updates.
+     */
+    public void setDecay(TraitDecay decay) {
+        this.decay = decay;
+    }
+
+    /**
+     * @param listener Run after every update (on the updating thread, so it must be quick), or null.
+     */
+    public void setListener(Runnable listener) {
+        this.listener = listener;
+    }
+}
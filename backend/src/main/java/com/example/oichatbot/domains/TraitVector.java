@@ -0,0 +1,185 @@
+package com.example.oichatbot.domains;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable set of emotion or personality values, stored as a dense float array indexed by TraitRegistry ID.
+ * The leader (the value furthest from zero, lowest ID on ties) is kept up to date on every change,
+ * so asking for the leading personality or the strongest emotion never scans or boxes anything.
+ * Changes are made on an Editor (a private copy) which is turned into a new vector afterwards.
+ * Every vector remembers when its values were set, so TraitDecay can work out how far they have drifted since.
+ */
+public final class TraitVector {
+    private final TraitRegistry registry;
+    private final float[] values;
+    private final int leader;       // ID of the strongest value.
+    private final long updatedAt;   // Millis since the epoch.
+
+    private TraitVector(TraitRegistry registry, float[] values, int leader, long updatedAt) {
+        this.registry = registry;
+        this.values = values;
+        this.leader = leader;
+        this.updatedAt = updatedAt;
+    }
+
+    /**
+     * Create a vector with every registered value at zero.
+     * @param registry Registry that names the values.
+     * @return The vector.
+     */
+    public static TraitVector empty(TraitRegistry registry) {
+        return new TraitVector(registry, new float[registry.size()], 0, System.currentTimeMillis());
+    }
+
+    /**
+     * @param id ID from the registry.
+     * @return The value, zero for IDs registered after this vector was created.
+     */
+    public float get(int id) {
+        return id < values.length ? values[id] : 0.0f;
+    }
+
+    /**
+     * Look up a value by name. Slower than get(int), meant for names from the outside world.
+     * @param name Name of the emotion or trait.
+     * @return The value, or null if the name is unknown.
+     */
+    public Float get(String name) {
+        int id = registry.idOf(name);
+        return id < 0 ? null : get(id);
+    }
+
+    public boolean has(String name) {
+        return registry.idOf(name) >= 0;
+    }
+
+    /**
+     * @return ID of the value furthest from zero, lowest ID on ties. 0 if all values are zero.
+     */
+    public int getLeader() {
+        return leader;
+    }
+
+    /**
+     * @return Name of the value furthest from zero, or null if nothing is registered.
+     */
+    public String getLeaderName() {
+        return registry.size() == 0 ? null : registry.nameOf(leader);
+    }
+
+    public TraitRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * @return When these values were set (millis since the epoch).
+     */
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    /**
+     * Copy every value into a map, e.g. for display or serialization. Not meant for the request path.
+     * @return Name -> value, in ID order.
+     */
+    public Map<String, Float> toMap() {
+        Map<String, Float> map = new LinkedHashMap<>();
+        for (int id = 0; id < registry.size(); id++)
+            map.put(registry.nameOf(id), get(id));
+        return map;
+    }
+
+    /**
+     * Start changing a private copy of this vector.
+     * @param min Lowest allowed value, values are clamped when set.
+     * @param max Highest allowed value.
+     * @return The editor.
+     */
+    public Editor edit(float min, float max) {
+        return new Editor(this, min, max);
+    }
+
+    /**
+     * Mutable copy of a vector, only used by the thread that created it.
+     */
+    public static final class Editor {
+        private final TraitRegistry registry;
+        private final float min;
+        private final float max;
+        private float[] values;
+        private int leader;
+        private final long updatedAt;
+        private boolean rescan;     // The old leader got weaker, another value may have taken over.
+
+        private Editor(TraitVector source, float min, float max) {
+            this.registry = source.registry;
+            this.min = min;
+            this.max = max;
+            this.values = Arrays.copyOf(source.values, Math.max(source.values.length, registry.size()));
+            this.leader = source.leader;
+            this.updatedAt = source.updatedAt;
+        }
+
+        public float get(int id) {
+            return id < values.length ? values[id] : 0.0f;
+        }
+
+        /**
+         * Set a value (clamped).
+         * @param id ID from the registry.
+         * @param value New value.
+         * @return The value that was actually stored.
+         */
+        public float set(int id, float value) {
+            if (id >= values.length)
+                values = Arrays.copyOf(values, registry.size());
+
+            float clamped = Math.max(min, Math.min(max, value));
+            float strength = Math.abs(clamped);
+            float leaderStrength = Math.abs(values[leader]);
+            values[id] = clamped;
+
+            // Keep track of the leader as we go, a full scan is only needed when the leader itself weakens.
+            if (id == leader) {
+                if (strength < leaderStrength)
+                    rescan = true;
+            }
+            else if (strength > leaderStrength || (strength == leaderStrength && id < leader)) {
+                leader = id;
+            }
+            return clamped;
+        }
+
+        /**
+         * Add an amount to a value (clamped). Can be negative.
+         * @return The new value.
+         */
+        public float add(int id, float amount) {
+            return set(id, get(id) + amount);
+        }
+
+        /**
+         * @return Immutable vector holding the edited values, with the source's timestamp. The editor must not be used afterwards.
+         */
+        public TraitVector build() {
+            return build(updatedAt);
+        }
+
+        /**
+         * @param updatedAt When the edited values were set (millis since the epoch).
+         * @return Immutable vector holding the edited values. The editor must not be used afterwards.
+         */
+        public TraitVector build(long updatedAt) {
+            if (rescan) {
+                leader = 0;
+                for (int id = 1; id < values.length; id++) {
+                    if (Math.abs(values[id]) > Math.abs(values[leader]))
+                        leader = id;
+                }
+            }
+            return new TraitVector(registry, values, leader, updatedAt);
+        }
+    }
+}
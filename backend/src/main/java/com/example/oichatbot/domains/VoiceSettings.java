@@ -0,0 +1,37 @@
+package com.example.oichatbot.domains;
+
+import com.google.cloud.texttospeech.v1.SsmlVoiceGender;
+
+/**
+ * Text-to-speech voice parameters derived from a conversation's personality and emotions.
+ * Numeric values are already quantized, so they can be used as part of the SpeechCache key as-is.
+ */
+public final class VoiceSettings {
+    private final SsmlVoiceGender voiceType;
+    private final double pitch;         // Semitones.
+    private final double speakingRate;
+    private final double volumeGain;    // Decibels.
+
+    public VoiceSettings(SsmlVoiceGender voiceType, double pitch, double speakingRate, double volumeGain) {
+        this.voiceType = voiceType;
+        this.pitch = pitch;
+        this.speakingRate = speakingRate;
+        this.volumeGain = volumeGain;
+    }
+
+    public SsmlVoiceGender getVoiceType() {
+        return voiceType;
+    }
+
+    public double getPitch() {
+        return pitch;
+    }
+
+    public double getSpeakingRate() {
+        return speakingRate;
+    }
+
+    public double getVolumeGain() {
+        return volumeGain;
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.oichatbot.managers;
+
+import com.example.oichatbot.domains.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Hands out IDs for audio clips and finds the clip belonging to an ID.
+ * Chat replies only carry a URL to their clip, the audio itself is downloaded separately (see AudioResource).
+ * Two kinds of clips exist: synthesized speech (ID = SpeechCache key, kept in memory and/or on disk by SpeechCache)
+ * and prerecorded extremes (ID = "extreme-" + name + "-" + content hash, kept in memory by ExtremeAudioBank).
+ * Either way an ID always stands for the same bytes, also when an extreme is replaced by hot reload.
+ * Singleton class.
+ */
+public class AudioManager {
+    private static final Logger log = LoggerFactory.getLogger(AudioManager.class);
+
+    public static final String URL_PREFIX = "/test/audio/";
+
+    private static final Pattern SPEECH_ID = Pattern.compile("[0-9a-f]{64}");
+    private static final String EXTREME_PREFIX = "extreme-";
+    private static final Pattern EXTREME_ID = Pattern.compile(EXTREME_PREFIX + "([a-z0-9]{1,64})-([0-9a-f]{16})");
+
+    private boolean inlineAudio = false;        // Also embed the clip as Base64 in the reply, for older clients.
+
+    private AudioManager() {
+    }
+
+    private static class Holder {
+        private static final AudioManager INSTANCE = new AudioManager();
+    }
+
+    // Static method to maintain one persistent instance.
+    public static AudioManager getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    public void setInlineAudio(boolean inlineAudio) {
+        this.inlineAudio = inlineAudio;
+    }
+
+    /**
+     * Build the ID of a prerecorded extreme response clip, as it is loaded right now.
+     * @param name File name without extension, e.g. "goaway".
+     * @return The clip ID, which doesn't resolve if there is no such clip.
+     */
+    public String extremeClipId(String name) {
+        ExtremeAudioBank.Clip clip = ExtremeAudioBank.getInstance().get(name);
+        return clip == null ? EXTREME_PREFIX + name : EXTREME_PREFIX + name + "-" + clip.getHash();
+    }
+
+    /**
+     * Attach a clip to a reply: always as URL, and as Base64 as well if inline audio is enabled.
+     * @param message Reply to attach the clip to.
+     * @param clipId ID of the clip, empty or null if there is no audio.
+     */
+    public void attachAudio(Message message, String clipId) {
+        if (clipId == null || clipId.isEmpty())
+            return;
+
+        ExtremeAudioBank.Clip extreme = findExtremeClip(clipId);
+        if (!SPEECH_ID.matcher(clipId).matches() && extreme == null)
+            return;     // E.g. a missing extreme file, reply without audio.
+
+        message.setAudioUrl(URL_PREFIX + clipId);
+        if (inlineAudio) {
+            if (extreme != null)
+                message.setAudioFile(extreme.getBase64());     // Already encoded at startup.
+            else
+                message.setAudioFile(ChatMetrics.time(ChatMetrics.Stage.ENCODE_AUDIO, () -> readSpeechBase64(clipId)));
+        }
+    }
+
+    /**
+     * Find the file that holds a synthesized speech clip.
+     * Unknown or malformed IDs never resolve, so this can't be used to read other files.
+     * @param clipId ID of the clip.
+     * @return Path to the MP3 file, or null if there is no such clip on disk.
+     */
+    public Path findClipFile(String clipId) {
+        if (!SPEECH_ID.matcher(clipId).matches())
+            return null;
+
+        Path file = SpeechCache.getInstance().pathFor(clipId);
+        return Files.isRegularFile(file) ? file : null;
+    }
+
+    /**
+     * Find a clip that is held in memory: prerecorded extremes, and synthesized speech in SpeechCache's memory tier.
+     * Checked before findClipFile(), so a clip that couldn't be written to disk can still be served.
+     * @param clipId ID of the clip.
+     * @return The MP3 bytes (shared, must not be modified), or null if there is no such clip in memory.
+     */
+    public byte[] findClipBytes(String clipId) {
+        if (SPEECH_ID.matcher(clipId).matches())
+            return SpeechCache.getInstance().getFromMemory(clipId);
+
+        ExtremeAudioBank.Clip clip = findExtremeClip(clipId);
+        return clip == null ? null : clip.getBytes();
+    }
+
+    /**
+     * @return The clip, or null if the ID is malformed or the clip was replaced (hot reload) since the ID was handed out.
+     */
+    private ExtremeAudioBank.Clip findExtremeClip(String clipId) {
+        Matcher matcher = EXTREME_ID.matcher(clipId);
+        if (!matcher.matches())
+            return null;
+
+        ExtremeAudioBank.Clip clip = ExtremeAudioBank.getInstance().get(matcher.group(1));
+        return (clip != null && clip.getHash().equals(matcher.group(2))) ? clip : null;
+    }
+
+    private String readSpeechBase64(String clipId) {
+        byte[] bytes = findClipBytes(clipId);
+        if (bytes != null)
+            return Base64.getEncoder().encodeToString(bytes);
+
+        Path file = findClipFile(clipId);
+        if (file == null)
+            return "";
+
+        try {
+            return Base64.getEncoder().encodeToString(Files.readAllBytes(file));
+        } catch (IOException e) {
+            log.warn("Could not read audio clip {}: {}", file, e.toString());
+            return "";
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package com.example.oichatbot.managers;
+
+import com.example.oichatbot.domains.EmotionModifier;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Emotion modifiers read straight from a compiled, memory-mapped lexicon file (see LexiconConverter).
+ * Nothing is copied onto the heap when the file is opened: lookups hash the words of the input and probe the
+ * hash table inside the file, so opening takes the same time and heap for a hundred terms or a million.
+ * Multi-word phrases are found by looking up every run of up to maxPhraseWords words that ends at the current word,
+ * so matching a sentence costs O(words * maxPhraseWords) no matter how big the lexicon is.
+ *
+ * File layout (big-endian):
+ * <pre>
+ * header     8 ints: magic "OILX", version, term count, modifier count, longest phrase (words), slot count, emotion count, strings offset
+ * emotions   emotion count ints: offset of the emotion's name in the string table
+ * slots      slot count ints (a power of two): term index + 1, 0 for empty slots (open addressing, linear probing)
+ * terms      term count records of 4 ints: hash, offset of the term in the string table, first modifier, modifier count
+ * modifiers  modifier count records: emotion index (int), weight (float)
+ * strings    every distinct string once: length (unsigned short), then its UTF-16 chars
+ * </pre>
+ * Terms are stored lowercase with their words separated by single spaces, like PhraseIndex matches them.
+ */
+public final class BinaryLexicon implements ModifierLexicon {
+    private static final int MAGIC = 0x4F494C58;       // "OILX"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8 * 4;
+    private static final int TERM_BYTES = 4 * 4;
+    private static final int MODIFIER_BYTES = 4 + 4;
+    private static final int FNV_OFFSET = 0x811C9DC5;
+    private static final int FNV_PRIME = 0x01000193;
+
+    private final ByteBuffer buffer;        // Read-only; only absolute reads are used, so it's safe to share between threads.
+    private final int termCount;
+    private final int modifierCount;
+    private final int maxPhraseWords;
+    private final int slotMask;
+    private final int slotsAt;
+    private final int termsAt;
+    private final int modifiersAt;
+    private final int stringsAt;
+    private final String[] emotions;        // The only strings decoded up front, there are just a few.
+
+    private BinaryLexicon(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC)
+            throw new IOException("Not a compiled lexicon file.");
+        if (buffer.getInt(4) != VERSION)
+            throw new IOException("Unsupported lexicon version " + buffer.getInt(4) + ", recompile it with LexiconConverter.");
+
+        termCount = buffer.getInt(8);
+        modifierCount = buffer.getInt(12);
+        maxPhraseWords = buffer.getInt(16);
+        int slotCount = buffer.getInt(20);
+        int emotionCount = buffer.getInt(24);
+        stringsAt = buffer.getInt(28);
+
+        slotMask = slotCount - 1;
+        slotsAt = HEADER_BYTES + emotionCount * 4;
+        termsAt = slotsAt + slotCount * 4;
+        modifiersAt = termsAt + termCount * TERM_BYTES;
+        if (Integer.bitCount(slotCount) != 1 || modifiersAt + modifierCount * MODIFIER_BYTES != stringsAt || stringsAt > buffer.capacity())
+            throw new IOException("Corrupt lexicon file (sections don't add up).");
+
+        emotions = new String[emotionCount];
+        for (int i = 0; i < emotionCount; i++)
+            emotions[i] = readString(buffer.getInt(HEADER_BYTES + i * 4));
+    }
+
+    /**
+     * Map a compiled lexicon file into memory.
+     * @param file File written by write() (usually through LexiconConverter).
+     * @return The lexicon, backed by the file (the OS pages it in on demand).
+     * @throws IOException If the file can't be read or isn't a valid lexicon.
+     */
+    public static BinaryLexicon open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed.
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new BinaryLexicon(mapped);
+        }
+    }
+
+    @Override
+    public void match(String input, Consumer<EmotionModifier> onMatch) {
+        if (termCount == 0)
+            return;
+
+        String lower = input.toLowerCase();
+        int length = lower.length();
+        // The last maxPhraseWords words (ring buffer), every phrase that ends at the current word starts in one of them.
+        int[] starts = new int[maxPhraseWords];
+        int[] ends = new int[maxPhraseWords];
+        int words = 0;
+        int i = 0;
+        while (i < length) {
+            // Skip whitespace up to the start of the next word.
+            while (i < length && Character.isWhitespace(lower.charAt(i)))
+                i++;
+            if (i == length)
+                break;
+            int start = i;
+            while (i < length && !Character.isWhitespace(lower.charAt(i)))
+                i++;
+
+            starts[words % maxPhraseWords] = start;
+            ends[words % maxPhraseWords] = i;
+            words++;
+
+            // Same order as PhraseIndex: the single word first, then the phrases ending here from longest to shortest.
+            report(find(lower, starts, ends, words, 1), onMatch);
+            for (int n = Math.min(words, maxPhraseWords); n >= 2; n--)
+                report(find(lower, starts, ends, words, n), onMatch);
+        }
+    }
+
+    /**
+     * Look up the last n words as one term.
+     * @return Index of the term, or -1 if it isn't in the lexicon.
+     */
+    private int find(String text, int[] starts, int[] ends, int words, int n) {
+        int hash = FNV_OFFSET;
+        int termLength = n - 1;     // Separating spaces.
+        for (int w = words - n; w < words; w++) {
+            int slot = w % maxPhraseWords;
+            if (w > words - n)
+                hash = (hash ^ ' ') * FNV_PRIME;
+            for (int c = starts[slot]; c < ends[slot]; c++)
+                hash = (hash ^ text.charAt(c)) * FNV_PRIME;
+            termLength += ends[slot] - starts[slot];
+        }
+
+        for (int slot = hash & slotMask; ; slot = (slot + 1) & slotMask) {
+            int entry = buffer.getInt(slotsAt + slot * 4);
+            if (entry == 0)
+                return -1;
+            int term = entry - 1;
+            int record = termsAt + term * TERM_BYTES;
+            if (buffer.getInt(record) == hash && termEquals(buffer.getInt(record + 4), text, starts, ends, words, n, termLength))
+                return term;
+        }
+    }
+
+    /**
+     * Compare a stored term with the last n words of the input, without building a string.
+     */
+    private boolean termEquals(int offset, String text, int[] starts, int[] ends, int words, int n, int termLength) {
+        int at = stringsAt + offset;
+        if ((buffer.getShort(at) & 0xffff) != termLength)
+            return false;
+
+        at += 2;
+        for (int w = words - n; w < words; w++) {
+            int slot = w % maxPhraseWords;
+            if (w > words - n) {
+                if (buffer.getChar(at) != ' ')
+                    return false;
+                at += 2;
+            }
+            for (int c = starts[slot]; c < ends[slot]; c++, at += 2) {
+                if (buffer.getChar(at) != text.charAt(c))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private void report(int term, Consumer<EmotionModifier> onMatch) {
+        if (term < 0)
+            return;
+
+        int record = termsAt + term * TERM_BYTES;
+        String word = readString(buffer.getInt(record + 4));
+        int first = buffer.getInt(record + 8);
+        int count = buffer.getInt(record + 12);
+        for (int m = first; m < first + count; m++) {
+            int at = modifiersAt + m * MODIFIER_BYTES;
+            onMatch.accept(new EmotionModifier(emotions[buffer.getInt(at)], word, buffer.getFloat(at + 4)));
+        }
+    }
+
+    private String readString(int offset) {
+        int at = stringsAt + offset;
+        char[] chars = new char[buffer.getShort(at) & 0xffff];
+        for (int i = 0; i < chars.length; i++)
+            chars[i] = buffer.getChar(at + 2 + i * 2);
+        return new String(chars);
+    }
+
+    @Override
+    public int size() {
+        return modifierCount;
+    }
+
+    /**
+     * @return Amount of distinct words and phrases.
+     */
+    public int countTerms() {
+        return termCount;
+    }
+
+    /**
+     * Compile modifiers into a lexicon file. The file is written next to the target and moved in place when complete,
+     * so a running application never maps a half-written file.
+     * @param modifiers Modifiers to compile, several modifiers may share the same word.
+     * @param file File to (over)write.
+     * @throws IOException If the file can't be written or a word is too long.
+     */
+    public static void write(Collection<EmotionModifier> modifiers, Path file) throws IOException {
+        // Group the modifiers per normalized term, keeping their order.
+        Map<String, List<EmotionModifier>> terms = new LinkedHashMap<>();
+        int maxPhraseWords = 0;
+        int modifierCount = 0;
+        for (EmotionModifier modifier : modifiers) {
+            String trimmed = modifier.getRelevantWord().toLowerCase().trim();
+            if (trimmed.isEmpty())
+                continue;
+            String[] words = trimmed.split("\\s+");
+            maxPhraseWords = Math.max(maxPhraseWords, words.length);
+            terms.computeIfAbsent(String.join(" ", words), t -> new ArrayList<>()).add(modifier);
+            modifierCount++;
+        }
+
+        // Interned string table: every emotion name and term is stored once.
+        StringTable strings = new StringTable();
+        Map<String, Integer> emotionIds = new LinkedHashMap<>();
+        for (List<EmotionModifier> list : terms.values()) {
+            for (EmotionModifier modifier : list)
+                emotionIds.computeIfAbsent(modifier.getRelevantEmotion(), e -> emotionIds.size());
+        }
+
+        int slotCount = Integer.highestOneBit(Math.max(2, terms.size() * 2 - 1)) << 1;     // Load factor at most 0.5.
+        int emotionsAt = HEADER_BYTES;
+        int slotsAt = emotionsAt + emotionIds.size() * 4;
+        int termsAt = slotsAt + slotCount * 4;
+        int modifiersAt = termsAt + terms.size() * TERM_BYTES;
+        int stringsAt = modifiersAt + modifierCount * MODIFIER_BYTES;
+
+        int[] emotionOffsets = new int[emotionIds.size()];
+        for (Map.Entry<String, Integer> emotion : emotionIds.entrySet())
+            emotionOffsets[emotion.getValue()] = strings.intern(emotion.getKey());
+
+        ByteBuffer index = ByteBuffer.allocate(stringsAt);
+        index.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, terms.size()).putInt(12, modifierCount)
+                .putInt(16, maxPhraseWords).putInt(20, slotCount).putInt(24, emotionIds.size()).putInt(28, stringsAt);
+        for (int i = 0; i < emotionOffsets.length; i++)
+            index.putInt(emotionsAt + i * 4, emotionOffsets[i]);
+
+        int term = 0;
+        int modifier = 0;
+        for (Map.Entry<String, List<EmotionModifier>> entry : terms.entrySet()) {
+            int hash = hash(entry.getKey());
+            int slot = hash & (slotCount - 1);
+            while (index.getInt(slotsAt + slot * 4) != 0)
+                slot = (slot + 1) & (slotCount - 1);
+            index.putInt(slotsAt + slot * 4, term + 1);
+
+            int record = termsAt + term * TERM_BYTES;
+            index.putInt(record, hash).putInt(record + 4, strings.intern(entry.getKey()))
+                    .putInt(record + 8, modifier).putInt(record + 12, entry.getValue().size());
+            for (EmotionModifier m : entry.getValue()) {
+                int at = modifiersAt + modifier * MODIFIER_BYTES;
+                index.putInt(at, emotionIds.get(m.getRelevantEmotion())).putFloat(at + 4, m.getModification());
+                modifier++;
+            }
+            term++;
+        }
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            index.rewind();
+            while (index.hasRemaining())
+                channel.write(index);
+            ByteBuffer table = strings.toBuffer();
+            while (table.hasRemaining())
+                channel.write(table);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * FNV-1a over the UTF-16 chars of a term, the same hash match() computes word by word.
+     */
+    static int hash(String term) {
+        int hash = FNV_OFFSET;
+        for (int i = 0; i < term.length(); i++)
+            hash = (hash ^ term.charAt(i)) * FNV_PRIME;
+        return hash;
+    }
+
+    /**
+     * Collects the string table while writing: every distinct string once, with its offset.
+     */
+    private static class StringTable {
+        private final Map<String, Integer> offsets = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+        private int size = 0;
+
+        int intern(String s) throws IOException {
+            Integer existing = offsets.get(s);
+            if (existing != null)
+                return existing;
+            if (s.length() > 0xffff)
+                throw new IOException("String too long for a lexicon: " + s.substring(0, 40) + "...");
+
+            int offset = size;
+            offsets.put(s, offset);
+            strings.add(s);
+            size += 2 + s.length() * 2;
+            return offset;
+        }
+
+        ByteBuffer toBuffer() {
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            for (String s : strings) {
+                buffer.putShort((short) s.length());
+                for (int i = 0; i < s.length(); i++)
+                    buffer.putChar(s.charAt(i));
+            }
+            buffer.flip();
+            return buffer;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.oichatbot.managers;
+
+import com.example.oichatbot.domains.IntentResponse;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Remembers DialogFlow's replies to common messages ("hi", "how are you"), so they don't need a round trip every time.
+ * Wraps another IntentDetector. Replies are keyed by the normalized message, the personality context and the language code,
+ * kept for a limited time (TTL) and evicted least-recently-used once the cache is full.
+ * Only the raw fulfillment text is cached, MessageParser still applies the current emotions to it.
+ * Replies that come with output contexts carry conversation state, so they (and configured intents) are never cached,
+ * and a conversation bypasses the cache while such a context may still be active.
+ */
+public class CachingIntentDetector implements IntentDetector {
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern OUTER_PUNCTUATION = Pattern.compile("^[\\p{Punct}\\s]+|[\\p{Punct}\\s]+$");
+
+    private final IntentDetector delegate;
+    private final long ttlMillis;
+    private final boolean cacheOutputContexts;      // False: replies with output contexts are never cached.
+    private final Set<String> excludedIntents;      // Display names of intents that are never cached.
+
+    private final LinkedHashMap<String, CachedReply> entries;      // Access-ordered, eldest = least recently used.
+    private final OutputContextTracker outputContexts;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bypassed = new AtomicLong();
+
+    /**
+     * @param delegate Detector that does the actual work on a miss.
+     * @param ttlMillis How long a reply stays valid.
+     * @param maxEntries Max amount of cached replies.
+     * @param cacheOutputContexts Whether replies with output contexts may be cached too.
+     * @param excludedIntents Display names of intents whose replies are never cached.
+     */
+    public CachingIntentDetector(IntentDetector delegate, long ttlMillis, int maxEntries, boolean cacheOutputContexts, Collection<String> excludedIntents) {
+        this.delegate = delegate;
+        this.ttlMillis = ttlMillis;
+        this.cacheOutputContexts = cacheOutputContexts;
+        this.excludedIntents = new HashSet<>(excludedIntents);
+        this.entries = new LinkedHashMap<String, CachedReply>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedReply> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.outputContexts = new OutputContextTracker(maxEntries);
+    }
+
+    @Override
+    public CompletableFuture<IntentResponse> detectIntentAsync(String sessionId, String input, String languageCode, String context) {
+        // A follow-up intent may be waiting for this conversation, only DialogFlow knows how to answer.
+        if (outputContexts.hasOutputContexts(sessionId)) {
+            bypassed.incrementAndGet();
+            return detectAndRemember(sessionId, input, languageCode, context, null);
+        }
+
+        String key = key(input, languageCode, context);
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            CachedReply entry = entries.get(key);
+            if (entry != null) {
+                if (entry.expiresAt > now) {
+                    hits.incrementAndGet();
+                    return CompletableFuture.completedFuture(entry.response);
+                }
+                entries.remove(key);
+            }
+        }
+        misses.incrementAndGet();
+        return detectAndRemember(sessionId, input, languageCode, context, key);
+    }
+
+    /**
+     * Ask the delegate, then cache the reply (if allowed) and track whether the conversation now has active output contexts.
+     * @param key Cache key, or null to never cache this reply.
+     */
+    private CompletableFuture<IntentResponse> detectAndRemember(String sessionId, String input, String languageCode, String context, String key) {
+        return delegate.detectIntentAsync(sessionId, input, languageCode, context).thenApply(response -> {
+            outputContexts.record(sessionId, response);
+            if (key != null && isCacheable(response)) {
+                synchronized (entries) {
+                    entries.put(key, new CachedReply(response, System.currentTimeMillis() + ttlMillis));
+                }
+            }
+            return response;
+        });
+    }
+
+    private boolean isCacheable(IntentResponse response) {
+        if (Boolean.TRUE.equals(response.getHasOutputContexts()) && !cacheOutputContexts)
+            return false;
+        return !excludedIntents.contains(response.getIntentName());
+    }
+
+    /**
+     * Build the cache key. Case, surrounding punctuation and repeated whitespace don't change the intent, so "Hi!" and "hi" share an entry.
+     */
+    static String key(String input, String languageCode, String context) {
+        String normalized = WHITESPACE.matcher(input.toLowerCase(Locale.ROOT)).replaceAll(" ");
+        normalized = OUTER_PUNCTUATION.matcher(normalized).replaceAll("");
+        return normalized + '\u0000' + context + '\u0000' + languageCode;
+    }
+
+    /**
+     * Drop every cached reply, e.g. after the DialogFlow agent has been changed.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return Requests that skipped the cache because their conversation had active output contexts.
+     */
+    public long getBypassed() {
+        return bypassed.get();
+    }
+
+    @Override
+    public CompletableFuture<Void> warmUp() {
+        return delegate.warmUp();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    private static class CachedReply {
+        private final IntentResponse response;
+        private final long expiresAt;
+
+        CachedReply(IntentResponse response, long expiresAt) {
+            this.response = response;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
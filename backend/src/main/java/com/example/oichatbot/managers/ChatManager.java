@@ -0,0 +1,183 @@
+package com.example.oichatbot.managers;
+
+import com.example.oichatbot.domains.BatchReply;
+import com.example.oichatbot.domains.ConversationState;
+import com.example.oichatbot.domains.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+/**
+ * Decides who answers a chat message: the DEBUG mode, an extreme response or DialogFlow.
+ * Shared by the request/response endpoint and the streaming endpoint, so both behave exactly the same.
+ * Singleton class.
+ */
+public class ChatManager {
+    private static final Logger log = LoggerFactory.getLogger(ChatManager.class);
+
+    private ChatManager() {
+    }
+
+    private static class Holder {
+        private static final ChatManager INSTANCE = new ChatManager();
+    }
+
+    // Static method to maintain one persistent instance.
+    public static ChatManager getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Determine the one best reply for any given singular chat message.
+     * @param state Conversation the message belongs to.
+     * @param input The user's message.
+     * @return Future with the complete reply, including audio if text-to-speech is enabled.
+     */
+    public CompletableFuture<Message> replyAsync(ConversationState state, String input) {
+        return replyAsync(state, input, reply -> { });
+    }
+
+    /**
+     * Determine the one best reply for any given singular chat message, handing out its text as early as possible.
+     * @param state Conversation the message belongs to.
+     * @param input The user's message.
+     * @param onText Called once with the reply as soon as its text is known. Audio may follow in the returned future.
+     * @return Future with the complete reply, including audio if text-to-speech is enabled.
+     */
+    public CompletableFuture<Message> replyAsync(ConversationState state, String input, Consumer<Message> onText) {
+        Message output;
+        long start = System.nanoTime();
+
+        // First check whether we're (already) in DEBUG, which means the back-end directly handles this request without DialogFlow.
+        boolean inDebug = DebugManager.getInstance().inDebug(state);
+        boolean exitDebug = inDebug && DebugManager.getInstance().wantsToExitDebug(input);
+        boolean enterDebug = !inDebug && DebugManager.getInstance().wantsToEnterDebug(input);
+        ChatMetrics.record(ChatMetrics.Stage.DEBUG_CHECKS, System.nanoTime() - start);
+
+        ChatMetrics.Route route = ChatMetrics.Route.DEBUG;
+        if (inDebug) {
+            if (exitDebug) {
+                // Exit DEBUG mode.
+                String content = DebugManager.getInstance().exitDebug(state);
+                output = new Message(content, true, PersonalityManager.getInstance().determineSuggestedColor(state));
+                log.info("Exiting DEBUG mode.");
+            }
+            else {
+                // Detect DEBUG intent and do stuff.
+                String content = DebugManager.getInstance().parseCommand(state, input);
+                output = new Message(content, true, DebugManager.getInstance().getDebugColor());
+                log.debug("Attempted to recognize as debug command: {}", input);
+                log.debug("Debug mode output: {}", content);
+            }
+        }
+        else if (enterDebug) {
+            // Enter DEBUG mode.
+            String content = DebugManager.getInstance().enterDebug(state);
+            output = new Message(content, true, DebugManager.getInstance().getDebugColor());
+            log.info("Entering DEBUG mode.");
+        }
+        else if (ExceptionManager.getInstance().shouldRespondExtreme(state)) {
+            // User is not currently in DEBUG and doesn't want to be, but it's time for an extreme response/exception.
+            // Extremes use preloaded audio, so text and audio are ready at the same time.
+            output = ChatMetrics.time(ChatMetrics.Stage.EXTREME, () -> ExceptionManager.getInstance().chatExtreme(state, input));
+            route = ChatMetrics.Route.EXTREME;
+        }
+        else {
+            // Otherwise we send their message to DialogFlow.
+            return DialogFlowBridge.getInstance().chatAsync(state, input, "en-US", onText)
+                    .whenComplete((message, e) -> ChatMetrics.recordReply(ChatMetrics.Route.DIALOGFLOW, System.nanoTime() - start));
+        }
+
+        onText.accept(output);
+        ChatMetrics.recordReply(route, System.nanoTime() - start);
+        return CompletableFuture.completedFuture(output);
+    }
+
+    /**
+     * Reply to a whole list of messages of one conversation, e.g. to replay a transcript.
+     * Messages are started strictly in order, so emotion updates (and DEBUG commands) apply exactly as if they were sent one by one.
+     * Their upstream calls (DialogFlow, text-to-speech) overlap though, at most maxParallel at a time, which keeps Google busy without flooding it.
+     * No thread waits in the meantime: every finished reply starts the next message.
+     * Note that DialogFlow output contexts of a message are only guaranteed to reach the next one with maxParallel 1.
+     * @param state Conversation the messages belong to.
+     * @param inputs The user's messages, in order.
+     * @param maxParallel Max amount of replies in progress at once.
+     * @param onReply Called with every reply (or failure) as soon as it is complete, so in order of completion. Calls never overlap.
+     * @return Future that completes once every message has been answered.
+     */
+    public CompletableFuture<Void> replyBatchAsync(ConversationState state, List<String> inputs, int maxParallel, Consumer<BatchReply> onReply) {
+        Batch batch = new Batch(state, inputs, Math.max(1, maxParallel), onReply);
+        batch.pump();
+        return batch.done;
+    }
+
+    /**
+     * Progress of one replyBatchAsync() call.
+     */
+    private class Batch {
+        private final ConversationState state;
+        private final List<String> inputs;
+        private final int maxParallel;
+        private final Consumer<BatchReply> onReply;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private int next = 0;               // Index of the next message to start.
+        private int inFlight = 0;           // Messages started but not answered yet.
+        private boolean pumping = false;    // True while pump() is starting messages (replies may complete inside it).
+
+        Batch(ConversationState state, List<String> inputs, int maxParallel, Consumer<BatchReply> onReply) {
+            this.state = state;
+            this.inputs = inputs;
+            this.maxParallel = maxParallel;
+            this.onReply = onReply;
+        }
+
+        /**
+         * Start messages until the limit is reached. Replies that complete right away (DEBUG, extremes) free their slot immediately,
+         * the loop then simply continues instead of recursing.
+         */
+        synchronized void pump() {
+            if (pumping)
+                return;
+
+            pumping = true;
+            try {
+                while (inFlight < maxParallel && next < inputs.size()) {
+                    int index = next++;
+                    inFlight++;
+                    CompletableFuture<Message> reply;
+                    try {
+                        reply = replyAsync(state, inputs.get(index));
+                    } catch (RuntimeException e) {
+                        reply = FutureUtils.failed(e);
+                    }
+                    reply.whenComplete((message, e) -> finish(index, message, e));
+                }
+            } finally {
+                pumping = false;
+            }
+
+            if (inFlight == 0 && next == inputs.size())
+                done.complete(null);
+        }
+
+        private void finish(int index, Message message, Throwable e) {
+            synchronized (this) {
+                if (e == null) {
+                    onReply.accept(new BatchReply(index, message, null));
+                }
+                else {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    log.warn("Could not reply to batch message {}: {}", index, cause.toString());
+                    onReply.accept(new BatchReply(index, null, cause.toString()));
+                }
+                inFlight--;
+            }
+            pump();
+        }
+    }
+}
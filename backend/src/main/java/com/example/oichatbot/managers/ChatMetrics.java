@@ -0,0 +1,171 @@
+package com.example.oichatbot.managers;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Timers and counters for every stage of a chat reply, exposed through Actuator (/actuator/metrics and /actuator/prometheus).
+ * All stages share the timer "chatbot.stage", told apart by the "stage" tag, so one dashboard query shows where a slow reply spends its time.
+ * Upstream stages (detect-intent, say) are timed from the moment the call starts until its reply arrives, so they show Google's latency as we see it.
+ * The meters are created in whatever registry this is bound to (Spring binds it to its own registry, see ManagerConfiguration).
+ * Until then nothing is recorded, e.g. in benchmarks. Binding again (a new application context) replaces the meters.
+ * Singleton class.
+ */
+public final class ChatMetrics implements MeterBinder {
+
+    /**
+     * Stages of a chat reply, each with its own "chatbot.stage" timer.
+     */
+    public enum Stage {
+        DEBUG_CHECKS("debug-checks", false),
+        ALTER_EMOTIONS("alter-emotions", false),
+        DETECT_INTENT("detect-intent", true),
+        PARSE("parse", false),
+        COLOR("color", false),
+        SAY("say", true),               // Failures are replies sent without audio because synthesis failed.
+        ENCODE_AUDIO("encode-audio", false),
+        EXTREME("extreme", false);
+
+        private final String tag;
+        private final boolean countsFailures;
+
+        Stage(String tag, boolean countsFailures) {
+            this.tag = tag;
+            this.countsFailures = countsFailures;
+        }
+    }
+
+    /**
+     * Who answered a message. Whole replies are timed per route, their counts are the throughput.
+     */
+    public enum Route {
+        DEBUG("debug"), EXTREME("extreme"), DIALOGFLOW("dialogflow");
+
+        private final String tag;
+
+        Route(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private volatile Meters meters = null;      // Null until bound to a registry.
+
+    private ChatMetrics() {
+    }
+
+    private static class Holder {
+        private static final ChatMetrics INSTANCE = new ChatMetrics();
+    }
+
+    // Static method to maintain one persistent instance.
+    public static ChatMetrics getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        meters = new Meters(registry);
+    }
+
+    /**
+     * Time a synchronous stage.
+     * @param stage Stage to time.
+     * @param work The work to time.
+     * @return Whatever the stage returned.
+     */
+    public static <T> T time(Stage stage, Supplier<T> work) {
+        long start = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            record(stage, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Record a stage that was timed by the caller.
+     * @param stage Stage that ran.
+     * @param nanos Time it took.
+     */
+    public static void record(Stage stage, long nanos) {
+        Meters current = getInstance().meters;
+        if (current != null)
+            current.stages[stage.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Time an asynchronous stage, from now until the future completes (successfully or not).
+     * @param stage Stage to time.
+     * @param countFailures Whether a failed future counts as a failure of this stage.
+     * @param future The running stage.
+     * @return The same future, for chaining.
+     */
+    public static <T> CompletableFuture<T> timeAsync(Stage stage, boolean countFailures, CompletableFuture<T> future) {
+        long start = System.nanoTime();
+        future.whenComplete((result, e) -> {
+            record(stage, System.nanoTime() - start);
+            if (e != null && countFailures)
+                failed(stage);
+        });
+        return future;
+    }
+
+    /**
+     * Count a failure of a stage. Only stages that count failures (detect-intent, say) have a counter, others are ignored.
+     * @param stage Stage that failed.
+     */
+    public static void failed(Stage stage) {
+        Meters current = getInstance().meters;
+        if (current != null && current.failures[stage.ordinal()] != null)
+            current.failures[stage.ordinal()].increment();
+    }
+
+    /**
+     * Record a complete reply.
+     * @param route Who answered.
+     * @param nanos Time from receiving the message until the reply (including audio) was complete.
+     */
+    public static void recordReply(Route route, long nanos) {
+        Meters current = getInstance().meters;
+        if (current != null)
+            current.replies[route.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Every meter, registered in one registry. Looked up by enum ordinal, so recording never touches a map.
+     */
+    private static final class Meters {
+        private final Timer[] stages = new Timer[Stage.values().length];
+        private final Counter[] failures = new Counter[Stage.values().length];
+        private final Timer[] replies = new Timer[Route.values().length];
+
+        Meters(MeterRegistry registry) {
+            for (Stage stage : Stage.values()) {
+                stages[stage.ordinal()] = Timer.builder("chatbot.stage")
+                        .description("Time spent in one stage of a chat reply")
+                        .tag("stage", stage.tag)
+                        .publishPercentileHistogram()
+                        .register(registry);
+                if (stage.countsFailures) {
+                    failures[stage.ordinal()] = Counter.builder("chatbot.stage.failures")
+                            .description("Stages that failed, e.g. upstream errors and timeouts")
+                            .tag("stage", stage.tag)
+                            .register(registry);
+                }
+            }
+            for (Route route : Route.values()) {
+                replies[route.ordinal()] = Timer.builder("chatbot.reply")
+                        .description("Time until a reply is complete (including audio)")
+                        .tag("route", route.tag)
+                        .publishPercentileHistogram()
+                        .register(registry);
+            }
+        }
+    }
+}
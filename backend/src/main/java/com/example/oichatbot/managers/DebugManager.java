@@ -1,31 +1,46 @@
 package com.example.oichatbot.managers;
 
+import com.example.oichatbot.domains.ConversationState;
+import com.example.oichatbot.domains.TraitRegistry;
+import com.example.oichatbot.domains.TraitValues;
+import com.example.oichatbot.domains.TraitVector;
+import com.google.gson.Gson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Random;
-import java.util.regex.Matcher;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.regex.Pattern;
 
 /**
  * Holds debug information and methods (such as directly changing personality traits).
+ * Every phrase and keyword is compiled into one token trie when the manager is created, so recognizing a command
+ * takes one pass over the input's words: no repeated lowercasing, list scans or regex compilation per message.
  * Singleton class.
  */
 public class DebugManager {
-    private Boolean inDebug = false;
-    private List<String> entryPhrases;      // Possible phrases to be used by the user.
-    private List<String> exitPhrases;       // Possible phrases to be used by the user.
+    private static final Logger log = LoggerFactory.getLogger(DebugManager.class);
+
+    private static final Pattern NUMBER = Pattern.compile("[-+]?\\d*\\.\\d+|[-+]?\\d+");  // Catches every possible variant of a positive or negative decimal.
+    private static final Gson GSON = new Gson();
+
+    // What a recognized phrase or keyword means.
+    private enum Command { ENTER, EXIT, CHECK_VALUE, SET_VALUE, PLAY, MUTE, TOGGLE, DUMP, RESET }
+
+    private final Node commands = new Node();     // Root of the token trie over entry/exit phrases and command keywords.
 
     private List<String> introMessages;     // Possible messages to be used by the bot.
     private List<String> outroMessages;     // Possible messages to be used by the bot.
 
-    private List<String> checkValueKeywords;    // Possible (first) words to use in a checkValue() request.
-    private List<String> setValueKeywords;    // Possible (first) words to use in a setValue() request.
-    private List<String> playMuteKeywords;      // Possible (first) words to use in a playMute() request.
+    private volatile TraitNames traitNames = new TraitNames(0, 0);     // Lowercase trait/emotion names, rebuilt when new ones are registered.
 
     private String debugColor = "#DFDFDF";  // Default background color for debug messages in the front-end.
 
-    private static DebugManager instance = null;
-
     public DebugManager() {
         initEntryPhrases();
         initExitPhrases();
@@ -34,70 +49,63 @@ public class DebugManager {
         initCheckValueKeywords();
         initSetValueKeywords();
         initPlayMuteKeywords();
+        initStateKeywords();
     }
 
-    // Static method to maintain one persistent instance.
-    public static DebugManager getInstance()
-    {
-        if (instance == null)
-            instance = new DebugManager();
+    private static class Holder {
+        private static final DebugManager INSTANCE = new DebugManager();
+    }
 
-        return instance;
+    // Static method to maintain one persistent instance.
+    public static DebugManager getInstance() {
+        return Holder.INSTANCE;
     }
 
     public Boolean wantsToEnterDebug(String input) {
-        String parsed = input.trim();
-        parsed = parsed.replaceAll("/^[A-Za-z]+$/", "");    // Letters and whitespaces.
-        parsed = parsed.toLowerCase();
-        return (entryPhrases.contains(parsed));
+        return matchWholePhrase(tokenize(input)) == Command.ENTER;
     }
 
     public Boolean wantsToExitDebug(String input) {
-        String parsed = input.trim();
-        parsed = parsed.replaceAll("/^[A-Za-z]+$/", "");    // Only letters and whitespaces.
-        parsed = parsed.toLowerCase();
-        return (exitPhrases.contains(parsed));
+        return matchWholePhrase(tokenize(input)) == Command.EXIT;
     }
 
-    public String enterDebug() {
-        inDebug = true;
+    public String enterDebug(ConversationState state) {
+        state.setInDebug(true);
         return getEntryMessage();
     }
 
-    public String exitDebug() {
-        inDebug = false;
+    public String exitDebug(ConversationState state) {
+        state.setInDebug(false);
         return getOutroMessage();
     }
 
     /**
-     * Fill entryPhrases array with possible recognized commands.
+     * Add possible recognized entry phrases to the trie.
      */
     private void initEntryPhrases() {
-        entryPhrases = new ArrayList<>();
-        entryPhrases.add("analysis");
-        entryPhrases.add("enter analysis");
-        entryPhrases.add("analysis mode");
-        entryPhrases.add("enter analysis mode");
-        entryPhrases.add("debug");
-        entryPhrases.add("enter debug");
-        entryPhrases.add("debug mode");
-        entryPhrases.add("enter debug mode");
+        addKeyword(Command.ENTER, "analysis");
+        addKeyword(Command.ENTER, "enter analysis");
+        addKeyword(Command.ENTER, "analysis mode");
+        addKeyword(Command.ENTER, "enter analysis mode");
+        addKeyword(Command.ENTER, "debug");
+        addKeyword(Command.ENTER, "enter debug");
+        addKeyword(Command.ENTER, "debug mode");
+        addKeyword(Command.ENTER, "enter debug mode");
     }
 
     /**
-     * Fill exitPhrases array with possible recognized commands.
+     * Add possible recognized exit phrases to the trie.
      */
     private void initExitPhrases() {
-        exitPhrases = new ArrayList<>();
-        exitPhrases.add("exit");
-        exitPhrases.add("exit analysis");
-        exitPhrases.add("exit analysis mode");
-        exitPhrases.add("exit debug");
-        exitPhrases.add("exit debug mode");
-        exitPhrases.add("normal mode");
-        exitPhrases.add("resume");
-        exitPhrases.add("back to normal");
-        exitPhrases.add("go back to normal");
+        addKeyword(Command.EXIT, "exit");
+        addKeyword(Command.EXIT, "exit analysis");
+        addKeyword(Command.EXIT, "exit analysis mode");
+        addKeyword(Command.EXIT, "exit debug");
+        addKeyword(Command.EXIT, "exit debug mode");
+        addKeyword(Command.EXIT, "normal mode");
+        addKeyword(Command.EXIT, "resume");
+        addKeyword(Command.EXIT, "back to normal");
+        addKeyword(Command.EXIT, "go back to normal");
     }
 
     private void initIntroMessages() {
@@ -122,225 +130,375 @@ public class DebugManager {
     }
 
     private String getEntryMessage() {
-        int randomIndex = new Random().nextInt(introMessages.size());
+        int randomIndex = ThreadLocalRandom.current().nextInt(introMessages.size());
         return introMessages.get(randomIndex);
     }
 
     private String getOutroMessage() {
-        int randomIndex = new Random().nextInt(outroMessages.size());
+        int randomIndex = ThreadLocalRandom.current().nextInt(outroMessages.size());
         return outroMessages.get(randomIndex);
     }
 
     /**
      * Detect possible debug command and execute it accordingly - EXCLUDING enter/exit debug mode commands.
+     * @param state Conversation the command applies to.
      * @param input Command to try and execute.
      * @return Response from bot (usually a confirmation message).
      */
-    public String parseCommand(String input) {
-        // Could be a "checkValue" command.
-        if (recognizeCommandAsCheckValue(input.trim().toLowerCase())) {
-            return checkValue(input.trim().toLowerCase());
-        }
-        // Could be a "setValue" command.
-        if (recognizeCommandAsSetValue(input.trim().toLowerCase())) {
-            return setValue(input.trim().toLowerCase());
-        }
-        // Could be a "play/mute" command.
-        if (recognizeCommandAsPlayMute(input.trim().toLowerCase())) {
-            return playMute();
+    public String parseCommand(ConversationState state, String input) {
+        List<String> words = tokenize(input);
+        Node keyword = matchKeyword(words);
+        if (keyword == null) {
+            // No recognized command.
+            return "(DEBUG): Warning! No known command recognized.";
         }
 
-        // No recognized command.
-        return "(DEBUG): Warning! No known command recognized.";
+        List<String> arguments = words.subList(keyword.depth, words.size());
+        switch (keyword.command) {
+            case CHECK_VALUE:
+                return checkValue(state, arguments);
+            case SET_VALUE:
+                return setValues(state, arguments);
+            case PLAY:
+                return setAudio(state, true);
+            case MUTE:
+                return setAudio(state, false);
+            case TOGGLE:
+                return playMute(state);
+            case DUMP:
+                return dumpState(state);
+            case RESET:
+                return resetState(state);
+            default:
+                // Entry/exit phrases are handled by ChatManager.
+                return "(DEBUG): Warning! No known command recognized.";
+        }
     }
 
 
-    public Boolean inDebug() {
-        return inDebug;
+    public Boolean inDebug(ConversationState state) {
+        return state.isInDebug();
     }
 
     public String getDebugColor() {
         return debugColor;
     }
 
-    private Boolean recognizeCommandAsCheckValue(String input) {
-        if (!input.contains(" ")) {
-            // Doesn't even contain a single whitespace - can't possibly be a valid checkValue() request.
-            return false;
-        }
-
-        int i = input.indexOf(" ");     // First whitespace.
-        String firstWord = input.substring(0, i);   // First word.
-
-        return (checkValueKeywords.contains(firstWord));
-    }
-
     private void initCheckValueKeywords() {
-        checkValueKeywords = new ArrayList<>();
-        checkValueKeywords.add("how");
-        checkValueKeywords.add("what");
-        checkValueKeywords.add("what's");
-        checkValueKeywords.add("get");
+        addKeyword(Command.CHECK_VALUE, "how");
+        addKeyword(Command.CHECK_VALUE, "what");
+        addKeyword(Command.CHECK_VALUE, "what's");
+        addKeyword(Command.CHECK_VALUE, "get");
     }
 
     /**
      * Check the value of one specified character trait or emotion.
-     * @param input Full input sentence, (hopefully) containing a trait or emotion.
+     * @param state Conversation to check the value in.
+     * @param words Words after the keyword, (hopefully) containing a trait or emotion.
      * @return Output message displaying the appropriate value or warning that no matching emotion/trait was found.
      */
-    private String checkValue(String input) {
-        String parsed = input.replaceAll("/^[A-Za-z]+$/", "");    // Only letters and whitespaces.
-
-        // Right now 'parsed' is one raw sentence.
-        // We will split it up into words and iterate through every single one until we detect a valid emotion/trait.
-        String[] words = parsed.split(" ");
-        String detectedMatch = "";  // Detected match, either a personality trait or an emotion.
-        Integer matchingMap = -1;   // 0 if it's a personality trait, 1 if it's an emotion.
-        Float value = 0.0f;
-        for (String w: words) {
-            // Make the first letter of the word uppercase, the rest stays lowercase.
-            String parsedWord = w.substring(0, 1).toUpperCase() + w.substring(1).toLowerCase();
-            if (PersonalityManager.getInstance().getPersonality().containsKey(parsedWord)) {
-                detectedMatch = parsedWord;
-                matchingMap = 0;
-                value = PersonalityManager.getInstance().getPersonality().get(parsedWord);
-                break;
+    private String checkValue(ConversationState state, List<String> words) {
+        // Iterate through every word until we detect a valid emotion/trait.
+        TraitNames names = getTraitNames();
+        for (String word : words) {
+            Trait trait = names.get(word);
+            if (trait == null)
+                continue;
+
+            if (trait.personality)
+                return "(DEBUG): Personality trait \"" + trait.name + "\" is currently set to: " + state.getPersonality().get(trait.id) + ".";
+            return "(DEBUG): Emotion \"" + trait.name + "\" is currently set to: " + state.getEmotions().get(trait.id) + ".";
+        }
+        return "(DEBUG): WARNING! Attempted to parse command as \"checkValue()\", but no matching trait or emotion was found.";
+    }
+
+    private void initSetValueKeywords() {
+        addKeyword(Command.SET_VALUE, "set");
+        addKeyword(Command.SET_VALUE, "change");
+    }
+
+    /**
+     * Set one or more traits/emotions, e.g. "set desire to 0.5" or "set desire 0.5, curiosity 0.2, patience=-1".
+     * Every trait is paired with the number following it (or preceding it, if that number isn't taken yet).
+     * Personality traits and emotions are each changed in one atomic update.
+     * @param state Conversation to change.
+     * @param words Words after the keyword.
+     * @return Confirmation listing every stored (clamped) value, or a warning if nothing could be set.
+     */
+    private String setValues(ConversationState state, List<String> words) {
+        TraitNames names = getTraitNames();
+        Map<Trait, Float> changes = new LinkedHashMap<>();     // In the order they were mentioned.
+
+        Trait pendingTrait = null;      // Trait still waiting for a value.
+        Float pendingValue = null;      // Value still waiting for a trait.
+        Trait firstTrait = null;        // For the warning if no value was found at all.
+        for (String word : words) {
+            Trait trait = names.get(word);
+            if (trait != null) {
+                if (firstTrait == null)
+                    firstTrait = trait;
+                if (pendingValue != null) {
+                    changes.put(trait, pendingValue);
+                    pendingValue = null;
+                }
+                else {
+                    pendingTrait = trait;
+                }
             }
-            else if (PersonalityManager.getInstance().getEmotions().containsKey(parsedWord)) {
-                detectedMatch = parsedWord;
-                matchingMap = 1;
-                value = PersonalityManager.getInstance().getEmotions().get(parsedWord);
-                break;
+            else if (NUMBER.matcher(word).matches()) {
+                float value = Float.parseFloat(word);
+                if (pendingTrait != null) {
+                    changes.put(pendingTrait, value);
+                    pendingTrait = null;
+                }
+                else {
+                    pendingValue = value;
+                }
             }
         }
 
-        // We've iterated through every word (or until we found a match).
-        // If there is a match, we know which map it belongs to in PersonalityManager and its value.
-        String response = "";
-        switch (matchingMap) {
-            case 0:
-                response = "(DEBUG): Personality trait \"" + detectedMatch + "\" is currently set to: " + value.toString() + ".";
-                break;
-
-            case 1:
-                response = "(DEBUG): Emotion \"" + detectedMatch + "\" is currently set to: " + value.toString() + ".";
-                break;
+        // If we've not found a single matching emotion/trait, cancel this method early.
+        if (firstTrait == null)
+            return "(DEBUG): WARNING! Attempted to parse command as \"setValue()\" but no matching trait or emotion was found.";
+        if (changes.isEmpty())
+            return "(DEBUG): WARNING! Attempted to parse command as \"setValue()\". Emotion/trait \"" + firstTrait.name + "\" was found but no valid float value could be detected in your command.";
+
+        // Values are clamped to their valid range (e.g. -1.0 to 1.0 for emotions).
+        TraitVector personality = apply(state.getPersonalityValues(), changes, true);
+        TraitVector emotions = apply(state.getEmotionValues(), changes, false);
+        log.debug("Debug set: {}", changes);
+
+        if (changes.size() == 1) {
+            // Single value, same confirmation as always.
+            Trait trait = changes.keySet().iterator().next();
+            if (trait.personality)
+                return "(DEBUG): Personality trait altered: " + trait.name + " has been set to " + personality.get(trait.id) + ".";
+            return "(DEBUG): Emotion altered: " + trait.name + " has been set to " + emotions.get(trait.id) + ".";
+        }
 
-            default:
-                response = "(DEBUG): WARNING! Attempted to parse command as \"checkValue()\", but no matching trait or emotion was found.";
+        StringBuilder response = new StringBuilder("(DEBUG): Values altered: ");
+        String separator = "";
+        for (Trait trait : changes.keySet()) {
+            float value = trait.personality ? personality.get(trait.id) : emotions.get(trait.id);
+            response.append(separator).append(trait.name).append(" = ").append(value);
+            separator = ", ";
         }
+        return response.append('.').toString();
+    }
 
-        return response;
+    /**
+     * Apply every change that belongs to one set of values (personality or emotions) as one atomic update.
+     * @return The values afterwards.
+     */
+    private static TraitVector apply(TraitValues values, Map<Trait, Float> changes, boolean personality) {
+        return values.update(editor -> {
+            for (Map.Entry<Trait, Float> change : changes.entrySet()) {
+                if (change.getKey().personality == personality)
+                    editor.set(change.getKey().id, change.getValue());
+            }
+        });
     }
 
-    private Boolean recognizeCommandAsSetValue(String input) {
-        if (!input.contains(" ")) {
-            // Doesn't even contain a single whitespace - can't possibly be a valid setValue() request.
-            return false;
-        }
+    private void initPlayMuteKeywords() {
+        addKeyword(Command.MUTE, "mute");
+        addKeyword(Command.PLAY, "unmute");
+        addKeyword(Command.PLAY, "play");
+        addKeyword(Command.TOGGLE, "toggle");
+    }
 
-        int i = input.indexOf(" ");     // First whitespace.
-        String firstWord = input.substring(0, i);   // First word.
+    /**
+     * Toggle audio output from SpeechManager.
+     * Prevents unnecessary cost calculation from Google Cloud.
+     */
+    private String playMute(ConversationState state) {
+        return describeAudio(SpeechManager.getInstance().toggleAudio(state));
+    }
 
-        return (setValueKeywords.contains(firstWord));
+    /**
+     * Enable or disable audio output, regardless of its current setting (so scripts can repeat it safely).
+     */
+    private String setAudio(ConversationState state, boolean enabled) {
+        state.setAudioEnabled(enabled);
+        return describeAudio(enabled);
     }
 
-    private void initSetValueKeywords() {
-        setValueKeywords = new ArrayList<>();
-        setValueKeywords.add("set");
-        setValueKeywords.add("change");
-    }
-
-    private String setValue(String input) {
-        // We will split it up into words and iterate through every single one until we detect a valid emotion/trait.
-        String[] words = input.split(" ");
-        String detectedMatch = "";  // Detected match, either a personality trait or an emotion.
-        Integer matchingMap = -1;   // 0 if it's a personality trait, 1 if it's an emotion.
-        for (String w: words) {
-            // Make the first letter of the word uppercase, the rest stays lowercase.
-            String parsedWord = w.substring(0, 1).toUpperCase() + w.substring(1).toLowerCase();
-            if (PersonalityManager.getInstance().getPersonality().containsKey(parsedWord)) {
-                detectedMatch = parsedWord;
-                matchingMap = 0;
-                break;
-            }
-            else if (PersonalityManager.getInstance().getEmotions().containsKey(parsedWord)) {
-                detectedMatch = parsedWord;
-                matchingMap = 1;
-                break;
-            }
+    private String describeAudio(boolean enabled) {
+        if (enabled) {
+            // Audio should now play.
+            return "(DEBUG): Audio output has been enabled.";
         }
+        else {
+            // Audio should be muted.
+            return "(DEBUG): Audio output has been disabled.";
+        }
+    }
 
-        String response = "";
+    private void initStateKeywords() {
+        addKeyword(Command.DUMP, "dump");
+        addKeyword(Command.DUMP, "state");
+        addKeyword(Command.DUMP, "status");
+        addKeyword(Command.DUMP, "show state");
+        addKeyword(Command.RESET, "reset");
+        addKeyword(Command.RESET, "defaults");
+    }
 
-        // If we've not found a single matching emotion/trait, cancel this method early.
-        if (matchingMap == -1) {
-            response = "(DEBUG): WARNING! Attempted to parse command as \"setValue()\" but no matching trait or emotion was found.";
-            return response;
-        }
+    /**
+     * Show the whole conversation state as one line of JSON, so scripts can parse it.
+     * @param state Conversation to show.
+     * @return "(DEBUG): State: " followed by the JSON.
+     */
+    private String dumpState(ConversationState state) {
+        Map<String, Object> dump = new LinkedHashMap<>();
+        dump.put("sessionId", state.getSessionId());
+        dump.put("audioEnabled", state.isAudioEnabled());
+        dump.put("leadingPersonality", state.getPersonality().getLeaderName());
+        dump.put("personality", state.getPersonality().toMap());
+        dump.put("emotions", state.getEmotions().toMap());
+        return "(DEBUG): State: " + GSON.toJson(dump);
+    }
 
-        // If we've successfully detected an emotion/trait, we now need to determine what value to set it to.
-        Float value = -10.0f;
-        // Pattern p = Pattern.compile("^-?\\d*\\.\\d+|\\d+");
-        Pattern p = Pattern.compile("[-+]?\\d*\\.\\d+|[-+]?\\d+");  // Catches every possible variant of a positive or negative decimal.
-        Matcher m = p.matcher(input);
-        // We could use a while loop but there shouldn't be more results than one.
-        if (m.find()) {
-            value = Float.valueOf(m.group());
-            System.out.println("Detected requested new value: " + value);
-        }
+    /**
+     * Put every trait and emotion back to what a new conversation starts with, and enable audio. Stays in debug mode.
+     */
+    private String resetState(ConversationState state) {
+        PersonalityManager.getInstance().resetState(state);
+        state.setAudioEnabled(true);
+        return "(DEBUG): Personality, emotions and audio have been reset to their defaults.";
+    }
 
-        // If the float is still at its absurd initial value we know we failed to find an acceptable float value from the input string.
-        // Cancel method early.
-        if (value == -10.0f) {
-            response = "(DEBUG): WARNING! Attempted to parse command as \"setValue()\". Emotion/trait \"" + detectedMatch + "\" was found but no valid float value could be detected in your command.";
-            return response;
+    /**
+     * Add a phrase or keyword (one or more words) to the trie.
+     * Entry/exit phrases must match the whole input, command keywords only its first words.
+     */
+    private void addKeyword(Command command, String keyword) {
+        List<String> words = tokenize(keyword);
+        Node node = commands;
+        for (String word : words)
+            node = node.children.computeIfAbsent(word, w -> new Node());
+        node.command = command;
+        node.depth = words.size();
+    }
+
+    /**
+     * @return The command the whole input spells out, or null if it's not exactly one of the phrases.
+     */
+    private Command matchWholePhrase(List<String> words) {
+        Node node = commands;
+        for (String word : words) {
+            node = node.children.get(word);
+            if (node == null)
+                return null;
         }
-        switch (matchingMap) {
-            case 0:
-                PersonalityManager.getInstance().getPersonality().put(detectedMatch, value);
-                response = "(DEBUG): Personality trait altered: " + detectedMatch + " has been set to " + value.toString() + ".";
-                break;
+        return node.command;
+    }
 
-            case 1:
-                PersonalityManager.getInstance().getEmotions().put(detectedMatch, value);
-                response = "(DEBUG): Emotion altered: " + detectedMatch + " has been set to " + value.toString() + ".";
+    /**
+     * @return The longest command keyword the input starts with (not entry/exit phrases), or null if there is none.
+     */
+    private Node matchKeyword(List<String> words) {
+        Node node = commands;
+        Node longest = null;
+        for (String word : words) {
+            node = node.children.get(word);
+            if (node == null)
                 break;
+            if (node.command != null && node.command != Command.ENTER && node.command != Command.EXIT)
+                longest = node;
+        }
+        return longest;
+    }
 
-            default:
-                response = "(DEBUG): WARNING! Unexpected default case occurred in DebugManager.setValue().";
-                break;
+    /**
+     * Split a message into lowercase words in one pass. Whitespace, commas, semicolons and '=' separate words;
+     * sentence punctuation at the end of a word is dropped, so "0.5." and "patience?" still match.
+     */
+    static List<String> tokenize(String input) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= input.length(); i++) {
+            char c = i < input.length() ? input.charAt(i) : ' ';
+            if (Character.isWhitespace(c) || c == ',' || c == ';' || c == '=') {
+                // Drop trailing sentence punctuation.
+                int end = word.length();
+                while (end > 0 && isTrailingPunctuation(word.charAt(end - 1)))
+                    end--;
+                if (end > 0)
+                    words.add(word.substring(0, end));
+                word.setLength(0);
+            }
+            else {
+                word.append(Character.toLowerCase(c));
+            }
         }
-        return response;
+        return words;
     }
 
-    private void initPlayMuteKeywords() {
-        playMuteKeywords = new ArrayList<>();
-        playMuteKeywords.add("mute");
-        playMuteKeywords.add("unmute");
-        playMuteKeywords.add("play");
-        playMuteKeywords.add("toggle");
+    private static boolean isTrailingPunctuation(char c) {
+        return c == '.' || c == '!' || c == '?' || c == ':' || c == '"' || c == ')';
     }
 
-    private boolean recognizeCommandAsPlayMute(String input) {
-        int i = input.indexOf(" ");     // First whitespace.
-        String firstWord = input.substring(0, i);   // First word.
+    /**
+     * Lowercase names of every trait and emotion. Traits are only registered at startup, so this is rebuilt almost never.
+     */
+    private TraitNames getTraitNames() {
+        TraitNames names = traitNames;
+        if (names.personalityCount != TraitRegistry.PERSONALITY.size() || names.emotionCount != TraitRegistry.EMOTIONS.size()) {
+            names = new TraitNames(TraitRegistry.PERSONALITY.size(), TraitRegistry.EMOTIONS.size());
+            traitNames = names;
+        }
+        return names;
+    }
 
-        return (playMuteKeywords.contains(firstWord));
+    /**
+     * Node of the token trie, one word per edge.
+     */
+    private static class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private Command command;        // Set if a phrase or keyword ends here.
+        private int depth;              // Amount of words of that phrase or keyword.
     }
 
     /**
-     * Toggle audio output from SpeechManager.
-     * Prevents unnecessary cost calculation from Google Cloud.
+     * A personality trait or emotion, as named in a debug command.
      */
-    private String playMute() {
-        if (SpeechManager.getInstance().toggleAudio()) {
-            // Audio should now play.
-            return "(DEBUG): Audio output has been enabled.";
+    private static class Trait {
+        private final boolean personality;      // Personality trait or emotion.
+        private final int id;
+        private final String name;              // As registered, e.g. "Patience".
+
+        Trait(boolean personality, int id, String name) {
+            this.personality = personality;
+            this.id = id;
+            this.name = name;
         }
-        else {
-            // Audio should be muted.
-            return "(DEBUG): Audio output has been disabled.";
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static class TraitNames {
+        private final int personalityCount;
+        private final int emotionCount;
+        private final Map<String, Trait> traits = new HashMap<>();     // Lowercase name -> trait.
+
+        TraitNames(int personalityCount, int emotionCount) {
+            this.personalityCount = personalityCount;
+            this.emotionCount = emotionCount;
+            for (int id = 0; id < emotionCount; id++)
+                add(new Trait(false, id, TraitRegistry.EMOTIONS.nameOf(id)));
+            // Personality traits win if an emotion has the same name.
+            for (int id = 0; id < personalityCount; id++)
+                add(new Trait(true, id, TraitRegistry.PERSONALITY.nameOf(id)));
+        }
+
+        private void add(Trait trait) {
+            traits.put(trait.name.toLowerCase(Locale.ROOT), trait);
+        }
+
+        Trait get(String word) {
+            return traits.get(word);
         }
     }
 }
@@ -1,61 +1,144 @@
 package com.example.oichatbot.managers;
 
+import com.example.oichatbot.domains.ConversationState;
+import com.example.oichatbot.domains.IntentResponse;
 import com.example.oichatbot.domains.Message;
+import com.example.oichatbot.domains.PersonalitySnapshot;
+import com.example.oichatbot.domains.TraitVector;
 import com.google.api.client.util.Lists;
 import com.google.cloud.dialogflow.v2.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 
 /**
  * This class is responsible for connecting to the (appropriate) DialogFlow project depending on current personality/emotions.
  * Singleton class.
  */
 public class DialogFlowBridge {
-    private static DialogFlowBridge instance = null;
+    private static final Logger log = LoggerFactory.getLogger(DialogFlowBridge.class);
+
+    private IntentDetector intentDetector;      // Shared backend, created once by the application (see ChatbotConfiguration).
+    private Executor executor = ForkJoinPool.commonPool();      // Runs the CPU-bound stages once upstream replies arrive.
+    private GoogleEndpoint googleEndpoint = GoogleEndpoint.google();
+    private IntentsClient intentsClient;        // Created on first use, then shared until close().
 
     private DialogFlowBridge() {
 
     }
 
+    private static class Holder {
+        private static final DialogFlowBridge INSTANCE = new DialogFlowBridge();
+    }
+
     // Static method to maintain one persistent instance.
-    public static DialogFlowBridge getInstance()
-    {
-        if (instance == null)
-            instance = new DialogFlowBridge();
+    public static DialogFlowBridge getInstance() {
+        return Holder.INSTANCE;
+    }
 
-        return instance;
+    /**
+     * Set the backend used to detect intents. Called once at startup.
+     * @param intentDetector Shared, thread-safe intent backend.
+     */
+    public void setIntentDetector(IntentDetector intentDetector) {
+        this.intentDetector = intentDetector;
     }
 
     /**
-     * New chat method with support for personality and dynamic response building.
-     * Call this method as a starting point for any chat message.
-     * @return
+     * Set the executor that runs the local stages of the chat pipeline. Called once at startup.
+     * @param executor Executor, should not be the servlet container's request pool.
      */
-    public Message chat(String input, String languageCode) throws Exception {
-        // Alter emotion values based on user input.
-        PersonalityManager.getInstance().alterEmotions(input);
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
 
-        String projectId = "openinno";
-        String sessionId = "123456";
+    public Executor getExecutor() {
+        return executor;
+    }
 
-        // Determine context based on current personality profile.
-        String context = PersonalityManager.getInstance().getLeadingPersonality();
+    /**
+     * Set where the intents client connects to. Called once at startup.
+     * @param googleEndpoint Google itself, or e.g. a local stand-in.
+     */
+    public void setGoogleEndpoint(GoogleEndpoint googleEndpoint) {
+        this.googleEndpoint = googleEndpoint;
+    }
 
-        // Connect to DialogFlow and await response.
-        String rawAnswer = detectIntentSimple(projectId, input, sessionId, languageCode, context);
-        // Parse answer for special tags and time format
-        Message parsedAnswer = new Message(parseAnswer(rawAnswer), true);
+    private IntentDetector getIntentDetector() {
+        if (intentDetector == null)
+            throw new IllegalStateException("No IntentDetector configured, is the application context running?");
 
-        // Determine and set suggested color.
-        String color = PersonalityManager.getInstance().determineSuggestedColor();
-        parsedAnswer.setSuggestedColor(color);
-        System.out.println("Suggested color: " + color);
+        return intentDetector;
+    }
 
-        // Set audio data if text-to-speech is enabled.
-        if (SpeechManager.getInstance().shouldPlayAudio())
-            parsedAnswer.setAudioFile(SpeechManager.getInstance().say(parsedAnswer.getContent(), "output.mp3"));
+    /**
+     * New chat method with support for personality and dynamic response building.
+     * Call this method as a starting point for any chat message.
+     * Nothing blocks: the calling thread only starts the upstream calls, the rest runs once their replies arrive.
+     * @param state Conversation the message belongs to.
+     * @param input The user's message.
+     * @param languageCode Language code, default is "en-US".
+     * @return Future with the complete reply, including audio if text-to-speech is enabled.
+     */
+    public CompletableFuture<Message> chatAsync(ConversationState state, String input, String languageCode) {
+        return chatAsync(state, input, languageCode, parsedAnswer -> { });
+    }
+
+    /**
+     * Same as chatAsync(state, input, languageCode), but hands out the reply as soon as its text is ready.
+     * Text-to-speech usually takes longer than everything else, so streaming clients can show the text first.
+     * @param state Conversation the message belongs to.
+     * @param input The user's message.
+     * @param languageCode Language code, default is "en-US".
+     * @param onText Called with the reply (text and color, no audio yet) as soon as it has been parsed.
+     * @return Future with the complete reply, including audio if text-to-speech is enabled.
+     */
+    public CompletableFuture<Message> chatAsync(ConversationState state, String input, String languageCode, Consumer<Message> onText) {
+        String projectId = "openinno";
+        String sessionId = state.getSessionId();
 
-        return parsedAnswer;
+        // Determine context based on current personality profile.
+        // Emotion modifiers never change personality traits, so this doesn't have to wait for alterEmotions().
+        TraitVector personality = state.getPersonality();
+        String context = personality.getLeaderName();
+
+        // Connect to DialogFlow first, so the request is in flight while we do the local work.
+        CompletableFuture<String> rawAnswer = detectIntentSimple(projectId, input, sessionId, languageCode, context);
+
+        // Alter emotion values based on user input, then determine everything the mood decides about this reply at once.
+        // Every later stage uses this snapshot, so they all agree even if another message changes the mood in the meantime.
+        TraitVector emotions = ChatMetrics.time(ChatMetrics.Stage.ALTER_EMOTIONS, () -> PersonalityManager.getInstance().alterEmotions(state, input));
+        PersonalitySnapshot snapshot = PersonalityManager.getInstance().takeSnapshot(personality, emotions);
+
+        return rawAnswer.thenApplyAsync(answer -> {
+            // Parse answer for special tags and time format (needs the altered emotions).
+            Message parsedAnswer = new Message(parseAnswer(snapshot, answer), true);
+
+            // Set suggested color.
+            String color = snapshot.getSuggestedColor();
+            parsedAnswer.setSuggestedColor(color);
+            log.debug("Suggested color: {}", color);
+
+            onText.accept(parsedAnswer);
+            return parsedAnswer;
+        }, executor).thenCompose(parsedAnswer -> {
+            // Set audio data if text-to-speech is enabled.
+            if (!SpeechManager.getInstance().shouldPlayAudio(state))
+                return CompletableFuture.completedFuture(parsedAnswer);
+
+            return ChatMetrics.timeAsync(ChatMetrics.Stage.SAY, false, SpeechManager.getInstance().sayAsync(snapshot, parsedAnswer.getContent(), executor))
+                    .thenApply(clipId -> {
+                        AudioManager.getInstance().attachAudio(parsedAnswer, clipId);
+                        return parsedAnswer;
+                    });
+        });
     }
 
 
@@ -65,99 +148,79 @@ public class DialogFlowBridge {
      * @param sessionId Session ID, use the same ID in successive requests for a continuous conversation.
      * @param languageCode Language code, default is "en-US".
      * @param contextString Context to filter with, should match exact defined personality traits.
-     * @return The full response object, containing the message to be displayed and extra data regarding intent extraction and context.
-     * @throws Exception
+     * @return Future with the raw fulfillment text.
      */
-    private String detectIntentSimple(String projectId, String input, String sessionId, String languageCode, String contextString) throws Exception {
-        // Set default response text (in case of an error).
-        String answer = "(Error getting intent response.)";
-        // Instantiates a client.
-        try (SessionsClient sessionsClient = SessionsClient.create()) {
-            // Set the session name using the sessionId (UUID) and projectID (my-project-id).
-            SessionName session = SessionName.of(projectId, sessionId);
-            System.out.println("Session Path: " + session.toString());
-            System.out.println("Using filter context: " + contextString);
-
-            // Set the text (hello) and language code (en-US) for the query.
-            TextInput.Builder textInput = TextInput.newBuilder().setText(input).setLanguageCode(languageCode);
-
-            // Build the query with the TextInput and Context as parameter.
-            QueryInput queryInput = QueryInput.newBuilder().setText(textInput).build();
-            Context context = Context.newBuilder().setName(session.toString() + "/contexts/" + contextString).setLifespanCount(1).build();      // <-- THIS ONE?
-
-            QueryParameters params = QueryParameters.newBuilder()
-                    .addContexts(context)
-                    .build();
-
-            // Build a new DetectIntentRequest with determined input and parameters.
-            DetectIntentRequest request = DetectIntentRequest.newBuilder()
-                    .setQueryInput(queryInput)
-                    .setQueryParams(params)
-                    .setSession(session.toString())
-                    .build();
-
-            // Performs the detect intent request.
-            // DetectIntentResponse response = sessionsClient.detectIntent(session, queryInput);
-            DetectIntentResponse response = sessionsClient.detectIntent(request);
-
-            // Display the query result.
-            QueryResult queryResult = response.getQueryResult();
-
-            System.out.println("====================");
-            System.out.format("Query Text: '%s'\n", queryResult.getQueryText());
-            System.out.format("Detected Intent: %s (confidence: %f)\n",
-                    queryResult.getIntent().getDisplayName(), queryResult.getIntentDetectionConfidence());
-            System.out.format("Fulfillment Text: '%s'\n", queryResult.getFulfillmentText());
-            System.out.format("Output contexts: '%s'\n", queryResult.getOutputContextsList());
-            answer = queryResult.getFulfillmentText();
-        }
-        return answer;
+    private CompletableFuture<String> detectIntentSimple(String projectId, String input, String sessionId, String languageCode, String contextString) {
+        if (log.isDebugEnabled())
+            log.debug("Session path: {}, using filter context: {}", SessionName.of(projectId, sessionId), contextString);
+
+        // Performs the detect intent request through the shared (long-lived) backend.
+        CompletableFuture<IntentResponse> detected = ChatMetrics.timeAsync(ChatMetrics.Stage.DETECT_INTENT, true,
+                getIntentDetector().detectIntentAsync(sessionId, input, languageCode, contextString));
+        return detected.thenApply(response -> {
+            // Log the query result as one entry.
+            if (log.isDebugEnabled())
+                log.debug("Query text: '{}', detected intent: {} (confidence: {}), fulfillment text: '{}', has output contexts: {}",
+                        input, response.getIntentName(), response.getConfidence(), response.getFulfillmentText(), response.getHasOutputContexts());
+            return response.getFulfillmentText();
+        });
     }
 
     /**
      * Retrieve a list of all possible recognized intents (commands) via the DialogFlow API.
+     * Pages through every intent, so callers should cache the result (see IntentCatalogue).
      * @param projectId Project ID, default is "openinno".
      * @return List of possible intents the API can respond to.
      * @throws Exception
      */
     public List<Intent> listIntents(String projectId) throws Exception {
         List<Intent> intents = Lists.newArrayList();
-        // Instantiates a client
-        try (IntentsClient intentsClient = IntentsClient.create()) {
-            // Set the project agent name using the projectID (my-project-id)
-            ProjectAgentName parent = ProjectAgentName.of(projectId);
-
-            // Performs the list intents request
-            for (Intent intent : intentsClient.listIntents(parent).iterateAll()) {
-                System.out.println("====================");
-                System.out.format("Intent name: '%s'\n", intent.getName());
-                System.out.format("Intent display name: '%s'\n", intent.getDisplayName());
-                System.out.format("Action: '%s'\n", intent.getAction());
-                System.out.format("Root followup intent: '%s'\n", intent.getRootFollowupIntentName());
-                System.out.format("Parent followup intent: '%s'\n", intent.getParentFollowupIntentName());
-
-                System.out.format("Input contexts:\n");
-                for (String inputContextName : intent.getInputContextNamesList()) {
-                    System.out.format("\tName: %s\n", inputContextName);
-                }
-                System.out.format("Output contexts:\n");
-                for (Context outputContext : intent.getOutputContextsList()) {
-                    System.out.format("\tName: %s\n", outputContext.getName());
-                }
-
-                intents.add(intent);
+        // Set the project agent name using the projectID (my-project-id)
+        ProjectAgentName parent = ProjectAgentName.of(projectId);
+
+        // Performs the list intents request
+        for (Intent intent : getIntentsClient().listIntents(parent).iterateAll()) {
+            if (log.isDebugEnabled()) {
+                List<String> outputContexts = new ArrayList<>();
+                for (Context outputContext : intent.getOutputContextsList())
+                    outputContexts.add(outputContext.getName());
+                log.debug("Intent name: '{}', display name: '{}', action: '{}', root followup intent: '{}', parent followup intent: '{}', input contexts: {}, output contexts: {}",
+                        intent.getName(), intent.getDisplayName(), intent.getAction(), intent.getRootFollowupIntentName(),
+                        intent.getParentFollowupIntentName(), intent.getInputContextNamesList(), outputContexts);
             }
+
+            intents.add(intent);
         }
         return intents;
     }
 
+    private synchronized IntentsClient getIntentsClient() throws IOException {
+        if (intentsClient == null) {
+            IntentsSettings.Builder settings = IntentsSettings.newBuilder();
+            googleEndpoint.configure(settings, IntentsSettings.defaultGrpcTransportProviderBuilder());
+            intentsClient = IntentsClient.create(settings.build());
+        }
+        return intentsClient;
+    }
+
+    /**
+     * Release the intents client. Called when the application shuts down.
+     */
+    public synchronized void close() {
+        if (intentsClient != null) {
+            intentsClient.close();
+            intentsClient = null;
+        }
+    }
+
     /**
      * Parse a raw answer to dynamically show/remove special tagged blocks of text depending on emotions.
+     * @param snapshot Personality and mood of this reply, its emotions decide which blocks are shown.
      * @param rawAnswer The raw answer containing special tags.
      * @return Parsed answer, cleaned up and converted into a readable format.
      */
-    private String parseAnswer(String rawAnswer) {
+    private String parseAnswer(PersonalitySnapshot snapshot, String rawAnswer) {
         // Let the special MessageParser class handle this.
-        return MessageParser.getInstance().parseMessage(rawAnswer);
+        return ChatMetrics.time(ChatMetrics.Stage.PARSE, () -> MessageParser.getInstance().parseMessage(snapshot, rawAnswer));
     }
 }
@@ -0,0 +1,132 @@
+package com.example.oichatbot.managers;
+
+import com.example.oichatbot.domains.AgentIntent;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Reads the intents of a DialogFlow agent from its export (the .zip made with "Export as ZIP" in the DialogFlow console).
+ * The export holds agent.json and, per intent, intents/NAME.json (contexts and responses) and intents/NAME_usersays_LANG.json (training phrases).
+ */
+public final class DialogFlowExportReader {
+    private static final String INTENTS = "intents/";
+
+    private DialogFlowExportReader() {
+    }
+
+    /**
+     * Read every intent in the agent's default language.
+     * @param exportFile Path to the export.
+     * @return The intents, in no particular order.
+     * @throws IOException If the file can't be read or isn't an agent export.
+     */
+    public static List<AgentIntent> read(Path exportFile) throws IOException {
+        try (ZipFile zip = new ZipFile(exportFile.toFile())) {
+            ZipEntry agentEntry = zip.getEntry("agent.json");
+            if (agentEntry == null)
+                throw new IOException(exportFile + " is not a DialogFlow agent export (no agent.json).");
+
+            String language = string(parse(zip, agentEntry).getAsJsonObject(), "language", "en");
+            String userSaysSuffix = "_usersays_" + language + ".json";
+
+            List<AgentIntent> intents = new ArrayList<>();
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (!name.startsWith(INTENTS) || !name.endsWith(".json") || name.contains("_usersays_"))
+                    continue;
+
+                ZipEntry userSays = zip.getEntry(name.substring(0, name.length() - ".json".length()) + userSaysSuffix);
+                List<String> phrases = userSays != null ? readTrainingPhrases(parse(zip, userSays)) : Collections.<String>emptyList();
+                intents.add(readIntent(parse(zip, entry).getAsJsonObject(), phrases, language));
+            }
+            return intents;
+        } catch (RuntimeException e) {
+            // Gson reports malformed JSON with unchecked exceptions.
+            throw new IOException("Could not read DialogFlow export " + exportFile + ": " + e, e);
+        }
+    }
+
+    private static AgentIntent readIntent(JsonObject json, List<String> phrases, String language) {
+        List<String> contexts = new ArrayList<>();
+        for (JsonElement context : array(json, "contexts"))
+            contexts.add(context.getAsString().toLowerCase(Locale.ROOT));
+
+        List<String> responses = new ArrayList<>();
+        boolean setsOutputContexts = false;
+        boolean hasParameters = false;
+        for (JsonElement responseElement : array(json, "responses")) {
+            JsonObject response = responseElement.getAsJsonObject();
+            // Parameters are extracted from the message by DialogFlow and filled into the responses ("Hello $person.").
+            if (array(response, "parameters").size() > 0)
+                hasParameters = true;
+            for (JsonElement affected : array(response, "affectedContexts")) {
+                JsonElement lifespan = affected.getAsJsonObject().get("lifespan");
+                if (lifespan == null || lifespan.getAsInt() > 0)
+                    setsOutputContexts = true;
+            }
+            for (JsonElement messageElement : array(response, "messages")) {
+                JsonObject message = messageElement.getAsJsonObject();
+                // Type 0 is a plain text response. Other types are rich responses for specific platforms.
+                if (!"0".equals(string(message, "type", "0")) || !language.equals(string(message, "lang", language)))
+                    continue;
+
+                JsonElement speech = message.get("speech");
+                if (speech == null)
+                    continue;
+                if (speech.isJsonArray()) {
+                    for (JsonElement text : speech.getAsJsonArray())
+                        responses.add(text.getAsString());
+                }
+                else {
+                    responses.add(speech.getAsString());
+                }
+            }
+        }
+
+        JsonElement fallback = json.get("fallbackIntent");
+        return new AgentIntent(string(json, "name", ""), contexts, phrases, responses, setsOutputContexts, hasParameters,
+                fallback != null && fallback.getAsBoolean());
+    }
+
+    private static List<String> readTrainingPhrases(JsonElement json) {
+        List<String> phrases = new ArrayList<>();
+        for (JsonElement phraseElement : json.getAsJsonArray()) {
+            // A phrase is split into parts wherever an entity (parameter) is annotated, glue them back together.
+            StringBuilder sb = new StringBuilder();
+            for (JsonElement part : array(phraseElement.getAsJsonObject(), "data"))
+                sb.append(string(part.getAsJsonObject(), "text", ""));
+            if (sb.length() > 0)
+                phrases.add(sb.toString());
+        }
+        return phrases;
+    }
+
+    private static JsonElement parse(ZipFile zip, ZipEntry entry) throws IOException {
+        try (Reader reader = new InputStreamReader(zip.getInputStream(entry), StandardCharsets.UTF_8)) {
+            return new JsonParser().parse(reader);
+        }
+    }
+
+    private static JsonArray array(JsonObject json, String member) {
+        JsonElement element = json.get(member);
+        return element != null && element.isJsonArray() ? element.getAsJsonArray() : new JsonArray();
+    }
+
+    private static String string(JsonObject json, String member, String fallback) {
+        JsonElement element = json.get(member);
+        return element != null && element.isJsonPrimitive() ? element.getAsString() : fallback;
+    }
+}
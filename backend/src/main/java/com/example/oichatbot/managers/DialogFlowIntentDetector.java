@@ -0,0 +1,133 @@
+package com.example.oichatbot.managers;
+
+import com.example.oichatbot.domains.IntentResponse;
+import com.google.api.gax.rpc.ClientContext;
+import com.google.cloud.dialogflow.v2.*;
+import com.google.cloud.dialogflow.v2.stub.GrpcContextsStub;
+import com.google.cloud.dialogflow.v2.stub.GrpcSessionsStub;
+import org.threeten.bp.Duration;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Detects intents through the DialogFlow API.
+ * Uses one long-lived SessionsClient (backed by a pool of gRPC channels) for every request, instead of creating
+ * a new client per message. That way the channel setup, TLS handshake and credential lookup only happen once.
+ * Calls are made with the client's future-based API, so no thread is blocked while DialogFlow is thinking.
+ */
+public class DialogFlowIntentDetector implements IntentDetector {
+    private final String projectId;
+    private final SessionsClient sessionsClient;
+    private final ContextsClient contextsClient;     // Shares the sessions' channels, only used for warm-up.
+    private final Semaphore permits;             // Limits the amount of simultaneous calls to DialogFlow.
+    private final int maxConcurrentCalls;
+    private final int channelPoolSize;
+
+    /**
+     * Create the shared client. Opens the channel pool and looks up credentials right away.
+     * @param projectId Project ID, default is "openinno".
+     * @param channelPoolSize Amount of gRPC channels to spread calls over.
+     * @param keepAliveSeconds Interval of keep-alive pings on idle channels, so connections aren't silently dropped.
+     * @param maxConcurrentCalls Max amount of calls in flight at the same time, calls beyond this limit fail right away.
+     * @param endpoint Where to connect to, Google itself or e.g. a local stand-in.
+     * @throws IOException If the client could not be created (e.g. missing credentials).
+     */
+    public DialogFlowIntentDetector(String projectId, Integer channelPoolSize, Long keepAliveSeconds,
+                                    Integer maxConcurrentCalls, GoogleEndpoint endpoint) throws IOException {
+        this.projectId = projectId;
+        this.permits = new Semaphore(maxConcurrentCalls);
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.channelPoolSize = channelPoolSize;
+
+        SessionsSettings.Builder settings = SessionsSettings.newBuilder();
+        endpoint.configure(settings, SessionsSettings.defaultGrpcTransportProviderBuilder()
+                .setPoolSize(channelPoolSize)
+                .setKeepAliveTime(Duration.ofSeconds(keepAliveSeconds))
+                .setKeepAliveWithoutCalls(true));
+        // Both clients run on one client context, so they share the channel pool and credentials.
+        ClientContext clientContext = ClientContext.create(settings.build());
+        this.sessionsClient = SessionsClient.create(GrpcSessionsStub.create(clientContext));
+        this.contextsClient = ContextsClient.create(GrpcContextsStub.create(clientContext));
+    }
+
+    @Override
+    public CompletableFuture<IntentResponse> detectIntentAsync(String sessionId, String input, String languageCode, String contextString) {
+        // Set the session name using the sessionId (UUID) and projectID (my-project-id).
+        SessionName session = SessionName.of(projectId, sessionId);
+
+        // Set the text (hello) and language code (en-US) for the query.
+        TextInput.Builder textInput = TextInput.newBuilder().setText(input).setLanguageCode(languageCode);
+
+        // Build the query with the TextInput and Context as parameter.
+        QueryInput queryInput = QueryInput.newBuilder().setText(textInput).build();
+        Context context = Context.newBuilder().setName(session.toString() + "/contexts/" + contextString).setLifespanCount(1).build();
+
+        QueryParameters params = QueryParameters.newBuilder()
+                .addContexts(context)
+                .build();
+
+        // Build a new DetectIntentRequest with determined input and parameters.
+        DetectIntentRequest request = DetectIntentRequest.newBuilder()
+                .setQueryInput(queryInput)
+                .setQueryParams(params)
+                .setSession(session.toString())
+                .build();
+
+        // Shed load instead of queueing, so a burst of messages can't open an unlimited amount of streams.
+        if (!permits.tryAcquire())
+            return FutureUtils.failed(new IllegalStateException("Too many concurrent DialogFlow requests."));
+
+        CompletableFuture<DetectIntentResponse> call;
+        try {
+            call = FutureUtils.toCompletableFuture(sessionsClient.detectIntentCallable().futureCall(request));
+        } catch (RuntimeException e) {
+            permits.release();
+            return FutureUtils.failed(e);
+        }
+
+        return call.whenComplete((response, error) -> permits.release())
+                .thenApply(response -> {
+                    QueryResult queryResult = response.getQueryResult();
+                    return new IntentResponse(queryResult.getFulfillmentText(), queryResult.getIntent().getDisplayName(),
+                            queryResult.getIntentDetectionConfidence(), queryResult.getOutputContextsCount() > 0);
+                });
+    }
+
+    /**
+     * List the contexts of a throwaway session once per channel, since channels only connect on their first call and calls are
+     * spread round-robin. That opens every channel and fetches credentials without a conversation turn: unlike DetectIntent,
+     * ListContexts isn't billed as a text request and doesn't show up in the agent's history.
+     */
+    @Override
+    public CompletableFuture<Void> warmUp() {
+        ListContextsRequest request = ListContextsRequest.newBuilder()
+                .setParent(SessionName.of(projectId, "warm-up").toString())
+                .setPageSize(1)
+                .build();
+        CompletableFuture<?>[] calls = new CompletableFuture<?>[channelPoolSize];
+        for (int i = 0; i < channelPoolSize; i++) {
+            try {
+                calls[i] = FutureUtils.toCompletableFuture(contextsClient.listContextsCallable().futureCall(request));
+            } catch (RuntimeException e) {
+                calls[i] = FutureUtils.failed(e);
+            }
+        }
+        return CompletableFuture.allOf(calls);
+    }
+
+    /**
+     * Amount of calls to DialogFlow that are currently in flight.
+     * @return Calls in flight.
+     */
+    public int getCallsInFlight() {
+        return maxConcurrentCalls - permits.availablePermits();
+    }
+
+    @Override
+    public void close() {
+        contextsClient.close();
+        sessionsClient.close();
+    }
+}
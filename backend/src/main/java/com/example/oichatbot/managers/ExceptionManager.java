@@ -1,14 +1,12 @@
 package com.example.oichatbot.managers;
 
+import com.example.oichatbot.domains.ConversationState;
 import com.example.oichatbot.domains.Message;
+import com.example.oichatbot.domains.TraitVector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.util.ArrayList;
-import java.util.Base64;
-import java.util.List;
-import java.util.Random;
+import java.util.*;
 
 /**
  * Much like DialogFlowBridge, ExceptionManager is responsible for handling user input and determining the appropriate response.
@@ -16,6 +14,8 @@ import java.util.Random;
  * Singleton class.
  */
 public class ExceptionManager {
+    private static final Logger log = LoggerFactory.getLogger(ExceptionManager.class);
+
     private Float maxExtremeChance = 0.5f;      // At the lowest possible Patience level, this is the max chance of an extreme response.
     private Float maxPatience = -0.3f;          // Patience has to be lower than this for an extreme response to even be considered.
     private Float maxPatienceCapslock = -0.9f;  // Response will be shown in all-caps if Patience is lower than this value.
@@ -24,27 +24,29 @@ public class ExceptionManager {
     private String extremeFont = "Comic Sans MS";
     private String extremeColor = "#ff0000";
     private List<String> responses;
-
-    private static ExceptionManager instance = null;
+    private Map<String, String> audioClipNames;     // Response -> name of its prerecorded .mp3 file, computed once.
 
     private ExceptionManager() {
         initRandomResponses();
+        initAudioClipNames();
+    }
+
+    private static class Holder {
+        private static final ExceptionManager INSTANCE = new ExceptionManager();
     }
 
     // Static method to maintain one persistent instance.
     public static ExceptionManager getInstance() {
-        if (instance == null)
-            instance = new ExceptionManager();
-
-        return instance;
+        return Holder.INSTANCE;
     }
 
     /**
      * Determine if the application/bot should return an extreme response, based on current emotions.
+     * @param state Conversation to check.
      * @return True if an extreme response is recommended, false if not (and DialogFlow should be used instead).
      */
-    public Boolean shouldRespondExtreme() {
-        Float patience = PersonalityManager.getInstance().getEmotions().get("Patience");
+    public Boolean shouldRespondExtreme(ConversationState state) {
+        Float patience = state.getEmotions().get(PersonalityManager.PATIENCE);
 
         // Is patience currently too high for an extreme to be considered?
         if (patience > maxPatience)
@@ -59,18 +61,21 @@ public class ExceptionManager {
      * Return a (random) extreme response/exception. Also slightly increases Patience afterwards.
      * Note that this method completely bypasses the usage of DialogFlowBridge.
      * Therefore it's important (like in DialogFlowBridge) we also e.g. check the input for emotion modifiers.
+     * @param state Conversation to respond in.
+     * @param input The user's message.
      * @return The complete message object (including font and audio properties).
      */
-    public Message chatExtreme(String input) {
-        System.out.println("Decided to show an EXTREME.");
+    public Message chatExtreme(ConversationState state, String input) {
+        log.debug("Decided to show an EXTREME.");
 
         // Alter emotion values based on user input.
-        PersonalityManager.getInstance().alterEmotions(input);
+        TraitVector emotions = ChatMetrics.time(ChatMetrics.Stage.ALTER_EMOTIONS, () -> PersonalityManager.getInstance().alterEmotions(state, input));
 
         // First we fetch a random string response to display in the front-end.
-        Message output = new Message(getRandomStringResponse(), true);
+        String response = getRandomStringResponse();
+        Message output = new Message(response, true);
         // If Patience is particularly low, the string response will be completely capitalized.
-        if (PersonalityManager.getInstance().getEmotions().get("Patience") <= maxPatienceCapslock)
+        if (emotions.get(PersonalityManager.PATIENCE) <= maxPatienceCapslock)
             output.setContent(output.getContent().toUpperCase());
 
         // Set the message object's properties like font and color.
@@ -78,14 +83,14 @@ public class ExceptionManager {
         output.setFontSize(extremeFontSize);
         output.setSuggestedColor(extremeColor);
 
-        // Set the message object's audio property (Base64) based on the relevant .mp3 file.
-        if (SpeechManager.getInstance().shouldPlayAudio())
-            output.setAudioFile(readAudioContent(output.getContent()));
+        // Point the message object's audio property to the relevant (preloaded) .mp3 clip.
+        if (SpeechManager.getInstance().shouldPlayAudio(state))
+            AudioManager.getInstance().attachAudio(output, AudioManager.getInstance().extremeClipId(audioClipNames.get(response)));
 
-        System.out.println("Returning extreme: " + output.getContent());
+        log.debug("Returning extreme: {}", output.getContent());
 
         // Slightly increase Patience to reduce the amount of successive extremes.
-        PersonalityManager.getInstance().incrementEmotion("Patience", 0.2f);
+        PersonalityManager.getInstance().incrementEmotion(state, PersonalityManager.PATIENCE, 0.2f);
         return output;
     }
 
@@ -114,32 +119,25 @@ public class ExceptionManager {
     }
 
     /**
-     * Based on the response string, read the relevant .mp3 file and return its contents as Base64.
-     * @param response The response as string, e.g. "Go away!".
-     * @return The Base64 file content of the relevant .mp3 audio file.
+     * Determine the audio file name of every response once, so the request path never has to build it.
      */
-    private String readAudioContent(String response) {
-        // Converting the response string to an audio file name.
-        // Set everything to lowercase, replace special characters (including whitespaces) and add .mp3 to its name.
-        String fileName = response.toLowerCase();
-        fileName = fileName.replaceAll("[^a-zA-Z0-9]", "");
-
-        // Try to read an audio file with this exact matching name.
-        return encodeFileToBase64(new File("extremes/" + fileName + ".mp3"));
+    private void initAudioClipNames() {
+        audioClipNames = new HashMap<>();
+        for (String response : responses) {
+            // Converting the response string to an audio file name.
+            // Set everything to lowercase and remove special characters (including whitespaces), e.g. "goaway".
+            String fileName = response.toLowerCase();
+            fileName = fileName.replaceAll("[^a-zA-Z0-9]", "");
+            audioClipNames.put(response, fileName);
+        }
     }
 
     /**
-     * Encode an audio file (.mp3)'s content to Base64.
-     * @param file Audio file (preferably .mp3 format).
-     * @return The Base64 content as String.
+     * Names of every audio clip an extreme response may need, used to check the extremes directory at startup.
+     * @return Clip names (file names without extension).
      */
-    private String encodeFileToBase64(File file) {
-        try {
-            byte[] fileContent = Files.readAllBytes(file.toPath());
-            return Base64.getEncoder().encodeToString(fileContent);
-        } catch (IOException e) {
-            throw new IllegalStateException("could not read file " + file, e);
-        }
+    public Collection<String> getAudioClipNames() {
+        return audioClipNames.values();
     }
 
     /**
@@ -0,0 +1,188 @@
+package com.example.oichatbot.managers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Keeps every prerecorded extreme response (extremes/*.mp3) in memory, including its Base64 form.
+ * The whole directory is read once at startup, so extreme replies never touch the disk or encode anything.
+ * A background thread watches the directory and swaps in a freshly loaded bank when files are added, changed or removed.
+ * Singleton class.
+ */
+public class ExtremeAudioBank {
+    private static final Logger log = LoggerFactory.getLogger(ExtremeAudioBank.class);
+
+    private volatile Map<String, Clip> clips = Collections.emptyMap();     // File name without extension -> clip. Replaced as a whole, never modified.
+
+    private Path directory = Paths.get("extremes");
+    private Collection<String> expectedNames = Collections.emptyList();
+    private WatchService watchService;
+    private Thread watchThread;
+
+    private ExtremeAudioBank() {
+    }
+
+    private static class Holder {
+        private static final ExtremeAudioBank INSTANCE = new ExtremeAudioBank();
+    }
+
+    // Static method to maintain one persistent instance.
+    public static ExtremeAudioBank getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Load the directory, report missing clips and start watching for changes. Called once at startup.
+     * @param directory Directory holding the .mp3 files.
+     * @param expectedNames Names (without extension) of every clip the application may ask for.
+     * @param hotReload Whether to reload the bank when the directory changes.
+     */
+    public synchronized void start(String directory, Collection<String> expectedNames, boolean hotReload) {
+        this.directory = Paths.get(directory);
+        this.expectedNames = expectedNames;
+        reload();
+
+        if (hotReload && Files.isDirectory(this.directory))
+            startWatching();
+    }
+
+    /**
+     * Stop watching the directory. The loaded clips stay available.
+     */
+    public synchronized void stop() {
+        if (watchThread != null) {
+            watchThread.interrupt();
+            watchThread = null;
+        }
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                // Shutting down anyway.
+            }
+            watchService = null;
+        }
+    }
+
+    /**
+     * Find a clip by name.
+     * @param name File name without extension, e.g. "goaway".
+     * @return The clip, or null if there is no such file.
+     */
+    public Clip get(String name) {
+        return clips.get(name);
+    }
+
+    /**
+     * Read the whole directory into a new bank and swap it in.
+     */
+    private void reload() {
+        Map<String, Clip> loaded = new HashMap<>();
+        if (Files.isDirectory(directory)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.mp3")) {
+                for (Path file : files) {
+                    String fileName = file.getFileName().toString();
+                    loaded.put(fileName.substring(0, fileName.length() - ".mp3".length()), new Clip(Files.readAllBytes(file)));
+                }
+            } catch (IOException e) {
+                log.warn("Could not (fully) load extreme audio from {}: {}", directory, e.toString());
+                if (!clips.isEmpty())
+                    return;     // Keep serving the previous bank rather than a partial one.
+            }
+        }
+        else {
+            log.warn("Extreme audio directory {} doesn't exist.", directory.toAbsolutePath());
+        }
+
+        for (String name : expectedNames) {
+            if (!loaded.containsKey(name))
+                log.warn("Missing extreme audio clip {}, this response will be silent.", directory.resolve(name + ".mp3"));
+        }
+
+        clips = Collections.unmodifiableMap(loaded);
+        log.info("Loaded {} extreme audio clips.", loaded.size());
+    }
+
+    private void startWatching() {
+        try {
+            watchService = directory.getFileSystem().newWatchService();
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            log.warn("Could not watch {} for changes: {}", directory, e.toString());
+            return;
+        }
+
+        final WatchService watcher = watchService;
+        watchThread = new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    WatchKey key = watcher.take();
+                    key.pollEvents();
+                    // Editors and copy tools tend to fire several events at once, wait for them to settle.
+                    Thread.sleep(200);
+                    key.pollEvents();
+                    reload();
+                    if (!key.reset())
+                        break;
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // Stopped.
+            }
+        }, "extreme-audio-watcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    /**
+     * One prerecorded clip, both as raw bytes (for streaming) and Base64 (for inline replies).
+     */
+    public static final class Clip {
+        private final byte[] bytes;
+        private final String base64;
+        private final String hash;
+
+        Clip(byte[] bytes) {
+            this.bytes = bytes;
+            this.base64 = Base64.getEncoder().encodeToString(bytes);
+            this.hash = hash(bytes);
+        }
+
+        /**
+         * @return First 16 hex digits of the SHA-256 hash of the MP3 bytes, changes whenever the file does.
+         */
+        public String getHash() {
+            return hash;
+        }
+
+        /**
+         * @return The MP3 bytes. Shared, must not be modified.
+         */
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        public String getBase64() {
+            return base64;
+        }
+
+        private static String hash(byte[] bytes) {
+            try {
+                byte[] hash = MessageDigest.getInstance("SHA-256").digest(bytes);
+                StringBuilder sb = new StringBuilder(16);
+                for (int i = 0; i < 8; i++) {
+                    sb.append(Character.forDigit((hash[i] >> 4) & 0xf, 16)).append(Character.forDigit(hash[i] & 0xf, 16));
+                }
+                return sb.toString();
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+        }
+    }
+}
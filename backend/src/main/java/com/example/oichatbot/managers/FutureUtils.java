@@ -0,0 +1,76 @@
+package com.example.oichatbot.managers;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.slf4j.MDC;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Small helpers to combine Google's ApiFutures with the CompletableFutures used in the chat pipeline.
+ */
+public final class FutureUtils {
+
+    private FutureUtils() {
+    }
+
+    /**
+     * Adapt an ApiFuture (as returned by the gRPC clients' futureCall()) to a CompletableFuture.
+     * The returned future completes on the gRPC thread, so callers should continue with the *Async variants.
+     * The caller's logging context (e.g. its trace ID) is restored while the future completes, so stages that run on the gRPC thread log under the right request.
+     * @param apiFuture Future to adapt.
+     * @return Future that completes with the same result or exception.
+     */
+    public static <T> CompletableFuture<T> toCompletableFuture(ApiFuture<T> apiFuture) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Map<String, String> context = MDC.getCopyOfContextMap();
+        ApiFutures.addCallback(apiFuture, new ApiFutureCallback<T>() {
+            @Override
+            public void onFailure(Throwable t) {
+                withContext(context, () -> future.completeExceptionally(t));
+            }
+
+            @Override
+            public void onSuccess(T result) {
+                withContext(context, () -> future.complete(result));
+            }
+        }, MoreExecutors.directExecutor());
+        return future;
+    }
+
+    /**
+     * Run something with the given logging context, then restore the thread's own context.
+     * @param context Logging context (MDC) to use, may be null.
+     * @param task The work.
+     */
+    public static void withContext(Map<String, String> context, Runnable task) {
+        Map<String, String> previous = MDC.getCopyOfContextMap();
+        setContext(context);
+        try {
+            task.run();
+        } finally {
+            setContext(previous);
+        }
+    }
+
+    private static void setContext(Map<String, String> context) {
+        if (context == null)
+            MDC.clear();
+        else
+            MDC.setContextMap(context);
+    }
+
+    /**
+     * Create a future that has already failed.
+     * @param t The failure.
+     * @return Exceptionally completed future.
+     */
+    public static <T> CompletableFuture<T> failed(Throwable t) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(t);
+        return future;
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.oichatbot.managers;
+
+import com.google.api.gax.core.NoCredentialsProvider;
+import com.google.api.gax.grpc.InstantiatingGrpcChannelProvider;
+import com.google.api.gax.rpc.ClientSettings;
+import io.grpc.ManagedChannelBuilder;
+
+/**
+ * Where the Google API clients connect to. By default that's Google itself, but every client can be pointed at
+ * another host (e.g. the GoogleStandInServer for offline load tests), in which case plaintext is used and no credentials are sent.
+ */
+public final class GoogleEndpoint {
+    private final String override;      // host:port, or empty for Google's own endpoints.
+
+    /**
+     * @param override host:port to connect to instead of Google, null or empty to use Google.
+     */
+    public GoogleEndpoint(String override) {
+        this.override = override == null ? "" : override.trim();
+    }
+
+    /**
+     * @return Endpoint that connects to Google itself.
+     */
+    public static GoogleEndpoint google() {
+        return new GoogleEndpoint("");
+    }
+
+    public boolean isOverridden() {
+        return !override.isEmpty();
+    }
+
+    /**
+     * Apply this endpoint to a client's settings.
+     * @param settings Settings builder of the client (e.g. SessionsSettings.newBuilder()).
+     * @param transport Transport builder of the same client, already configured otherwise (pool size, keep-alive, ...).
+     */
+    public void configure(ClientSettings.Builder<?, ?> settings, InstantiatingGrpcChannelProvider.Builder transport) {
+        if (isOverridden()) {
+            transport.setEndpoint(override);
+            transport.setChannelConfigurator(builder -> builder.usePlaintext());
+            settings.setCredentialsProvider(NoCredentialsProvider.create());
+        }
+        settings.setTransportChannelProvider(transport.build());
+    }
+
+    @Override
+    public String toString() {
+        return isOverridden() ? override : "Google";
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.oichatbot.managers;
+
+import com.google.cloud.dialogflow.v2.*;
+import com.google.cloud.texttospeech.v1.ListVoicesRequest;
+import com.google.cloud.texttospeech.v1.ListVoicesResponse;
+import com.google.cloud.texttospeech.v1.SynthesizeSpeechRequest;
+import com.google.cloud.texttospeech.v1.SynthesizeSpeechResponse;
+import com.google.protobuf.ByteString;
+import io.grpc.MethodDescriptor;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.protobuf.ProtoUtils;
+import io.grpc.stub.ServerCalls;
+import io.grpc.stub.StreamObserver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Local gRPC server that imitates the Google APIs the chatbot uses: Sessions.DetectIntent, Intents.ListIntents
+ * and TextToSpeech.SynthesizeSpeech (plus Contexts.ListContexts and TextToSpeech.ListVoices, used for warm-up). Point the clients at it (chatbot.google.endpoint) to load test the whole
+ * application on one machine without network access or cost.
+ * Replies are generated, not meaningful. Latency follows a configurable log-normal distribution per method
+ * and payload sizes are configurable, so both throughput and tail latency can be measured realistically.
+ * Delays are scheduled on a timer instead of sleeping, so thousands of calls can be in flight at once.
+ */
+public class GoogleStandInServer {
+    private static final Logger log = LoggerFactory.getLogger(GoogleStandInServer.class);
+
+    private static final String SESSIONS_SERVICE = "google.cloud.dialogflow.v2.Sessions";
+    private static final String INTENTS_SERVICE = "google.cloud.dialogflow.v2.Intents";
+    private static final String CONTEXTS_SERVICE = "google.cloud.dialogflow.v2.Contexts";
+    private static final String TEXT_TO_SPEECH_SERVICE = "google.cloud.texttospeech.v1.TextToSpeech";
+    private static final String FILLER = " Lorem ipsum dolor sit amet, consectetur adipiscing elit.";
+
+    private final int port;
+    private LatencyModel detectIntentLatency = new LatencyModel(0, 0);
+    private LatencyModel listIntentsLatency = new LatencyModel(0, 0);
+    private LatencyModel synthesizeLatency = new LatencyModel(0, 0);
+    private int fulfillmentChars = 120;     // Length of every DetectIntent reply.
+    private int intentCount = 200;          // Amount of intents ListIntents pages through.
+    private int intentPayloadChars = 200;   // Length of the response text inside every listed intent.
+    private int audioBytes = 24000;         // Size of every synthesized "clip" (about 3 seconds of MP3).
+
+    private ByteString audio;
+    private String intentPayload;
+    private Server server;
+    private ScheduledExecutorService timer;
+
+    /**
+     * @param port Port to listen on (loopback and any other interface).
+     */
+    public GoogleStandInServer(int port) {
+        this.port = port;
+    }
+
+    public void setDetectIntentLatency(LatencyModel detectIntentLatency) {
+        this.detectIntentLatency = detectIntentLatency;
+    }
+
+    public void setListIntentsLatency(LatencyModel listIntentsLatency) {
+        this.listIntentsLatency = listIntentsLatency;
+    }
+
+    public void setSynthesizeLatency(LatencyModel synthesizeLatency) {
+        this.synthesizeLatency = synthesizeLatency;
+    }
+
+    public void setFulfillmentChars(int fulfillmentChars) {
+        this.fulfillmentChars = fulfillmentChars;
+    }
+
+    public void setIntentCount(int intentCount) {
+        this.intentCount = intentCount;
+    }
+
+    public void setIntentPayloadChars(int intentPayloadChars) {
+        this.intentPayloadChars = intentPayloadChars;
+    }
+
+    public void setAudioBytes(int audioBytes) {
+        this.audioBytes = audioBytes;
+    }
+
+    /**
+     * Start listening. Settings can't be changed afterwards.
+     * @throws IOException If the port could not be bound.
+     */
+    public synchronized void start() throws IOException {
+        // Payloads are generated once and shared, so the stand-in itself costs next to nothing per call.
+        byte[] clip = new byte[audioBytes];
+        new Random(42).nextBytes(clip);
+        audio = ByteString.copyFrom(clip);
+        intentPayload = pad("Stand-in response.", intentPayloadChars);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        timer = Executors.newScheduledThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), runnable -> {
+            Thread thread = new Thread(runnable, "standin-timer-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        server = ServerBuilder.forPort(port)
+                .addService(ServerServiceDefinition.builder(SESSIONS_SERVICE)
+                        .addMethod(unary(SESSIONS_SERVICE, "DetectIntent", DetectIntentRequest.getDefaultInstance(), DetectIntentResponse.getDefaultInstance()),
+                                ServerCalls.asyncUnaryCall((request, observer) ->
+                                        respondLater(detectIntentLatency, () -> detectIntent(request), observer)))
+                        .build())
+                .addService(ServerServiceDefinition.builder(INTENTS_SERVICE)
+                        .addMethod(unary(INTENTS_SERVICE, "ListIntents", ListIntentsRequest.getDefaultInstance(), ListIntentsResponse.getDefaultInstance()),
+                                ServerCalls.asyncUnaryCall((request, observer) ->
+                                        respondLater(listIntentsLatency, () -> listIntents(request), observer)))
+                        .build())
+                .addService(ServerServiceDefinition.builder(CONTEXTS_SERVICE)
+                        .addMethod(unary(CONTEXTS_SERVICE, "ListContexts", ListContextsRequest.getDefaultInstance(), ListContextsResponse.getDefaultInstance()),
+                                ServerCalls.asyncUnaryCall((request, observer) ->
+                                        respondLater(new LatencyModel(0, 0), () -> ListContextsResponse.getDefaultInstance(), observer)))
+                        .build())
+                .addService(ServerServiceDefinition.builder(TEXT_TO_SPEECH_SERVICE)
+                        .addMethod(unary(TEXT_TO_SPEECH_SERVICE, "SynthesizeSpeech", SynthesizeSpeechRequest.getDefaultInstance(), SynthesizeSpeechResponse.getDefaultInstance()),
+                                ServerCalls.asyncUnaryCall((request, observer) ->
+                                        respondLater(synthesizeLatency, () -> synthesizeSpeech(request), observer)))
+                        .addMethod(unary(TEXT_TO_SPEECH_SERVICE, "ListVoices", ListVoicesRequest.getDefaultInstance(), ListVoicesResponse.getDefaultInstance()),
+                                ServerCalls.asyncUnaryCall((request, observer) ->
+                                        respondLater(new LatencyModel(0, 0), () -> ListVoicesResponse.getDefaultInstance(), observer)))
+                        .build())
+                .build()
+                .start();
+        log.info("Google API stand-in listening on port {}.", server.getPort());
+    }
+
+    /**
+     * Stop listening and fail every call that is still waiting.
+     */
+    public synchronized void stop() {
+        if (server != null) {
+            server.shutdownNow();
+            server = null;
+        }
+        if (timer != null) {
+            timer.shutdownNow();
+            timer = null;
+        }
+    }
+
+    /**
+     * @return The port actually listened on (useful when started with port 0).
+     */
+    public int getPort() {
+        return server != null ? server.getPort() : port;
+    }
+
+    private static <ReqT extends com.google.protobuf.Message, RespT extends com.google.protobuf.Message> MethodDescriptor<ReqT, RespT> unary(
+            String service, String method, ReqT requestPrototype, RespT responsePrototype) {
+        return MethodDescriptor.<ReqT, RespT>newBuilder()
+                .setType(MethodDescriptor.MethodType.UNARY)
+                .setFullMethodName(MethodDescriptor.generateFullMethodName(service, method))
+                .setRequestMarshaller(ProtoUtils.marshaller(requestPrototype))
+                .setResponseMarshaller(ProtoUtils.marshaller(responsePrototype))
+                .build();
+    }
+
+    private <T> void respondLater(LatencyModel latency, Supplier<T> response, StreamObserver<T> observer) {
+        long delay = latency.sampleMicros();
+        Runnable reply = () -> {
+            try {
+                observer.onNext(response.get());
+                observer.onCompleted();
+            } catch (RuntimeException e) {
+                observer.onError(e);
+            }
+        };
+        if (delay <= 0)
+            reply.run();
+        else
+            timer.schedule(reply, delay, TimeUnit.MICROSECONDS);
+    }
+
+    private DetectIntentResponse detectIntent(DetectIntentRequest request) {
+        String query = request.getQueryInput().getText().getText();
+        // Include an emotion block, so MessageParser does the same work as for real replies.
+        String text = pad("You said: " + query + ". [Patience;<0;Please calm down.]", fulfillmentChars);
+        QueryResult result = QueryResult.newBuilder()
+                .setQueryText(query)
+                .setLanguageCode(request.getQueryInput().getText().getLanguageCode())
+                .setFulfillmentText(text)
+                .setIntent(Intent.newBuilder().setDisplayName("Stand-in").build())
+                .setIntentDetectionConfidence(1.0f)
+                .build();
+        return DetectIntentResponse.newBuilder()
+                .setResponseId(UUID.randomUUID().toString())
+                .setQueryResult(result)
+                .build();
+    }
+
+    private ListIntentsResponse listIntents(ListIntentsRequest request) {
+        int pageSize = request.getPageSize() > 0 ? request.getPageSize() : 100;
+        int offset = request.getPageToken().isEmpty() ? 0 : Integer.parseInt(request.getPageToken());
+        int end = Math.min(intentCount, offset + pageSize);
+
+        ListIntentsResponse.Builder response = ListIntentsResponse.newBuilder();
+        for (int i = offset; i < end; i++) {
+            response.addIntents(Intent.newBuilder()
+                    .setName(request.getParent() + "/intents/standin-" + i)
+                    .setDisplayName("Stand-in intent " + i)
+                    .addMessages(Intent.Message.newBuilder()
+                            .setText(Intent.Message.Text.newBuilder().addText(intentPayload))));
+        }
+        if (end < intentCount)
+            response.setNextPageToken(Integer.toString(end));
+        return response.build();
+    }
+
+    private SynthesizeSpeechResponse synthesizeSpeech(SynthesizeSpeechRequest request) {
+        return SynthesizeSpeechResponse.newBuilder().setAudioContent(audio).build();
+    }
+
+    /**
+     * Pad a text with filler up to the given length. Texts that are already longer are left alone.
+     */
+    private static String pad(String text, int length) {
+        if (text.length() >= length)
+            return text;
+
+        StringBuilder sb = new StringBuilder(length + FILLER.length());
+        sb.append(text);
+        while (sb.length() < length)
+            sb.append(FILLER);
+        return sb.substring(0, length);
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.oichatbot.managers;
+
+import com.example.oichatbot.domains.AgentIntent;
+import com.example.oichatbot.domains.IntentResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Answers messages with the LocalIntentMatcher when it is confident enough, and asks DialogFlow (the wrapped detector) otherwise.
+ * Most messages are plain small talk the matcher recognizes, so they skip the network round trip entirely.
+ * Intents that start a follow-up conversation (output contexts) are always left to DialogFlow, since only DialogFlow can keep track of them,
+ * and so are conversations that are in the middle of such a follow-up. The same goes for intents with parameters ("I am $person"):
+ * only DialogFlow can extract them and fill them into the response.
+ * If DialogFlow fails (e.g. slow or overloaded), the best local guess is used after all (or the fallback intent if that guess
+ * has parameters), so the bot keeps talking.
+ */
+public class HybridIntentDetector implements IntentDetector {
+    private static final Logger log = LoggerFactory.getLogger(HybridIntentDetector.class);
+
+    private final LocalIntentMatcher matcher;
+    private final IntentDetector delegate;
+    private final float minConfidence;
+    private final String language;          // Language of the agent export, other languages always go to DialogFlow.
+    private final OutputContextTracker outputContexts;
+
+    private final AtomicLong localReplies = new AtomicLong();
+    private final AtomicLong upstreamReplies = new AtomicLong();
+    private final AtomicLong rescuedReplies = new AtomicLong();
+
+    /**
+     * @param matcher Index of the agent's intents.
+     * @param delegate Detector used when the matcher isn't confident enough.
+     * @param minConfidence Lowest confidence (0-1) to answer locally.
+     * @param language Language of the agent, e.g. "en". Matches language codes like "en-US".
+     * @param maxSessions Most sessions whose follow-up conversations are tracked (chatbot.sessions.max).
+     */
+    public HybridIntentDetector(LocalIntentMatcher matcher, IntentDetector delegate, float minConfidence, String language,
+                                int maxSessions) {
+        this.matcher = matcher;
+        this.delegate = delegate;
+        this.minConfidence = minConfidence;
+        this.language = language.toLowerCase(Locale.ROOT);
+        this.outputContexts = new OutputContextTracker(maxSessions);
+    }
+
+    @Override
+    public CompletableFuture<IntentResponse> detectIntentAsync(String sessionId, String input, String languageCode, String context) {
+        boolean sameLanguage = languageCode.toLowerCase(Locale.ROOT).startsWith(language);
+        LocalIntentMatcher.Match match = sameLanguage ? matcher.match(input, context) : null;
+
+        if (match != null && match.getConfidence() >= minConfidence && match.getIntent().isAnswerableLocally()
+                && !outputContexts.hasOutputContexts(sessionId)) {
+            localReplies.incrementAndGet();
+            log.debug("Matched locally: {} (confidence: {})", match.getIntent().getName(), match.getConfidence());
+            return CompletableFuture.completedFuture(toResponse(match.getIntent(), match.getConfidence()));
+        }
+
+        upstreamReplies.incrementAndGet();
+        return delegate.detectIntentAsync(sessionId, input, languageCode, context).handle((response, e) -> {
+            if (e == null) {
+                outputContexts.record(sessionId, response);
+                return response;
+            }
+
+            // DialogFlow didn't answer in time (or at all), a rough local answer beats no answer.
+            // Responses with parameters can't be filled in locally, "I didn't get that" is better than "Hello $person".
+            boolean useMatch = match != null && !match.getIntent().getHasParameters();
+            AgentIntent rescue = sameLanguage ? (useMatch ? match.getIntent() : matcher.fallbackFor(context)) : null;
+            if (rescue == null)
+                throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+
+            rescuedReplies.incrementAndGet();
+            log.warn("DialogFlow failed, answering locally with {}: {}", rescue.getName(), e.toString());
+            return toResponse(rescue, useMatch ? match.getConfidence() : 0.0f);
+        });
+    }
+
+    private IntentResponse toResponse(AgentIntent intent, float confidence) {
+        // Output contexts are never set locally, DialogFlow doesn't know about this reply.
+        return new IntentResponse(LocalIntentMatcher.pickResponse(intent), intent.getName(), confidence, false);
+    }
+
+    public long getLocalReplies() {
+        return localReplies.get();
+    }
+
+    public long getUpstreamReplies() {
+        return upstreamReplies.get();
+    }
+
+    /**
+     * @return Replies answered locally because DialogFlow failed.
+     */
+    public long getRescuedReplies() {
+        return rescuedReplies.get();
+    }
+
+    @Override
+    public CompletableFuture<Void> warmUp() {
+        return delegate.warmUp();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.oichatbot.managers;
+
+import com.example.oichatbot.domains.IntentPage;
+import com.example.oichatbot.domains.IntentSummary;
+import com.google.cloud.dialogflow.v2.Context;
+import com.google.cloud.dialogflow.v2.Intent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory copy of every intent of the DialogFlow agent, refreshed by a background task.
+ * Requests only ever read the current copy, so no matter how often dashboards poll /test/list, DialogFlow is asked once per refresh.
+ * Every copy has a version (hash of its contents) that stays the same as long as the agent doesn't change, used as ETag.
+ * Singleton class.
+ */
+public class IntentCatalogue {
+    private static final Logger log = LoggerFactory.getLogger(IntentCatalogue.class);
+
+    private volatile Snapshot snapshot = null;      // Null until the first refresh succeeded. Replaced as a whole, never modified.
+    private ScheduledExecutorService refresher;
+    private String projectId = "openinno";
+    private volatile boolean enabled = false;       // Only started when there is an agent to list (not for the local backend).
+
+    private IntentCatalogue() {
+    }
+
+    private static class Holder {
+        private static final IntentCatalogue INSTANCE = new IntentCatalogue();
+    }
+
+    // Static method to maintain one persistent instance.
+    public static IntentCatalogue getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Start refreshing in the background, the first refresh right away. Called once at startup.
+     * @param projectId DialogFlow project ID.
+     * @param refreshMinutes Time between refreshes.
+     */
+    public synchronized void start(String projectId, long refreshMinutes) {
+        this.projectId = projectId;
+        enabled = true;
+        refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "intent-catalogue");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(this::refreshQuietly, 0, refreshMinutes, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Stop refreshing. The current copy stays available.
+     */
+    public synchronized void stop() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+    }
+
+    /**
+     * Fetch every intent from DialogFlow and replace the current copy.
+     * @throws Exception If DialogFlow could not be reached, the current copy is kept.
+     */
+    public void refresh() throws Exception {
+        List<IntentSummary> intents = new ArrayList<>();
+        MessageDigest digest = newDigest();
+        for (Intent intent : DialogFlowBridge.getInstance().listIntents(projectId)) {
+            intents.add(summarize(intent));
+            digest.update(intent.toByteArray());
+        }
+        String version = toHex(digest.digest()).substring(0, 16);
+
+        Snapshot previous = snapshot;
+        if (previous != null && previous.version.equals(version)) {
+            // Nothing changed, keep the old copy (and its timestamp) so ETags stay valid.
+            log.debug("Intent catalogue unchanged ({} intents).", previous.intents.size());
+            return;
+        }
+        snapshot = new Snapshot(Collections.unmodifiableList(intents), version, System.currentTimeMillis());
+        log.info("Intent catalogue refreshed: {} intents, version {}.", intents.size(), version);
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            // E.g. no credentials or network, try again next time.
+            log.warn("Could not refresh intent catalogue: {}", e.toString());
+        }
+    }
+
+    /**
+     * @return True if the catalogue was started, false if there is no agent to list (e.g. local intent backend without stand-in).
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return True once the catalogue has been loaded.
+     */
+    public boolean isLoaded() {
+        return snapshot != null;
+    }
+
+    /**
+     * Get a page of the current copy. The page carries the version of the copy it was taken from (which changes whenever
+     * the agent's intents change), so a refresh in between can never pair one copy's version with another's intents.
+     * @param offset Index of the first intent.
+     * @param limit Max amount of intents.
+     * @return The page, or null if nothing has been loaded yet.
+     */
+    public IntentPage getPage(int offset, int limit) {
+        Snapshot current = snapshot;
+        if (current == null)
+            return null;
+
+        int total = current.intents.size();
+        int from = Math.min(Math.max(0, offset), total);
+        int to = Math.min(total, from + Math.max(0, limit));
+        return new IntentPage(current.intents.subList(from, to), from, limit, total, current.refreshedAt, current.version);
+    }
+
+    private static IntentSummary summarize(Intent intent) {
+        List<String> outputContexts = new ArrayList<>();
+        for (Context context : intent.getOutputContextsList())
+            outputContexts.add(context.getName());
+
+        List<String> responses = new ArrayList<>();
+        for (Intent.Message message : intent.getMessagesList()) {
+            if (message.hasText())
+                responses.addAll(message.getText().getTextList());
+        }
+
+        return new IntentSummary(intent.getName(), intent.getDisplayName(), intent.getAction(), intent.getRootFollowupIntentName(),
+                intent.getParentFollowupIntentName(), new ArrayList<>(intent.getInputContextNamesList()), outputContexts, responses);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    private static class Snapshot {
+        private final List<IntentSummary> intents;
+        private final String version;
+        private final long refreshedAt;
+
+        Snapshot(List<IntentSummary> intents, String version, long refreshedAt) {
+            this.intents = intents;
+            this.version = version;
+            this.refreshedAt = refreshedAt;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.oichatbot.managers;
+
+import com.example.oichatbot.domains.IntentResponse;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Backend that turns a user's message into a (raw) intent response.
+ * DialogFlowBridge only talks to this interface, so the cloud API can be swapped for a local stand-in (e.g. in tests).
+ * Implementations are created once at startup, must be thread-safe and are closed when the application shuts down.
+ */
+public interface IntentDetector extends AutoCloseable {
+
+    /**
+     * Detect the intent behind a single message without blocking the calling thread.
+     * @param sessionId Session ID, use the same ID in successive requests for a continuous conversation.
+     * @param input The user's message.
+     * @param languageCode Language code, default is "en-US".
+     * @param context Context to filter with, should match exact defined personality traits.
+     * @return Future with the detected intent and its raw fulfillment text. Fails if the backend could not be reached.
+     */
+    CompletableFuture<IntentResponse> detectIntentAsync(String sessionId, String input, String languageCode, String context);
+
+    /**
+     * Blocking variant of detectIntentAsync().
+     * @return The detected intent and its raw fulfillment text.
+     * @throws Exception If the backend could not be reached or refused the request.
+     */
+    default IntentResponse detectIntent(String sessionId, String input, String languageCode, String context) throws Exception {
+        return detectIntentAsync(sessionId, input, languageCode, context).get();
+    }
+
+    /**
+     * Open connections ahead of the first real message, so it doesn't pay for the channel setup, TLS handshake and credential lookup.
+     * Called once at startup (see WarmUp).
+     * @return Future that completes once the backend is ready. Failures are only reported, the backend keeps working without warm-up.
+     */
+    default CompletableFuture<Void> warmUp() {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Release all connections held by this backend.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,39 @@
+package com.example.oichatbot.managers;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Log-normal latency distribution, described by its median and 99th percentile.
+ * Real upstream latencies have a long right tail like this, so load tests see realistic tail latency.
+ * Immutable.
+ */
+public final class LatencyModel {
+    private static final double Z_99 = 2.3263478740408408;      // 99th percentile of the standard normal distribution.
+
+    private final double mu;
+    private final double sigma;
+
+    /**
+     * @param medianMillis Median latency, 0 for no latency at all.
+     * @param p99Millis 99th percentile latency, equal to the median for a constant latency.
+     */
+    public LatencyModel(double medianMillis, double p99Millis) {
+        if (medianMillis < 0 || p99Millis < medianMillis)
+            throw new IllegalArgumentException("Expected 0 <= median <= p99, got " + medianMillis + " and " + p99Millis);
+
+        this.mu = medianMillis > 0 ? Math.log(medianMillis) : Double.NEGATIVE_INFINITY;
+        this.sigma = medianMillis > 0 ? Math.log(p99Millis / medianMillis) / Z_99 : 0.0;
+    }
+
+    /**
+     * Draw one latency.
+     * @return Latency in microseconds.
+     */
+    public long sampleMicros() {
+        if (mu == Double.NEGATIVE_INFINITY)
+            return 0;
+
+        double millis = Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian());
+        return (long) (millis * 1000);
+    }
+}
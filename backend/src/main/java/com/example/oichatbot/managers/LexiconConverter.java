@@ -0,0 +1,79 @@
+package com.example.oichatbot.managers;
+
+import com.example.oichatbot.domains.EmotionModifier;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiles an emotion modifier list in the modifiers.json format into a BinaryLexicon file.
+ * Run it whenever the JSON changes, e.g. from the backend directory:
+ * java -cp target/oi-chatbot-0.0.1-SNAPSHOT.jar -Dloader.main=com.example.oichatbot.managers.LexiconConverter
+ *      org.springframework.boot.loader.PropertiesLauncher modifiers.json modifiers.lex
+ */
+public final class LexiconConverter {
+    private static final Logger log = LoggerFactory.getLogger(LexiconConverter.class);
+
+    private LexiconConverter() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            log.error("Usage: LexiconConverter <modifiers.json> <modifiers.lex>");
+            System.exit(1);
+        }
+        convert(Paths.get(args[0]), Paths.get(args[1]));
+    }
+
+    /**
+     * Read a JSON modifier list and write it as a compiled lexicon.
+     * @param json Array of {"relevantEmotion", "relevantWord", "modification"} objects.
+     * @param lexicon File to (over)write.
+     * @throws IOException If either file can't be read/written or the JSON is malformed.
+     */
+    public static void convert(Path json, Path lexicon) throws IOException {
+        long start = System.nanoTime();
+        List<EmotionModifier> modifiers = readJson(json);
+        BinaryLexicon.write(modifiers, lexicon);
+
+        BinaryLexicon written = BinaryLexicon.open(lexicon);
+        log.info("Compiled {} modifiers ({} distinct words/phrases) from {} into {} ({} bytes) in {} ms.",
+                written.size(), written.countTerms(), json, lexicon, Files.size(lexicon), (System.nanoTime() - start) / 1000000);
+    }
+
+    /**
+     * Read a JSON modifier list one element at a time, so the file itself is never held in memory as a whole.
+     * @param json File to read.
+     * @return The modifiers, in file order.
+     * @throws IOException If the file can't be read or the JSON is malformed.
+     */
+    public static List<EmotionModifier> readJson(Path json) throws IOException {
+        Gson gson = new Gson();
+        List<EmotionModifier> modifiers = new ArrayList<>();
+        try (Reader reader = Files.newBufferedReader(json, StandardCharsets.UTF_8);
+             JsonReader jsonReader = new JsonReader(reader)) {
+            jsonReader.beginArray();
+            while (jsonReader.hasNext()) {
+                EmotionModifier modifier = gson.fromJson(jsonReader, EmotionModifier.class);
+                if (modifier.getRelevantWord() == null || modifier.getRelevantEmotion() == null || modifier.getModification() == null)
+                    throw new IOException("Incomplete modifier in " + json + " at " + jsonReader.getPath());
+                modifiers.add(modifier);
+            }
+            jsonReader.endArray();
+        } catch (RuntimeException e) {
+            // Gson reports malformed JSON with unchecked exceptions.
+            throw new IOException("Malformed modifier list " + json + ": " + e.getMessage(), e);
+        }
+        return modifiers;
+    }
+}
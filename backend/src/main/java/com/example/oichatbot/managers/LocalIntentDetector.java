@@ -0,0 +1,54 @@
+package com.example.oichatbot.managers;
+
+import com.example.oichatbot.domains.IntentResponse;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process stand-in for DialogFlow. Never touches the network, so it can be used in tests or offline demos.
+ * Replies are looked up by the (lowercase, trimmed) user message; unknown messages get the fallback reply.
+ */
+public class LocalIntentDetector implements IntentDetector {
+    private final Map<String, String> replies = new ConcurrentHashMap<>();
+    private String fallbackReply = "Sorry, I didn't get that.";
+
+    public LocalIntentDetector() {
+        // A few defaults so the bot still says something sensible.
+        replies.put("hi", "Hello!");
+        replies.put("hello", "Hi there!");
+        replies.put("how are you", "[Patience;>0.0;I'm fine, thanks. ][Patience;<=0.0;Leave me alone.]");
+    }
+
+    /**
+     * Register (or replace) the reply for a specific message.
+     * @param input Message to respond to.
+     * @param fulfillmentText Raw reply, may contain emotion blocks.
+     */
+    public void addReply(String input, String fulfillmentText) {
+        replies.put(normalize(input), fulfillmentText);
+    }
+
+    public void setFallbackReply(String fallbackReply) {
+        this.fallbackReply = fallbackReply;
+    }
+
+    @Override
+    public CompletableFuture<IntentResponse> detectIntentAsync(String sessionId, String input, String languageCode, String context) {
+        String reply = replies.get(normalize(input));
+        if (reply == null)
+            return CompletableFuture.completedFuture(new IntentResponse(fallbackReply, "Default Fallback Intent", 0.0f, false));
+
+        return CompletableFuture.completedFuture(new IntentResponse(reply, "Local", 1.0f, false));
+    }
+
+    private String normalize(String input) {
+        return input.trim().toLowerCase();
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release.
+    }
+}
@@ -0,0 +1,251 @@
+package com.example.oichatbot.managers;
+
+import com.example.oichatbot.domains.AgentIntent;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+/**
+ * Matches messages to the agent's intents in-process, without asking DialogFlow.
+ * Every training phrase is indexed as a TF-IDF vector of its words and word pairs (unigrams and bigrams) in an inverted index.
+ * A message is scored against all phrases sharing at least one term with it (cosine similarity), the best phrase decides the intent.
+ * Like DialogFlow, an intent only matches if its input contexts are active; intents made for the active context win close calls.
+ * Built once, read-only afterwards, so it is safe to share between threads.
+ */
+public class LocalIntentMatcher {
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern APOSTROPHE = Pattern.compile("['\\u2019]");
+    private static final float CONTEXT_BONUS = 0.05f;      // Intents for the active context beat generic ones that score about the same.
+
+    private final List<AgentIntent> intents;
+    private final int[] phraseIntents;      // Phrase -> index in intents.
+    private final float[] phraseNorms;      // Phrase -> length of its TF-IDF vector.
+    private final Map<String, Postings> index = new HashMap<>();
+    private final float unknownTermIdf;     // Words no phrase contains still count, they make a message less similar to everything.
+    private final Map<String, boolean[]> eligibility = new ConcurrentHashMap<>();      // Context -> which intents may match in it.
+
+    /**
+     * Build the index.
+     * @param intents The agent's intents (see DialogFlowExportReader). Fallback intents are never matched, only used by fallbackFor().
+     */
+    public LocalIntentMatcher(List<AgentIntent> intents) {
+        this.intents = new ArrayList<>(intents);
+
+        // Term frequencies of every phrase first, document frequencies follow from them.
+        List<Map<String, Integer>> phrases = new ArrayList<>();
+        List<Integer> owners = new ArrayList<>();
+        Map<String, Integer> documentFrequencies = new HashMap<>();
+        for (int i = 0; i < this.intents.size(); i++) {
+            AgentIntent intent = this.intents.get(i);
+            if (intent.getFallback())
+                continue;
+
+            for (String phrase : intent.getTrainingPhrases()) {
+                Map<String, Integer> frequencies = termFrequencies(phrase);
+                if (frequencies.isEmpty())
+                    continue;
+
+                phrases.add(frequencies);
+                owners.add(i);
+                for (String term : frequencies.keySet())
+                    documentFrequencies.merge(term, 1, Integer::sum);
+            }
+        }
+
+        int phraseCount = phrases.size();
+        phraseIntents = new int[phraseCount];
+        phraseNorms = new float[phraseCount];
+        unknownTermIdf = idf(phraseCount, 1);
+
+        Map<String, List<Integer>> postingPhrases = new HashMap<>();
+        Map<String, List<Float>> postingWeights = new HashMap<>();
+        for (int p = 0; p < phraseCount; p++) {
+            phraseIntents[p] = owners.get(p);
+            double norm = 0;
+            for (Map.Entry<String, Integer> term : phrases.get(p).entrySet()) {
+                float weight = weight(term.getValue(), idf(phraseCount, documentFrequencies.get(term.getKey())));
+                postingPhrases.computeIfAbsent(term.getKey(), t -> new ArrayList<>()).add(p);
+                postingWeights.computeIfAbsent(term.getKey(), t -> new ArrayList<>()).add(weight);
+                norm += weight * weight;
+            }
+            phraseNorms[p] = (float) Math.sqrt(norm);
+        }
+
+        for (Map.Entry<String, List<Integer>> term : postingPhrases.entrySet()) {
+            List<Float> weights = postingWeights.get(term.getKey());
+            Postings postings = new Postings(idf(phraseCount, term.getValue().size()), term.getValue().size());
+            for (int i = 0; i < postings.phrases.length; i++) {
+                postings.phrases[i] = term.getValue().get(i);
+                postings.weights[i] = weights.get(i);
+            }
+            index.put(term.getKey(), postings);
+        }
+    }
+
+    /**
+     * Find the intent that best matches a message.
+     * @param input The user's message.
+     * @param context The active context (leading personality), case doesn't matter.
+     * @return The best match, or null if no phrase shares a single word with the message.
+     */
+    public Match match(String input, String context) {
+        Map<String, Integer> frequencies = termFrequencies(input);
+        if (frequencies.isEmpty())
+            return null;
+
+        // Accumulate dot products with every phrase that shares a term with the message.
+        float[] scores = new float[phraseIntents.length];
+        double queryNorm = 0;
+        for (Map.Entry<String, Integer> term : frequencies.entrySet()) {
+            Postings postings = index.get(term.getKey());
+            float weight = weight(term.getValue(), postings != null ? postings.idf : unknownTermIdf);
+            queryNorm += weight * weight;
+            if (postings == null)
+                continue;
+
+            for (int i = 0; i < postings.phrases.length; i++)
+                scores[postings.phrases[i]] += weight * postings.weights[i];
+        }
+        queryNorm = Math.sqrt(queryNorm);
+
+        boolean[] eligible = eligibleIntents(context);
+        int bestIntent = -1;
+        float bestConfidence = 0;
+        float bestRank = 0;
+        for (int p = 0; p < scores.length; p++) {
+            int intent = phraseIntents[p];
+            if (scores[p] <= 0 || !eligible[intent])
+                continue;
+
+            float confidence = (float) Math.min(1.0d, scores[p] / (queryNorm * phraseNorms[p]));
+            float rank = confidence + (intents.get(intent).getInputContexts().isEmpty() ? 0 : CONTEXT_BONUS);
+            if (rank > bestRank) {
+                bestRank = rank;
+                bestConfidence = confidence;
+                bestIntent = intent;
+            }
+        }
+        return bestIntent < 0 ? null : new Match(intents.get(bestIntent), bestConfidence);
+    }
+
+    /**
+     * Find the fallback intent ("I didn't get that") for a context, preferring one made for that context.
+     * @param context The active context.
+     * @return The fallback intent, or null if the agent has none.
+     */
+    public AgentIntent fallbackFor(String context) {
+        boolean[] eligible = eligibleIntents(context);
+        AgentIntent generic = null;
+        for (int i = 0; i < intents.size(); i++) {
+            AgentIntent intent = intents.get(i);
+            if (!intent.getFallback() || !eligible[i] || intent.getResponses().isEmpty())
+                continue;
+            if (!intent.getInputContexts().isEmpty())
+                return intent;
+            generic = intent;
+        }
+        return generic;
+    }
+
+    /**
+     * @return Amount of intents that can be matched (fallbacks excluded).
+     */
+    public int countMatchableIntents() {
+        Set<Integer> matchable = new HashSet<>();
+        for (int intent : phraseIntents)
+            matchable.add(intent);
+        return matchable.size();
+    }
+
+    /**
+     * Pick one of an intent's responses at random, like DialogFlow does.
+     * @param intent The intent.
+     * @return Raw fulfillment text, or an empty string if the intent has no text responses.
+     */
+    public static String pickResponse(AgentIntent intent) {
+        List<String> responses = intent.getResponses();
+        if (responses.isEmpty())
+            return "";
+        return responses.get(ThreadLocalRandom.current().nextInt(responses.size()));
+    }
+
+    /**
+     * Which intents can match while the given context is active: those without input contexts or whose only input context it is.
+     */
+    private boolean[] eligibleIntents(String context) {
+        String active = context == null ? "" : context.toLowerCase(Locale.ROOT);
+        return eligibility.computeIfAbsent(active, c -> {
+            boolean[] eligible = new boolean[intents.size()];
+            for (int i = 0; i < eligible.length; i++)
+                eligible[i] = intents.get(i).getInputContexts().stream().allMatch(c::equals);
+            return eligible;
+        });
+    }
+
+    /**
+     * Split a text into its terms: lowercase words (apostrophes dropped, so "didn't" and "didnt" are the same) and every pair of adjacent words.
+     */
+    static Map<String, Integer> termFrequencies(String text) {
+        String cleaned = APOSTROPHE.matcher(text.toLowerCase(Locale.ROOT)).replaceAll("");
+        Map<String, Integer> frequencies = new HashMap<>();
+        String previous = null;
+        for (String word : NON_WORD.split(cleaned)) {
+            if (word.isEmpty())
+                continue;
+            frequencies.merge(word, 1, Integer::sum);
+            if (previous != null)
+                frequencies.merge(previous + ' ' + word, 1, Integer::sum);
+            previous = word;
+        }
+        return frequencies;
+    }
+
+    private static float idf(int documents, int documentFrequency) {
+        return (float) Math.log(1.0d + (double) documents / documentFrequency);
+    }
+
+    private static float weight(int frequency, float idf) {
+        return (float) (1.0d + Math.log(frequency)) * idf;
+    }
+
+    /**
+     * Every phrase containing a term, with the term's weight in that phrase.
+     */
+    private static class Postings {
+        private final float idf;
+        private final int[] phrases;
+        private final float[] weights;
+
+        Postings(float idf, int size) {
+            this.idf = idf;
+            this.phrases = new int[size];
+            this.weights = new float[size];
+        }
+    }
+
+    /**
+     * An intent that matched a message, and how sure the matcher is about it.
+     */
+    public static class Match {
+        private final AgentIntent intent;
+        private final float confidence;
+
+        Match(AgentIntent intent, float confidence) {
+            this.intent = intent;
+            this.confidence = confidence;
+        }
+
+        public AgentIntent getIntent() {
+            return intent;
+        }
+
+        /**
+         * @return Cosine similarity with the best matching training phrase, from 0 (nothing in common) to 1 (same words).
+         */
+        public float getConfidence() {
+            return confidence;
+        }
+    }
+}
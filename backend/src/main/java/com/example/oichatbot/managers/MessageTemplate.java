@@ -0,0 +1,235 @@
+package com.example.oichatbot.managers;
+
+import com.example.oichatbot.domains.PersonalitySnapshot;
+import com.example.oichatbot.domains.TraitRegistry;
+import com.example.oichatbot.domains.TraitVector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compiled form of a raw DialogFlow fulfillment text.
+ * Emotion blocks like "[Patience;<0.5;Leave me alone!]" are parsed once into nodes with a pre-parsed emotion,
+ * operator and threshold, so rendering is a single pass that only compares floats and appends text.
+ * Blocks may be nested inside the text of another block. Malformed blocks never throw:
+ * an unclosed "[" is shown as plain text and a block without three segments or a valid condition is hidden.
+ * Immutable, so one instance can be shared by every conversation.
+ */
+public final class MessageTemplate {
+    private static final Pattern NUMBER = Pattern.compile("[-+]?\\d*\\.\\d+|[-+]?\\d+");  // Catches every possible variant of a positive or negative decimal.
+    private static final float EQUALITY_TOLERANCE = 0.001f;     // Comparing two floats with a small tolerance.
+
+    private final Node[] nodes;
+    private final int blockCount;
+    private final int sizeHint;     // Length of the raw text, a good first guess for the output buffer.
+
+    private MessageTemplate(Node[] nodes, int blockCount, int sizeHint) {
+        this.nodes = nodes;
+        this.blockCount = blockCount;
+        this.sizeHint = sizeHint;
+    }
+
+    /**
+     * Parse a raw fulfillment text into a template.
+     * @param raw Raw text, possibly containing (nested) emotion blocks.
+     * @return The compiled template.
+     */
+    public static MessageTemplate compile(String raw) {
+        int[] blocks = new int[1];
+        Node[] nodes = parse(raw, 0, raw.length(), blocks);
+        return new MessageTemplate(nodes, blocks[0], raw.length());
+    }
+
+    /**
+     * Render this template for the given conversation: blocks whose condition holds are replaced by their text, others are removed.
+     * @param snapshot Personality and mood of this reply, its emotions are compared against the block conditions.
+     * @return The readable message.
+     */
+    public String render(PersonalitySnapshot snapshot) {
+        if (blockCount == 0 && nodes.length == 1)
+            return ((TextNode) nodes[0]).text;     // Plain text, nothing to evaluate.
+
+        StringBuilder sb = new StringBuilder(sizeHint);
+        appendNodes(nodes, snapshot.getEmotions(), sb);
+        return sb.toString();
+    }
+
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    private static void appendNodes(Node[] nodes, TraitVector emotions, StringBuilder sb) {
+        for (Node node : nodes) {
+            if (node instanceof TextNode) {
+                sb.append(((TextNode) node).text);
+            }
+            else {
+                BlockNode block = (BlockNode) node;
+                if (block.matches(emotions))
+                    appendNodes(block.children, emotions, sb);
+            }
+        }
+    }
+
+    /**
+     * Parse raw[from, to) into a list of text and block nodes.
+     */
+    private static Node[] parse(String raw, int from, int to, int[] blocks) {
+        List<Node> nodes = new ArrayList<>();
+        int textStart = from;
+        int i = from;
+        while (i < to) {
+            if (raw.charAt(i) != '[') {
+                i++;
+                continue;
+            }
+
+            int end = findClosingBracket(raw, i, to);
+            if (end < 0)
+                break;      // Unclosed block, the remainder is treated as plain text.
+
+            if (i > textStart)
+                nodes.add(new TextNode(raw.substring(textStart, i)));
+            BlockNode block = parseBlock(raw, i + 1, end, blocks);
+            if (block != null)
+                nodes.add(block);
+            blocks[0]++;
+            i = end + 1;
+            textStart = i;
+        }
+        if (textStart < to || nodes.isEmpty())
+            nodes.add(new TextNode(raw.substring(textStart, to)));
+
+        return nodes.toArray(new Node[0]);
+    }
+
+    /**
+     * Find the "]" belonging to the "[" at position open, skipping over nested blocks.
+     * @return Index of the closing bracket, or -1 if there is none.
+     */
+    private static int findClosingBracket(String raw, int open, int to) {
+        int depth = 0;
+        for (int i = open; i < to; i++) {
+            char c = raw.charAt(i);
+            if (c == '[') {
+                depth++;
+            }
+            else if (c == ']') {
+                depth--;
+                if (depth == 0)
+                    return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parse the inside of one block: "emotion;condition;text". Only the first two top-level ";" are separators.
+     * @return The block, or null if it is malformed (and should therefore be hidden).
+     */
+    private static BlockNode parseBlock(String raw, int from, int to, int[] blocks) {
+        int first = findSeparator(raw, from, to);
+        int second = first < 0 ? -1 : findSeparator(raw, first + 1, to);
+        if (second < 0)
+            return null;
+
+        String emotion = raw.substring(from, first).trim();
+        String condition = raw.substring(first + 1, second).trim();
+
+        Matcher m = NUMBER.matcher(condition);
+        if (!m.find())
+            return null;
+        Operator operator = Operator.fromSymbol(condition.substring(0, m.start()).trim());
+        if (operator == null)
+            return null;
+
+        float threshold = Float.parseFloat(m.group());
+        return new BlockNode(emotion, operator, threshold, parse(raw, second + 1, to, blocks));
+    }
+
+    private static int findSeparator(String raw, int from, int to) {
+        int depth = 0;
+        for (int i = from; i < to; i++) {
+            char c = raw.charAt(i);
+            if (c == '[')
+                depth++;
+            else if (c == ']')
+                depth--;
+            else if (c == ';' && depth == 0)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Supported comparisons between the current emotion value and a block's threshold.
+     */
+    enum Operator {
+        EQUAL("=="), LESS("<"), GREATER(">"), LESS_OR_EQUAL("<="), GREATER_OR_EQUAL(">=");
+
+        private final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        static Operator fromSymbol(String symbol) {
+            for (Operator operator : values()) {
+                if (operator.symbol.equals(symbol))
+                    return operator;
+            }
+            return null;
+        }
+
+        boolean test(float value, float threshold) {
+            switch (this) {
+                case EQUAL:
+                    return Math.abs(value - threshold) < EQUALITY_TOLERANCE;
+                case LESS:
+                    return value < threshold;
+                case GREATER:
+                    return value > threshold;
+                case LESS_OR_EQUAL:
+                    return value <= threshold;
+                case GREATER_OR_EQUAL:
+                    return value >= threshold;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    private interface Node {
+    }
+
+    private static final class TextNode implements Node {
+        private final String text;
+
+        TextNode(String text) {
+            this.text = text;
+        }
+    }
+
+    private static final class BlockNode implements Node {
+        private final String emotion;
+        private final int emotionId;        // Resolved once, -1 if the emotion wasn't registered (yet).
+        private final Operator operator;
+        private final float threshold;
+        private final Node[] children;      // Text to show when the condition holds, may contain nested blocks.
+
+        BlockNode(String emotion, Operator operator, float threshold, Node[] children) {
+            this.emotion = emotion;
+            this.emotionId = TraitRegistry.EMOTIONS.idOf(emotion);
+            this.operator = operator;
+            this.threshold = threshold;
+            this.children = children;
+        }
+
+        boolean matches(TraitVector emotions) {
+            int id = emotionId >= 0 ? emotionId : TraitRegistry.EMOTIONS.idOf(emotion);
+            return id >= 0 && operator.test(emotions.get(id), threshold);     // Unknown emotions never match.
+        }
+    }
+}
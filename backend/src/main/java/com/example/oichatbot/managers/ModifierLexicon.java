@@ -0,0 +1,27 @@
+package com.example.oichatbot.managers;
+
+import com.example.oichatbot.domains.EmotionModifier;
+
+import java.util.function.Consumer;
+
+/**
+ * Words and phrases that alter the bot's emotions, ready to be matched against messages.
+ * Small lexicons (modifiers.json) are compiled in memory by PhraseIndex, large ones are read straight from a
+ * memory-mapped file by BinaryLexicon. Implementations are immutable and safe to share between threads.
+ */
+public interface ModifierLexicon {
+
+    /**
+     * Scan an input sentence in one pass and report every registered word and phrase it contains.
+     * A modifier is reported once for every time its word or phrase occurs.
+     * @param input Input sentence (any case).
+     * @param onMatch Called for every match, in the order the matches end in the sentence.
+     */
+    void match(String input, Consumer<EmotionModifier> onMatch);
+
+    /**
+     * Count every modifier in this lexicon.
+     * @return Amount of indexed words and phrases.
+     */
+    int size();
+}
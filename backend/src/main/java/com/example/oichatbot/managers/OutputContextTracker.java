@@ -0,0 +1,52 @@
+package com.example.oichatbot.managers;
+
+import com.example.oichatbot.domains.IntentResponse;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers which conversations got output contexts from DialogFlow with their last reply.
+ * Such a conversation may be waiting for a follow-up intent that only DialogFlow knows about,
+ * so shortcuts (cached or locally matched replies) should leave it alone until DialogFlow answers without output contexts again.
+ * Bounded (least recently used conversations are forgotten) and thread-safe.
+ */
+class OutputContextTracker {
+    private final LinkedHashMap<String, Boolean> sessions;      // Access-ordered, eldest = least recently used.
+
+    /**
+     * @param maxSessions Max amount of conversations to remember.
+     */
+    OutputContextTracker(int maxSessions) {
+        this.sessions = new LinkedHashMap<String, Boolean>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > maxSessions;
+            }
+        };
+    }
+
+    /**
+     * @param sessionId Conversation to check.
+     * @return True if its last reply from DialogFlow had output contexts.
+     */
+    boolean hasOutputContexts(String sessionId) {
+        synchronized (sessions) {
+            return sessions.containsKey(sessionId);
+        }
+    }
+
+    /**
+     * Record a reply DialogFlow gave in a conversation.
+     * @param sessionId Conversation.
+     * @param response DialogFlow's reply.
+     */
+    void record(String sessionId, IntentResponse response) {
+        synchronized (sessions) {
+            if (Boolean.TRUE.equals(response.getHasOutputContexts()))
+                sessions.put(sessionId, Boolean.TRUE);
+            else
+                sessions.remove(sessionId);
+        }
+    }
+}
@@ -1,95 +1,159 @@
 package com.example.oichatbot.managers;
 
+import com.example.oichatbot.domains.ConversationState;
 import com.example.oichatbot.domains.EmotionModifier;
+import com.example.oichatbot.domains.PersonalitySnapshot;
+import com.example.oichatbot.domains.TraitDecay;
+import com.example.oichatbot.domains.TraitRegistry;
+import com.example.oichatbot.domains.TraitVector;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonParser;
 import com.google.gson.reflect.TypeToken;
 import com.google.gson.stream.JsonReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.awt.*;
 import java.io.*;
 import java.lang.reflect.Type;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.List;
 
 /**
- * Tracks all current character qualities and emotions.
+ * Determines and alters character qualities and emotions.
+ * The actual values are stored per conversation (see ConversationState), this class holds the shared rules.
  * Singleton class - may seem redundant for now since DialogFlowBridge is a singleton too.
  */
 public class PersonalityManager {
+    private static final Logger log = LoggerFactory.getLogger(PersonalityManager.class);
+
+    // IDs of the built-in emotions and traits, values are stored in arrays indexed by these (see TraitVector).
+    // Patience (1.0f) <---> Frustration (-1.0f).
+    public static final int PATIENCE = TraitRegistry.EMOTIONS.register("Patience");
+    // Default threshold -> other traits need to be higher than this value otherwise the default intents will be used.
+    // Registered first so it wins ties.
+    public static final int DEFAULT = TraitRegistry.PERSONALITY.register("Default");
+    // Desire -> high values lead to expressing attraction and occasional dirty talk.
+    public static final int DESIRE = TraitRegistry.PERSONALITY.register("Desire");
+    // Curiosity -> high values lead to asking many questions and potentially coming across as "nosy".
+    public static final int CURIOSITY = TraitRegistry.PERSONALITY.register("Curiosity");
+
+    public static final String DEFAULT_MODIFIERS_FILE = "modifiers.json";
 
-    private Map<String, Float> emotions;    // Emotions that range from -1.0f to 1.0f.
-    private Map<String, Float> personality;     // Personality traits that range from 0.0f to 1.0f.
     private Map<String, String> colors;     // Colors assigned to specific (extreme) emotions.
 
     private boolean allowDynamicEmotions = false;
     private boolean allowDynamicPersonality = false;
 
-    private List<EmotionModifier> modifiers;    // Emotion modifiers that alter the chatbot's behavior based on input terms.
+    private volatile ModifierLexicon modifiers;    // Emotion modifiers that alter the chatbot's behavior based on input terms, compiled for fast lookup.
+    private String modifiersFile = DEFAULT_MODIFIERS_FILE;
     private Float globalModifyMultiplier = 2.0f;    // Global emotion modifier scale. Higher values mean more significant "mood swings".
-
-    private static PersonalityManager instance = null;
+    private volatile TraitDecay emotionDecay;       // How emotions drift back to their baseline over time, null -> they don't.
 
     private PersonalityManager() {
-        initEmotions();
-        initPersonality();
         initColors();
-        modifiers = readEmotionModifiersFromFile("modifiers.json");
-        temp();
+        modifiers = PhraseIndex.build(readEmotionModifiersFromFile(DEFAULT_MODIFIERS_FILE));
+    }
+
+    private static class Holder {
+        private static final PersonalityManager INSTANCE = new PersonalityManager();
     }
 
     // Static method to maintain one persistent instance.
     public static PersonalityManager getInstance() {
-        if (instance == null)
-            instance = new PersonalityManager();
-
-        return instance;
+        return Holder.INSTANCE;
     }
 
-    private void initEmotions() {
-        emotions = new HashMap<>();
-
-        // Patience (1.0f) <---> Frustration (-1.0f).
-        emotions.put("Patience", 0.0f);
+    /**
+     * Fill a brand new conversation with the default emotions and personality traits.
+     * Conversations restored after a restart (see StateJournal) start from here too, then get their saved values back.
+     * @param state Conversation to initialize.
+     */
+    public void initState(ConversationState state) {
+        state.getEmotionValues().update(this::initEmotions);
+        state.getPersonalityValues().update(this::initPersonality);
+        temp(state);
+        state.getEmotionValues().setDecay(emotionDecay);
     }
 
-    private void initPersonality() {
-        personality = new HashMap<>();
+    /**
+     * Let the emotions of new conversations drift back to a baseline over time. Called once at startup.
+     * Only emotions decay, personality traits stay as they are.
+     * @param halfLifeMillis Time after which an emotion has moved halfway back to its baseline. Zero or less disables decay.
+     * @param baseline Emotion name -> value it drifts towards. Emotions that aren't listed drift to the value a new conversation starts with.
+     */
+    public void configureEmotionDecay(long halfLifeMillis, Map<String, Float> baseline) {
+        if (halfLifeMillis <= 0) {
+            emotionDecay = null;
+            log.info("Emotion decay disabled.");
+            return;
+        }
+
+        // Start from a brand new conversation's emotions, without decay.
+        emotionDecay = null;
+        ConversationState fresh = new ConversationState("baseline");
+        initState(fresh);
+        float[] values = new float[TraitRegistry.EMOTIONS.size()];
+        for (int id = 0; id < values.length; id++)
+            values[id] = fresh.getEmotions().get(id);
+
+        for (Map.Entry<String, Float> entry : baseline.entrySet()) {
+            int id = TraitRegistry.EMOTIONS.idOf(entry.getKey());
+            if (id < 0)
+                log.warn("Unknown emotion \"{}\" in the emotion baseline, ignored.", entry.getKey());
+            else
+                values[id] = clamp(entry.getValue(), -1.0f, 1.0f);
+        }
 
-        // Desire -> high values lead to expressing attraction and occasional dirty talk.
-        personality.put("Desire", 0.0f);
-        // Curiosity -> high values lead to asking many questions and potentially coming across as "nosy".
-        personality.put("Curiosity", 0.0f);
+        emotionDecay = new TraitDecay(values, halfLifeMillis);
+        if (log.isInfoEnabled()) {
+            Map<String, Float> named = new LinkedHashMap<>();
+            for (int id = 0; id < values.length; id++)
+                named.put(TraitRegistry.EMOTIONS.nameOf(id), values[id]);
+            log.info("Emotions drift back to {} with a half-life of {} min.", named, halfLifeMillis / 60000.0);
+        }
+    }
 
-        // Default threshold -> other emotions need to be higher than this value otherwise the default intents will be used.
-        personality.put("Default", 0.2f);
+    /**
+     * Put a conversation back to the values a brand new one starts with. Values that initState() doesn't set go back to zero.
+     * @param state Conversation to reset.
+     */
+    public void resetState(ConversationState state) {
+        state.getEmotionValues().update(emotions -> {
+            clear(emotions, TraitRegistry.EMOTIONS);
+            initEmotions(emotions);
+        });
+        state.getPersonalityValues().update(personality -> {
+            clear(personality, TraitRegistry.PERSONALITY);
+            initPersonality(personality);
+        });
+        temp(state);
     }
 
-    public String getLeadingPersonality() {
-        return getHighestKeyInMap(personality);
+    private static void clear(TraitVector.Editor values, TraitRegistry registry) {
+        for (int id = 0; id < registry.size(); id++)
+            values.set(id, 0.0f);
     }
 
-    private String getHighestKeyInMap(Map<String, Float> map) {
-        // Separate into two arrays.
-        List<String> strings = new ArrayList<String>();
-        List<Float> floats = new ArrayList<Float>();
-        for (Map.Entry<String, Float> entry : map.entrySet()) {
-            strings.add(entry.getKey());
-            floats.add(entry.getValue());
-        }
+    private void initEmotions(TraitVector.Editor emotions) {
+        emotions.set(PATIENCE, 0.0f);
+    }
 
-        Float highestValue = 0.0f;
-        int highestIndex = 0;
-        // Turns values positive first with Math.abs (so an emotion at -0.8 is stronger than 0.7).
-        for (int i = 0; i < strings.size(); i++){
-            if (floats.get(i) > Math.abs(highestValue)) {
-                highestValue = floats.get(i);
-                highestIndex = i;
-            }
-        }
+    private void initPersonality(TraitVector.Editor personality) {
+        personality.set(DESIRE, 0.0f);
+        personality.set(CURIOSITY, 0.0f);
+        personality.set(DEFAULT, 0.2f);
+    }
 
-        return strings.get(highestIndex);
+    /**
+     * The leading trait is kept up to date whenever traits change, so this is a simple lookup.
+     * @param state Conversation to check.
+     * @return Name of the strongest personality trait.
+     */
+    public String getLeadingPersonality(ConversationState state) {
+        return state.getPersonality().getLeaderName();
     }
 
     private void initColors() {
@@ -100,9 +164,36 @@ public class PersonalityManager {
         colors.put("Patience_HIGH", "#b0e0e6");
     }
 
-    public String determineSuggestedColor() {
-        // First check for the currently strongest emotion.
-        String emotion = getHighestKeyInMap(emotions);
+    /**
+     * Determine everything personality and mood decide about one reply at once.
+     * @param personality Personality traits to use, read once at the start of the request.
+     * @param emotions Emotions to use, usually the result of alterEmotions() for this message.
+     * @return The snapshot shared by every stage of the request.
+     */
+    public PersonalitySnapshot takeSnapshot(TraitVector personality, TraitVector emotions) {
+        String leadingPersonality = personality.getLeaderName();
+        String color = ChatMetrics.time(ChatMetrics.Stage.COLOR, () -> determineSuggestedColor(emotions));
+        return new PersonalitySnapshot(personality, emotions, leadingPersonality, color,
+                SpeechManager.getInstance().determineVoice(leadingPersonality, emotions));
+    }
+
+    /**
+     * Take a snapshot of the conversation as it is right now.
+     * @param state Conversation to take a snapshot of.
+     * @return The snapshot.
+     */
+    public PersonalitySnapshot takeSnapshot(ConversationState state) {
+        return takeSnapshot(state.getPersonality(), state.getEmotions());
+    }
+
+    public String determineSuggestedColor(ConversationState state) {
+        return determineSuggestedColor(state.getEmotions());
+    }
+
+    private String determineSuggestedColor(TraitVector emotions) {
+        // First check for the currently strongest emotion (furthest from zero, so an emotion at -0.8 is stronger than 0.7).
+        int strongest = emotions.getLeader();
+        String emotion = emotions.getLeaderName();
 
         // Get LOW and HIGH color variant of the chosen emotion.
         Color colorLow = Color.decode(colors.get(emotion + "_LOW"));
@@ -110,7 +201,7 @@ public class PersonalityManager {
 
         // Interpolate between LOW and HIGH variants to get the appropriate color value.
         // First we need to convert emotions' range (-1 to 1) to a standard lerp alpha (0 to 1).
-        Float alpha = normalizeToRange(emotions.get(emotion), -1.0f, 1.0f);
+        Float alpha = normalizeToRange(emotions.get(strongest), -1.0f, 1.0f);
         // Parse as HEX string, does NOT support transparency.
         return "#" + Integer.toHexString(lerpColors(colorHigh, colorLow, alpha).getRGB()).substring(2);
     }
@@ -127,6 +218,29 @@ public class PersonalityManager {
         return (value - min) / (max - min);
     }
 
+    /**
+     * Switch to another modifier lexicon. Called once at startup (chatbot.modifiers.file).
+     * Files ending in ".lex" are compiled lexicons (see LexiconConverter) and are memory-mapped, anything else is read as JSON.
+     * If the file can't be loaded, the current modifiers stay in use.
+     * @param fileName Lexicon to use.
+     */
+    public void loadModifiers(String fileName) {
+        if (fileName.equals(modifiersFile))
+            return;     // Already loaded.
+
+        long start = System.nanoTime();
+        try {
+            if (fileName.endsWith(".lex"))
+                modifiers = BinaryLexicon.open(Paths.get(fileName));
+            else
+                modifiers = PhraseIndex.build(LexiconConverter.readJson(Paths.get(fileName)));
+            modifiersFile = fileName;
+            log.info("Loaded {} emotion modifiers from {} in {} ms.", modifiers.size(), fileName, (System.nanoTime() - start) / 1000000);
+        } catch (IOException e) {
+            log.error("Could not load emotion modifiers from {}, keeping {}: {}", fileName, modifiersFile, e.toString());
+        }
+    }
+
     /**
      * Read a list of EmotionModifiers from a locally stored file.
      * @param fileName Name of file to open.
@@ -134,21 +248,10 @@ public class PersonalityManager {
      */
     private List<EmotionModifier> readEmotionModifiersFromFile(String fileName) {
         try {
-            InputStream is = new FileInputStream(fileName);
-            BufferedReader buf = new BufferedReader(new InputStreamReader(is));
-            String line = buf.readLine();
-            StringBuilder sb = new StringBuilder();
-            while (line != null) {
-                sb.append(line).append("\n");
-                line = buf.readLine();
-            }
-            String fileAsString = sb.toString();
-
-            EmotionModifier[] modifierArray = new Gson().fromJson(fileAsString, EmotionModifier[].class);
-            return Arrays.asList(modifierArray);
+            return LexiconConverter.readJson(Paths.get(fileName));
         }
         catch (Exception e) {
-            System.out.println(e);
+            log.error("Could not load emotion modifiers, messages won't change emotions.", e);
             return new ArrayList<EmotionModifier>();
         }
 
@@ -175,41 +278,58 @@ public class PersonalityManager {
     /**
      * Called by DialogFlowBridge, this method checks an input query for registered phrases and changes emotions accordingly.
      * E.g. using many curse words will lower the bot's patience value.
+     * The whole sentence is scanned in one pass through the compiled lexicon (single words and multi-word phrases).
+     * Every change caused by one message is applied as a single atomic update, so concurrent messages never lose each other's changes.
+     * @param state Conversation whose emotions should be altered.
      * @param input Input sentence to scan for registered phrases.
+     * @return The emotions right after this message's changes.
      */
-    public void alterEmotions(String input) {
-        List<String> words = Arrays.asList(input.split("\\s+"));
-        for (String word: words) {
-            // Iterate through every word from the input sentence (rather than iterating through modifiers.json)
-            checkForRegisteredPhrase(word);
+    public TraitVector alterEmotions(ConversationState state, String input) {
+        List<EmotionModifier> matched = new ArrayList<>();
+        modifiers.match(input, modifier -> {
+            log.debug("Detected phrase: {}", modifier.getRelevantWord());
+            matched.add(modifier);
+        });
+        if (matched.isEmpty())
+            return state.getEmotions();
+
+        TraitVector before = state.getEmotions();
+        TraitVector after = state.getEmotionValues().update(emotions -> {
+            for (EmotionModifier modifier : matched)
+                applyModifier(emotions, modifier);
+        });
+        if (log.isDebugEnabled()) {
+            for (int emotion = 0; emotion < TraitRegistry.EMOTIONS.size(); emotion++) {
+                if (before.get(emotion) != after.get(emotion))
+                    log.debug("Modified emotion \"{}\": {}->{}", TraitRegistry.EMOTIONS.nameOf(emotion), before.get(emotion), after.get(emotion));
+            }
         }
+        return after;
     }
 
     /**
-     * Check a word for a potential match in modifiers.json and alter relevant emotion accordingly.
-     * @param word Input phrase.
+     * Alter the relevant emotion of a matched word or phrase from modifiers.json.
+     * Runs inside an atomic update (possibly more than once), so it must not have side effects.
+     * @param emotions Private copy of the conversation's emotions.
+     * @param modifier The matched modifier.
      */
-    private void checkForRegisteredPhrase(String word) {
-        for (EmotionModifier modifier: modifiers) {
-            if (word.toLowerCase().equals(modifier.getRelevantWord())) {
-                Float prevValue = emotions.get(modifier.getRelevantEmotion());
-                Float newValue = clamp((prevValue + (modifier.getModification() * globalModifyMultiplier)), -1.0f, 1.0f);
-                emotions.put(modifier.getRelevantEmotion(), newValue);
-                System.out.println("Detected phrase: " + modifier.getRelevantWord());
-                System.out.println("Modified emotion \"" + modifier.getRelevantEmotion() + "\": " + prevValue + "->" + newValue);
-            }
-        }
+    private void applyModifier(TraitVector.Editor emotions, EmotionModifier modifier) {
+        int emotion = TraitRegistry.EMOTIONS.idOf(modifier.getRelevantEmotion());
+        if (emotion < 0)
+            return;     // Unknown emotion in modifiers.json.
+
+        // Clamped after every modifier (not just at the end), so e.g. an extra insult at -1.0 doesn't cancel out a later compliment.
+        emotions.add(emotion, modifier.getModification() * globalModifyMultiplier);
     }
 
     /**
      * Increment emotion by specified amount. Can be negative.
-     * @param emotion Emotion to modify.
+     * @param state Conversation whose emotion should be modified.
+     * @param emotion ID of the emotion to modify, e.g. PATIENCE.
      * @param amount Amount to add/substract.
      */
-    public void incrementEmotion(String emotion, Float amount) {
-        Float prevValue = emotions.get(emotion);
-        Float newValue = clamp((prevValue + amount), -1.0f, 1.0f);
-        emotions.put(emotion, newValue);
+    public void incrementEmotion(ConversationState state, int emotion, float amount) {
+        state.getEmotionValues().add(emotion, amount);
     }
 
     /**
@@ -223,14 +343,6 @@ public class PersonalityManager {
         return Math.max(min, Math.min(max, value));
     }
 
-    public Map<String, Float> getEmotions() {
-        return emotions;
-    }
-
-    public Map<String, Float> getPersonality() {
-        return personality;
-    }
-
     public Float getGlobalModifyMultiplier() {
         return globalModifyMultiplier;
     }
@@ -242,12 +354,11 @@ public class PersonalityManager {
     /**
      * Temporary test method to set default personality extremes.
      */
-    private void temp() {
+    private void temp(ConversationState state) {
         // Just sets a high default character trait for testing.
-        // Using map.put() is fine since duplicates aren't allowed.
-        personality.put("Desire", 1.0f);    // Set 'Desire' as leading trait.
+        state.getPersonalityValues().update(personality -> personality.set(DESIRE, 1.0f));    // Set 'Desire' as leading trait.
 
-        emotions.put("Patience", 1.0f);    // Extremely patient.
+        state.getEmotionValues().update(emotions -> emotions.set(PATIENCE, 1.0f));    // Extremely patient.
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,194 @@
+package com.example.oichatbot.managers;
+
+import com.example.oichatbot.domains.EmotionModifier;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Immutable lookup structure for emotion modifiers, built once when modifiers.json is loaded.
+ * Single words are found with one hash lookup. Phrases of multiple words (e.g. "shut up") are found with an
+ * Aho-Corasick automaton that works on whole words instead of characters.
+ * An input sentence is matched in one pass, so the cost only depends on the input length and not on the lexicon size.
+ * Everything lives on the heap, so this suits lexicons up to some ten thousand entries; use BinaryLexicon beyond that.
+ */
+public final class PhraseIndex implements ModifierLexicon {
+    private static final int ROOT = 0;
+
+    private final Map<String, EmotionModifier[]> singleWords;      // Single word -> every modifier registered for it.
+    private final Map<String, Integer> phraseTokens;                // Every word used in a phrase -> token ID.
+    private final Map<Long, Integer> transitions;                   // (node, token ID) -> next node in the phrase trie.
+    private final int[] failureLinks;                               // Node -> longest proper suffix that is also in the trie.
+    private final EmotionModifier[][] outputs;                      // Node -> every phrase that ends at this node.
+    private final int entries;                                      // Amount of indexed modifiers.
+
+    private PhraseIndex(Map<String, EmotionModifier[]> singleWords, Map<String, Integer> phraseTokens,
+                        Map<Long, Integer> transitions, int[] failureLinks, EmotionModifier[][] outputs, int entries) {
+        this.singleWords = singleWords;
+        this.phraseTokens = phraseTokens;
+        this.transitions = transitions;
+        this.failureLinks = failureLinks;
+        this.outputs = outputs;
+        this.entries = entries;
+    }
+
+    /**
+     * Compile a list of modifiers into an index. Words and phrases are matched case-insensitively.
+     * @param modifiers Modifiers as read from modifiers.json.
+     * @return The finished (immutable) index.
+     */
+    public static PhraseIndex build(List<EmotionModifier> modifiers) {
+        Map<String, List<EmotionModifier>> singles = new HashMap<>();
+        Map<String, Integer> tokens = new HashMap<>();
+        Map<Long, Integer> trie = new HashMap<>();
+        List<List<EmotionModifier>> nodeOutputs = new ArrayList<>();
+        nodeOutputs.add(new ArrayList<>());     // Root node.
+        int entries = 0;
+
+        for (EmotionModifier modifier : modifiers) {
+            String[] words = tokenize(modifier.getRelevantWord().toLowerCase());
+            if (words.length == 0)
+                continue;
+            entries++;
+
+            if (words.length == 1) {
+                singles.computeIfAbsent(words[0], k -> new ArrayList<>()).add(modifier);
+                continue;
+            }
+
+            // Multi-word phrase, add it to the trie word by word.
+            int node = ROOT;
+            for (String word : words) {
+                Integer token = tokens.get(word);
+                if (token == null) {
+                    token = tokens.size();
+                    tokens.put(word, token);
+                }
+                Integer next = trie.get(key(node, token));
+                if (next == null) {
+                    next = nodeOutputs.size();
+                    nodeOutputs.add(new ArrayList<>());
+                    trie.put(key(node, token), next);
+                }
+                node = next;
+            }
+            nodeOutputs.get(node).add(modifier);
+        }
+
+        int[] failure = buildFailureLinks(trie, nodeOutputs);
+
+        Map<String, EmotionModifier[]> singleWords = new HashMap<>();
+        for (Map.Entry<String, List<EmotionModifier>> entry : singles.entrySet()) {
+            singleWords.put(entry.getKey(), entry.getValue().toArray(new EmotionModifier[0]));
+        }
+        EmotionModifier[][] outputs = new EmotionModifier[nodeOutputs.size()][];
+        for (int i = 0; i < outputs.length; i++) {
+            outputs[i] = nodeOutputs.get(i).toArray(new EmotionModifier[0]);
+        }
+
+        return new PhraseIndex(singleWords, tokens, trie, failure, outputs, entries);
+    }
+
+    /**
+     * Breadth-first walk over the trie to compute the failure link of every node.
+     * Also merges the outputs of each failure target into the node, so a match never has to follow links to report phrases.
+     */
+    private static int[] buildFailureLinks(Map<Long, Integer> trie, List<List<EmotionModifier>> nodeOutputs) {
+        // Group the children per node first, the trie itself is only keyed by (node, token).
+        List<List<long[]>> children = new ArrayList<>();
+        for (int i = 0; i < nodeOutputs.size(); i++) {
+            children.add(new ArrayList<>());
+        }
+        for (Map.Entry<Long, Integer> edge : trie.entrySet()) {
+            int parent = (int) (edge.getKey() >>> 32);
+            long token = edge.getKey() & 0xffffffffL;
+            children.get(parent).add(new long[] {token, edge.getValue()});
+        }
+
+        int[] failure = new int[nodeOutputs.size()];
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (long[] child : children.get(ROOT)) {
+            failure[(int) child[1]] = ROOT;
+            queue.add((int) child[1]);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (long[] child : children.get(node)) {
+                int token = (int) child[0];
+                int target = (int) child[1];
+
+                int fallback = failure[node];
+                Integer next = trie.get(key(fallback, token));
+                while (next == null && fallback != ROOT) {
+                    fallback = failure[fallback];
+                    next = trie.get(key(fallback, token));
+                }
+                failure[target] = (next == null) ? ROOT : next;
+                nodeOutputs.get(target).addAll(nodeOutputs.get(failure[target]));
+                queue.add(target);
+            }
+        }
+        return failure;
+    }
+
+    @Override
+    public void match(String input, Consumer<EmotionModifier> onMatch) {
+        String lower = input.toLowerCase();
+        int length = lower.length();
+        int node = ROOT;
+        int i = 0;
+        while (i < length) {
+            // Skip whitespace up to the start of the next word.
+            while (i < length && Character.isWhitespace(lower.charAt(i)))
+                i++;
+            if (i == length)
+                break;
+            int start = i;
+            while (i < length && !Character.isWhitespace(lower.charAt(i)))
+                i++;
+            String word = lower.substring(start, i);
+
+            EmotionModifier[] single = singleWords.get(word);
+            if (single != null) {
+                for (EmotionModifier modifier : single) {
+                    onMatch.accept(modifier);
+                }
+            }
+
+            node = step(node, word);
+            for (EmotionModifier modifier : outputs[node]) {
+                onMatch.accept(modifier);
+            }
+        }
+    }
+
+    /**
+     * Advance the phrase automaton by one word.
+     */
+    private int step(int node, String word) {
+        Integer token = phraseTokens.get(word);
+        if (token == null)
+            return ROOT;    // Word isn't part of any phrase, so no phrase can continue through it.
+
+        Integer next = transitions.get(key(node, token));
+        while (next == null && node != ROOT) {
+            node = failureLinks[node];
+            next = transitions.get(key(node, token));
+        }
+        return next == null ? ROOT : next;
+    }
+
+    @Override
+    public int size() {
+        return entries;
+    }
+
+    private static long key(int node, int token) {
+        return ((long) node << 32) | (token & 0xffffffffL);
+    }
+
+    private static String[] tokenize(String phrase) {
+        String trimmed = phrase.trim();
+        return trimmed.isEmpty() ? new String[0] : trimmed.split("\\s+");
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.oichatbot.managers;
+
+import com.example.oichatbot.domains.ConversationState;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps track of every active conversation, keyed by session ID.
+ * Sessions are spread over a fixed number of stripes (each with its own lock) so concurrent users rarely wait on each other.
+ * Each stripe is an access-ordered LinkedHashMap, which makes both size-based and idle-time-based eviction O(1) per request.
+ * Singleton class.
+ */
+public class SessionManager {
+    private static final Pattern VALID_SESSION_ID = Pattern.compile("[A-Za-z0-9_-]{1,36}");     // DialogFlow allows at most 36 characters.
+
+    private Integer stripeCount = 64;                // Number of independently locked segments. Should be a power of two.
+    private Integer maxSessions = 50000;             // Max amount of conversations kept in memory (spread evenly over all stripes).
+    private Long maxIdleMillis = 30 * 60 * 1000L;    // Conversations that haven't been used for this long are dropped.
+
+    private Stripe[] stripes;
+    private volatile Consumer<ConversationState> changeListener;    // Given to every conversation, see StateJournal. May be null.
+    private volatile Function<String, ConversationState> loader;     // Finds saved conversations that aren't in memory. May be null.
+
+    private SessionManager() {
+        initStripes();
+    }
+
+    private static class Holder {
+        private static final SessionManager INSTANCE = new SessionManager();
+    }
+
+    // Static method to maintain one persistent instance.
+    public static SessionManager getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Apply new limits. Existing sessions are dropped, so this should only be called at startup.
+     * @param maxSessions Max amount of conversations kept in memory.
+     * @param maxIdleMillis Max idle time (in milliseconds) before a conversation is evicted.
+     * @param stripeCount Number of independently locked segments, rounded up to a power of two.
+     */
+    public void configure(Integer maxSessions, Long maxIdleMillis, Integer stripeCount) {
+        this.maxSessions = maxSessions;
+        this.maxIdleMillis = maxIdleMillis;
+        // Round up to a power of two so a stripe can be picked with a simple bit mask.
+        int count = 1;
+        while (count < stripeCount)
+            count <<= 1;
+        this.stripeCount = count;
+        initStripes();
+    }
+
+    private void initStripes() {
+        int perStripe = Math.max(1, maxSessions / stripeCount);
+        stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(perStripe);
+        }
+    }
+
+    /**
+     * Find the conversation belonging to a session ID. If it isn't in memory (anymore) it's loaded as it was last saved,
+     * or a new one is started if it was never saved.
+     * @param sessionId Session ID, should be validated with isValidSessionId() first.
+     * @return The (possibly brand new) conversation state.
+     */
+    public ConversationState getOrCreate(String sessionId) {
+        Stripe stripe = stripeFor(sessionId);
+        synchronized (stripe) {
+            stripe.evictIdle(System.currentTimeMillis() - maxIdleMillis);
+            ConversationState state = stripe.get(sessionId);
+            if (state != null) {
+                state.touch();
+                return state;
+            }
+        }
+
+        // Loading may read the disk, so the other conversations in this stripe aren't held up by it.
+        Function<String, ConversationState> loader = this.loader;
+        ConversationState loaded = loader != null ? loader.apply(sessionId) : null;
+        synchronized (stripe) {
+            ConversationState state = stripe.get(sessionId);
+            if (state == null) {        // Not created by a concurrent request for the same session meanwhile.
+                state = loaded;
+                if (state == null) {
+                    state = new ConversationState(sessionId);
+                    PersonalityManager.getInstance().initState(state);
+                }
+                state.setChangeListener(changeListener);
+                stripe.put(sessionId, state);
+            }
+            state.touch();
+            return state;
+        }
+    }
+
+    /**
+     * Copy the list of conversations currently held in memory. Stripes are locked one at a time, never all at once.
+     * @return Every active conversation.
+     */
+    public List<ConversationState> getAll() {
+        List<ConversationState> all = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                all.addAll(stripe.values());
+            }
+        }
+        return all;
+    }
+
+    /**
+     * Tell someone about every change to a conversation from now on (set before conversations are created or restored).
+     * @param changeListener Called on the changing thread, so it must be quick. Null for nobody.
+     */
+    public void setChangeListener(Consumer<ConversationState> changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    /**
+     * Look up saved conversations whenever a session ID isn't in memory, e.g. after it was evicted or a restart.
+     * @param loader Called on the request thread without holding a lock, may read the disk. Returns null if nothing was saved.
+     */
+    public void setLoader(Function<String, ConversationState> loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Generate a fresh, random session ID.
+     * @return New session ID (UUID format).
+     */
+    public String newSessionId() {
+        return UUID.randomUUID().toString();
+    }
+
+    /**
+     * Check whether a client-supplied session ID is safe to use (also as part of a DialogFlow session path).
+     * @param sessionId Session ID from a header or cookie, may be null.
+     * @return True if the ID can be used as-is.
+     */
+    public boolean isValidSessionId(String sessionId) {
+        return sessionId != null && VALID_SESSION_ID.matcher(sessionId).matches();
+    }
+
+    /**
+     * Count all conversations currently held in memory.
+     * @return Amount of active sessions.
+     */
+    public int size() {
+        int total = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                total += stripe.size();
+            }
+        }
+        return total;
+    }
+
+    private Stripe stripeFor(String sessionId) {
+        // Spread the hash bits (like HashMap does) before masking, then pick a stripe.
+        int h = sessionId.hashCode();
+        h ^= (h >>> 16);
+        return stripes[h & (stripes.length - 1)];
+    }
+
+    /**
+     * One segment of the session table. Access-ordered, so the eldest entry is always the least recently used one.
+     */
+    private static class Stripe extends LinkedHashMap<String, ConversationState> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Stripe(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ConversationState> eldest) {
+            return size() > capacity;
+        }
+
+        /**
+         * Drop every conversation that was last used before the given moment.
+         * Stops at the first recent entry since everything after it was used even more recently.
+         * @param threshold Moment (millis) before which a conversation counts as idle.
+         */
+        void evictIdle(long threshold) {
+            Iterator<ConversationState> it = values().iterator();
+            while (it.hasNext()) {
+                if (it.next().getLastAccess() >= threshold)
+                    break;
+                it.remove();
+            }
+        }
+    }
+}
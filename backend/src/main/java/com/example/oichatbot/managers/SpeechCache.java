@@ -0,0 +1,216 @@
+package com.example.oichatbot.managers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Two-tier cache for synthesized speech, so common replies (e.g. greetings) only hit Google's text-to-speech API once.
+ * Clips are content-addressed: the key is a SHA-256 hash of the text and every voice parameter.
+ * Tier one is an in-memory LRU map bounded by the total amount of audio bytes.
+ * Tier two is a directory on disk (one file per key) that survives restarts.
+ * Singleton class.
+ */
+public class SpeechCache {
+    private static final Logger log = LoggerFactory.getLogger(SpeechCache.class);
+
+    private Path directory = Paths.get("tts-cache");
+    private Long maxMemoryBytes = 64L * 1024 * 1024;
+
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(256, 0.75f, true);    // Access-ordered, eldest = least recently used.
+    private long memoryBytes = 0;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private SpeechCache() {
+    }
+
+    private static class Holder {
+        private static final SpeechCache INSTANCE = new SpeechCache();
+    }
+
+    // Static method to maintain one persistent instance.
+    public static SpeechCache getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Apply new settings. Should only be called at startup.
+     * @param directory Directory for the on-disk tier, created if it doesn't exist.
+     * @param maxMemoryBytes Max total size of all clips kept in memory.
+     */
+    public void configure(String directory, Long maxMemoryBytes) {
+        this.directory = Paths.get(directory);
+        this.maxMemoryBytes = maxMemoryBytes;
+        synchronized (memory) {
+            memory.clear();
+            memoryBytes = 0;
+        }
+    }
+
+    /**
+     * Build the cache key for a clip. Every parameter that changes the audio has to be part of it.
+     * Numeric parameters should already be quantized, otherwise tiny emotion changes would all be cache misses.
+     * @return Hex-encoded SHA-256 hash.
+     */
+    public static String key(String text, String voiceGender, String languageCode, double pitch, double rate, double volume) {
+        String canonical = text + '\u0000' + voiceGender + '\u0000' + languageCode + '\u0000' + pitch + '\u0000' + rate + '\u0000' + volume;
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(canonical.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Look up a clip, first in memory and then on disk. Disk hits are promoted to memory.
+     * @param key Key from key().
+     * @return The MP3 bytes, or null if this clip was never synthesized.
+     */
+    public byte[] get(String key) {
+        byte[] audio;
+        synchronized (memory) {
+            audio = memory.get(key);
+        }
+        if (audio != null) {
+            memoryHits.incrementAndGet();
+            return audio;
+        }
+
+        Path file = pathFor(key);
+        if (Files.isRegularFile(file)) {
+            try {
+                audio = Files.readAllBytes(file);
+                diskHits.incrementAndGet();
+                remember(key, audio);
+                return audio;
+            } catch (IOException e) {
+                log.warn("Could not read cached speech file {}: {}", file, e.toString());
+            }
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Check whether a clip was synthesized before, without reading it. Counts as a hit or miss like get().
+     * @param key Key from key().
+     * @return True if the clip is in memory or on disk.
+     */
+    public boolean contains(String key) {
+        synchronized (memory) {
+            if (memory.containsKey(key)) {
+                memoryHits.incrementAndGet();
+                return true;
+            }
+        }
+        if (Files.isRegularFile(pathFor(key))) {
+            diskHits.incrementAndGet();
+            return true;
+        }
+        misses.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Look up a clip in memory only: no disk I/O, and it doesn't count as a hit or miss.
+     * @param key Key from key().
+     * @return The MP3 bytes (shared, must not be modified), or null if the clip isn't in memory.
+     */
+    public byte[] getFromMemory(String key) {
+        synchronized (memory) {
+            return memory.get(key);
+        }
+    }
+
+    /**
+     * Store a freshly synthesized clip in both tiers.
+     * @param key Key from key().
+     * @param audio The MP3 bytes.
+     * @return True if the clip can be served now, i.e. it's in at least one tier. False if it was too large for memory
+     * and couldn't be written to disk either.
+     */
+    public boolean put(String key, byte[] audio) {
+        boolean inMemory = remember(key, audio);
+
+        Path file = pathFor(key);
+        try {
+            Files.createDirectories(file.getParent());
+            // Write to a temporary file first, so other requests never see a half-written clip.
+            Path temp = Files.createTempFile(file.getParent(), key, ".tmp");
+            Files.write(temp, audio);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            log.warn("Could not write speech cache file {}: {}", file, e.toString());
+            return inMemory;
+        }
+    }
+
+    /**
+     * Location of a clip on disk. Spread over 256 subdirectories to keep directory listings small.
+     */
+    public Path pathFor(String key) {
+        return directory.resolve(key.substring(0, 2)).resolve(key + ".mp3");
+    }
+
+    /**
+     * @return True if the clip was kept in memory.
+     */
+    private boolean remember(String key, byte[] audio) {
+        if (audio.length > maxMemoryBytes)
+            return false;     // Would push out everything else.
+
+        synchronized (memory) {
+            byte[] previous = memory.put(key, audio);
+            if (previous != null)
+                memoryBytes -= previous.length;
+            memoryBytes += audio.length;
+
+            // Evict least recently used clips until we're within budget again.
+            Iterator<byte[]> it = memory.values().iterator();
+            while (memoryBytes > maxMemoryBytes && it.hasNext()) {
+                memoryBytes -= it.next().length;
+                it.remove();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hit/miss counters and current memory usage.
+     * @return Map of statistic name to value.
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("memoryHits", memoryHits.get());
+        stats.put("diskHits", diskHits.get());
+        stats.put("misses", misses.get());
+        synchronized (memory) {
+            stats.put("memoryEntries", (long) memory.size());
+            stats.put("memoryBytes", memoryBytes);
+        }
+        stats.put("maxMemoryBytes", maxMemoryBytes);
+        return stats;
+    }
+}
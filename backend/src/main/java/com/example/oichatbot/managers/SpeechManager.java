@@ -1,28 +1,38 @@
 package com.example.oichatbot.managers;
 
+import com.example.oichatbot.domains.ConversationState;
+import com.example.oichatbot.domains.PersonalitySnapshot;
+import com.example.oichatbot.domains.TraitVector;
+import com.example.oichatbot.domains.VoiceSettings;
 import com.google.cloud.texttospeech.v1.*;
-import com.google.protobuf.ByteString;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.io.*;
-import java.nio.file.Files;
-import java.util.Base64;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Responsible for text-to-speech conversion and audio output.
  * Singleton class.
  */
 public class SpeechManager {
-    private boolean shouldPlayAudio = true;
+    private static final Logger log = LoggerFactory.getLogger(SpeechManager.class);
+
     private Map<String, SsmlVoiceGender> voiceTypes;
     private Map<String, Double> basePitches;
     private Map<String, Double> baseRates;
     private Float maxAdditionalPitch = 3.0f;        // Max amount of additional pitch based on emotions.
     private Float maxAdditionalRate = 0.3f;         // Max amount of additional rate based on emotions.
     private Float maxAdditionalVolume = 16.0f;         // Max amount of additional volume based on emotions.
-
-    private static SpeechManager instance = null;
+    private String languageCode = "en-US";
+    private Double pitchStep = 0.5d;        // Pitch is rounded to half semitones before synthesis (and caching).
+    private Double rateStep = 0.05d;        // Speaking rate is rounded to steps of 5%.
+    private Double volumeStep = 1.0d;       // Volume gain is rounded to whole decibels.
+    private TextToSpeechClient textToSpeechClient;      // Shared client, created once by the application (see ChatbotConfiguration).
+    private final AtomicInteger synthesesInFlight = new AtomicInteger();
 
     public SpeechManager() {
         initVoiceTypes();
@@ -30,92 +40,161 @@ public class SpeechManager {
         initBaseRates();
     }
 
+    private static class Holder {
+        private static final SpeechManager INSTANCE = new SpeechManager();
+    }
+
     // Static method to maintain one persistent instance.
-    public static SpeechManager getInstance()
-    {
-        if (instance == null)
-            instance = new SpeechManager();
+    public static SpeechManager getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Set the client used to synthesize speech. Called once at startup.
+     * @param textToSpeechClient Shared client, or null to only serve clips that are already cached.
+     */
+    public void setTextToSpeechClient(TextToSpeechClient textToSpeechClient) {
+        this.textToSpeechClient = textToSpeechClient;
+    }
 
-        return instance;
+    /**
+     * Open the text-to-speech connection ahead of the first reply, with a (free) request for the available voices.
+     * @return Future that completes once the connection is up, right away if text-to-speech is disabled.
+     */
+    public CompletableFuture<Void> warmUp() {
+        if (textToSpeechClient == null)
+            return CompletableFuture.completedFuture(null);
+
+        ListVoicesRequest request = ListVoicesRequest.newBuilder().setLanguageCode(languageCode).build();
+        try {
+            return FutureUtils.toCompletableFuture(textToSpeechClient.listVoicesCallable().futureCall(request))
+                    .thenApply(response -> null);
+        } catch (RuntimeException e) {
+            return FutureUtils.failed(e);
+        }
     }
 
     /**
-     * Toggle audio output (inverts boolean).
+     * Toggle audio output for one conversation (inverts boolean).
+     * @param state Conversation to toggle audio for.
      * @return Boolean (true if should play, false if muted).
      */
-    public boolean toggleAudio() {
-        shouldPlayAudio = !shouldPlayAudio;
-        return shouldPlayAudio;
-    }
-
-    public String say(String inputText, String fileName) {
-        String audioContent = "";
-
-        // Instantiates a client.
-        try (TextToSpeechClient textToSpeechClient = TextToSpeechClient.create()) {
-            // Set the text input to be synthesized.
-            SynthesisInput input = SynthesisInput.newBuilder()
-                    .setText(inputText)
-                    .build();
-
-            // Build the voice request, select the language code ("en-US") and the ssml voice gender.
-            VoiceSelectionParams voice = VoiceSelectionParams.newBuilder()
-                    .setLanguageCode("en-US")
-                    .setSsmlGender(determineVoiceType())
-                    .build();
-
-            // Select the type of audio file you want returned.
-            AudioConfig audioConfig = AudioConfig.newBuilder()
-                    .setAudioEncoding(AudioEncoding.MP3)
-                    .setPitch(determineBasePitch() + determineAdditionalPitch())
-                    .setSpeakingRate(determineBaseRate() + determineAdditionalRate())
-                    .setVolumeGainDb(determineAdditionalVolume())
-                    .build();
-
-            // Perform the text-to-speech request on the text input with the selected voice parameters and
-            // audio file type.
-            SynthesizeSpeechResponse response = textToSpeechClient.synthesizeSpeech(input, voice, audioConfig);
-
-            // Get the audio contents from the response.
-            ByteString audioContents = response.getAudioContent();
-
-            // Write the response to the output file.
-            try (OutputStream out = new FileOutputStream(fileName)) {
-                out.write(audioContents.toByteArray());
-                System.out.println("Audio content written to file \"" + fileName + "\"");
-
-                // This used to be handled in the back-end as a temporary test method.
-                // playAudio(fileName);
-                // Now we encode the audio file to Base64 so it can be sent in the original POST response.
-                audioContent = encodeFileToBase64(new File(fileName));
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
+    public boolean toggleAudio(ConversationState state) {
+        state.setAudioEnabled(!state.isAudioEnabled());
+        return state.isAudioEnabled();
+    }
+
+    /**
+     * Determine the voice for a reply. Called once per request while taking its PersonalitySnapshot.
+     * Values are quantized, so nearly identical moods share the same cached clip.
+     * @param leadingPersonality Leading personality trait.
+     * @param emotions Current emotions.
+     * @return The voice parameters.
+     */
+    public VoiceSettings determineVoice(String leadingPersonality, TraitVector emotions) {
+        return new VoiceSettings(determineVoiceType(leadingPersonality),
+                quantize(determineBasePitch(leadingPersonality) + determineAdditionalPitch(emotions), pitchStep),
+                quantize(determineBaseRate(leadingPersonality) + determineAdditionalRate(emotions), rateStep),
+                quantize(determineAdditionalVolume(emotions), volumeStep));
+    }
+
+    /**
+     * Convert a reply to speech. Clips are looked up in the SpeechCache first, Google is only called on a miss.
+     * No thread waits for Google in the meantime, the future completes once the clip has been stored.
+     * @param snapshot Personality and mood of this reply, determines the voice.
+     * @param inputText Text to speak.
+     * @param executor Executor that stores the synthesized clip (disk I/O), so it doesn't run on a gRPC thread.
+     * @return Future with the ID of the clip (see AudioManager), or an empty string if synthesis failed.
+     */
+    public CompletableFuture<String> sayAsync(PersonalitySnapshot snapshot, String inputText, Executor executor) {
+        VoiceSettings voice = snapshot.getVoice();
+        SsmlVoiceGender voiceType = voice.getVoiceType();
+        double pitch = voice.getPitch();
+        double rate = voice.getSpeakingRate();
+        double volume = voice.getVolumeGain();
+
+        // The cache key doubles as the clip ID, the client downloads the audio with it afterwards.
+        String key = SpeechCache.key(inputText, voiceType.name(), languageCode, pitch, rate, volume);
+        if (SpeechCache.getInstance().contains(key))
+            return CompletableFuture.completedFuture(key);
+
+        if (textToSpeechClient == null) {
+            log.debug("Text-to-speech is disabled, replying without audio.");
+            return CompletableFuture.completedFuture("");
         }
 
-        return audioContent;
+        return synthesizeAsync(inputText, voiceType, pitch, rate, volume)
+                .thenApplyAsync(audio -> {
+                    // The ID is only handed out if the clip can actually be downloaded with it.
+                    if (!SpeechCache.getInstance().put(key, audio)) {
+                        ChatMetrics.failed(ChatMetrics.Stage.SAY);
+                        return "";
+                    }
+                    return key;
+                }, executor)
+                .exceptionally(e -> {
+                    ChatMetrics.failed(ChatMetrics.Stage.SAY);
+                    log.warn("Text-to-speech failed, replying without audio.", e);
+                    return "";
+                });
     }
 
     /**
-     * Encode an audio file (.mp3)'s content to Base64.
-     * @param file Audio file (preferably .mp3 format).
-     * @return The Base64 content as String.
+     * Perform the actual text-to-speech request through the shared client.
+     * @return Future with the MP3 bytes.
      */
-    private String encodeFileToBase64(File file) {
+    private CompletableFuture<byte[]> synthesizeAsync(String inputText, SsmlVoiceGender voiceType, double pitch, double rate, double volume) {
+        // Set the text input to be synthesized.
+        SynthesisInput input = SynthesisInput.newBuilder()
+                .setText(inputText)
+                .build();
+
+        // Build the voice request, select the language code ("en-US") and the ssml voice gender.
+        VoiceSelectionParams voice = VoiceSelectionParams.newBuilder()
+                .setLanguageCode(languageCode)
+                .setSsmlGender(voiceType)
+                .build();
+
+        // Select the type of audio file you want returned.
+        AudioConfig audioConfig = AudioConfig.newBuilder()
+                .setAudioEncoding(AudioEncoding.MP3)
+                .setPitch(pitch)
+                .setSpeakingRate(rate)
+                .setVolumeGainDb(volume)
+                .build();
+
+        SynthesizeSpeechRequest request = SynthesizeSpeechRequest.newBuilder()
+                .setInput(input)
+                .setVoice(voice)
+                .setAudioConfig(audioConfig)
+                .build();
+
+        // Perform the text-to-speech request on the text input with the selected voice parameters and
+        // audio file type, then get the audio contents from the response.
+        synthesesInFlight.incrementAndGet();
         try {
-            byte[] fileContent = Files.readAllBytes(file.toPath());
-            return Base64.getEncoder().encodeToString(fileContent);
-        } catch (IOException e) {
-            throw new IllegalStateException("could not read file " + file, e);
+            return FutureUtils.toCompletableFuture(textToSpeechClient.synthesizeSpeechCallable().futureCall(request))
+                    .whenComplete((response, e) -> synthesesInFlight.decrementAndGet())
+                    .thenApply(response -> response.getAudioContent().toByteArray());
+        } catch (RuntimeException e) {
+            synthesesInFlight.decrementAndGet();
+            return FutureUtils.failed(e);
         }
     }
 
+    /**
+     * Round a value to the nearest multiple of step.
+     */
+    private double quantize(double value, double step) {
+        return Math.round(value / step) * step;
+    }
+
     /**
      * Determine the right text-to-speech voice type depending on the current leading personality.
      * @return The recommended SsmlVoiceGender enum value.
      */
-    private SsmlVoiceGender determineVoiceType() {
-        return voiceTypes.get(PersonalityManager.getInstance().getLeadingPersonality());
+    private SsmlVoiceGender determineVoiceType(String leadingPersonality) {
+        return voiceTypes.get(leadingPersonality);
     }
 
     /**
@@ -132,8 +211,8 @@ public class SpeechManager {
      * Determine a recommended voice pitch based on the current leading personality trait.
      * @return The suggested (base) voice pitch.
      */
-    private Double determineBasePitch() {
-        return basePitches.get(PersonalityManager.getInstance().getLeadingPersonality());
+    private Double determineBasePitch(String leadingPersonality) {
+        return basePitches.get(leadingPersonality);
     }
 
     /**
@@ -150,8 +229,8 @@ public class SpeechManager {
      * Determine a recommended speaking rate based on the current leading personality trait.
      * @return The suggested (base) speaking rate.
      */
-    private Double determineBaseRate() {
-        return baseRates.get(PersonalityManager.getInstance().getLeadingPersonality());
+    private Double determineBaseRate(String leadingPersonality) {
+        return baseRates.get(leadingPersonality);
     }
 
     /**
@@ -169,15 +248,15 @@ public class SpeechManager {
      * Based on its current emotions.
      * @return The final addition to its base pitch.
      */
-    private Double determineAdditionalPitch() {
+    private Double determineAdditionalPitch(TraitVector emotions) {
         // Add an additional value based on the 'Patience' emotion.
         // In the future more emotions may be considered.
         Double value = 0.0d;
 
         // Multiplied by -1 since LOW patience requires HIGH pitch.
-        value += (PersonalityManager.getInstance().getEmotions().get("Patience") * maxAdditionalPitch * -1.0f);
+        value += (emotions.get(PersonalityManager.PATIENCE) * maxAdditionalPitch * -1.0f);
 
-        System.out.println("Final voice pitch: " + value);
+        log.debug("Final voice pitch: {}", value);
         return value;
     }
 
@@ -186,17 +265,17 @@ public class SpeechManager {
      * Based on its current emotions.
      * @return The final addition to its base speaking rate.
      */
-    private Double determineAdditionalRate() {
+    private Double determineAdditionalRate(TraitVector emotions) {
         // Add an additional value based on the 'Patience' emotion.
         // In the future more emotions may be considered.
         Double value = 0.0d;
 
         // Multiplied by -1 since LOW patience requires HIGH speaking rate.
-        value += (PersonalityManager.getInstance().getEmotions().get("Patience") * maxAdditionalRate * -1.0f);
+        value += (emotions.get(PersonalityManager.PATIENCE) * maxAdditionalRate * -1.0f);
 
         value = clamp(value, 0.0d, 999.0d);
 
-        System.out.println("Final speaking rate: " + value);
+        log.debug("Final speaking rate: {}", value);
         return value;
     }
 
@@ -205,17 +284,17 @@ public class SpeechManager {
      * Based on its current emotions.
      * @return The final addition to its base voice volume.
      */
-    private Double determineAdditionalVolume() {
+    private Double determineAdditionalVolume(TraitVector emotions) {
         // Add an additional value based on the 'Patience' emotion.
         // In the future more emotions may be considered.
         Double value = 0.0d;
 
         // Multiplied by -1 since LOW patience requires HIGH volume.
-        value += (PersonalityManager.getInstance().getEmotions().get("Patience") * maxAdditionalVolume * -1.0f);
+        value += (emotions.get(PersonalityManager.PATIENCE) * maxAdditionalVolume * -1.0f);
 
         value = clamp(value, 0.0d, 16.0d);      // +16db is Google's maximum audio gain.
 
-        System.out.println("Final volume gain: " + value);
+        log.debug("Final volume gain: {}", value);
         return value;
     }
 
@@ -230,11 +309,15 @@ public class SpeechManager {
         return Math.max(min, Math.min(max, value));
     }
 
-    public boolean shouldPlayAudio() {
-        return shouldPlayAudio;
+    /**
+     * Amount of text-to-speech calls that are waiting for Google right now.
+     * @return Calls in flight.
+     */
+    public int getSynthesesInFlight() {
+        return synthesesInFlight.get();
     }
 
-    public void setShouldPlayAudio(boolean shouldPlayAudio) {
-        this.shouldPlayAudio = shouldPlayAudio;
+    public boolean shouldPlayAudio(ConversationState state) {
+        return state.isAudioEnabled();
     }
 }
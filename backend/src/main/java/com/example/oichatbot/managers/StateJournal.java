@@ -0,0 +1,676 @@
+package com.example.oichatbot.managers;
+
+import com.example.oichatbot.domains.ConversationState;
+import com.example.oichatbot.domains.TraitRegistry;
+import com.example.oichatbot.domains.TraitValues;
+import com.example.oichatbot.domains.TraitVector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps every conversation's emotions, personality and settings on disk, so a restart (e.g. a rolling deploy) doesn't reset anyone's mood.
+ * Write-behind: a change only marks its conversation as dirty (a map put on the request thread). A background thread writes every
+ * dirty conversation to an append-only journal once per flush interval and syncs the file once for the whole batch (group commit),
+ * so no chat request ever waits for the disk. A crash loses at most the changes of the last flush interval.
+ * Only where the last record of every conversation is on disk (file and offset) is kept in memory, so a conversation that
+ * SessionManager evicted (or that wasn't loaded since the restart) is read back as soon as its session ID comes back.
+ * Every snapshot interval (or when the journal grows too large) every saved conversation is written to a snapshot,
+ * after which older files are deleted. Conversations that haven't been used for the retention time are left out.
+ * At startup the newest snapshot and every journal after it are read.
+ * Files in the state directory, both a header (magic, version) followed by records (length, CRC32, conversation):
+ * - snapshot-[generation].bin: every conversation as it was when journal [generation] was started.
+ * - journal-[generation].log: changes made after that.
+ * Replay stops at the first incomplete or damaged record, i.e. a write that was cut off by a crash.
+ * Singleton class.
+ */
+public class StateJournal {
+    private static final Logger log = LoggerFactory.getLogger(StateJournal.class);
+
+    private static final int MAGIC = 0x4F495354;        // "OIST"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_RECORD_BYTES = 1 << 20;
+    private static final Pattern FILE_NAME = Pattern.compile("(journal|snapshot)-([0-9a-f]{16})\\.(log|bin)");
+
+    private final Map<String, ConversationState> dirty = new ConcurrentHashMap<>();     // Changed since the last flush, by session ID.
+    private final Map<String, ConversationState> inFlight = new ConcurrentHashMap<>();  // Taken from dirty by the batch being written.
+    private final Map<String, Location> saved = new ConcurrentHashMap<>();              // Where the last record is on disk, by session ID.
+    private final AtomicLong recordsWritten = new AtomicLong();
+    private final AtomicLong syncs = new AtomicLong();
+    private volatile boolean running = false;
+
+    // Only used by the writer thread (and start/stop), always while holding this object's lock.
+    private ScheduledExecutorService writer;
+    private Path directory;
+    private long generation;
+    private FileChannel journal;
+    private long journalBytes;
+    private long compactAfterBytes = 64 * 1024 * 1024L;
+    private long snapshotIntervalMillis = 10 * 60 * 1000L;
+    private long retentionMillis = 30 * 24 * 60 * 60 * 1000L;
+    private long lastSnapshot;
+
+    private StateJournal() {
+    }
+
+    private static class Holder {
+        private static final StateJournal INSTANCE = new StateJournal();
+    }
+
+    // Static method to maintain one persistent instance.
+    public static StateJournal getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Read every saved conversation, hand SessionManager a way to load them, then start recording changes. Called once at startup,
+     * after SessionManager and PersonalityManager have been configured.
+     * @param directory Directory for the journal and snapshot files, created if needed.
+     * @param flushMillis Time between writes (and syncs) of the journal. Also the most a crash can lose.
+     * @param snapshotMinutes Time between snapshots.
+     * @param compactAfterBytes Take a snapshot early once the journal has grown this large.
+     * @param retentionDays Conversations that haven't been used for this long are forgotten at the next snapshot.
+     * @throws IOException If the directory can't be used. Nothing is recorded then.
+     */
+    public synchronized void start(Path directory, long flushMillis, long snapshotMinutes, long compactAfterBytes,
+                                   long retentionDays) throws IOException {
+        this.directory = directory;
+        this.snapshotIntervalMillis = snapshotMinutes * 60 * 1000L;
+        this.compactAfterBytes = compactAfterBytes;
+        this.retentionMillis = retentionDays * 24 * 60 * 60 * 1000L;
+        Files.createDirectories(directory);
+        dirty.clear();
+        inFlight.clear();
+        saved.clear();
+
+        long start = System.nanoTime();
+        SessionManager.getInstance().setChangeListener(this::record);
+        SessionManager.getInstance().setLoader(this::load);
+        int found = replay();
+        // Everything that was replayed goes into a fresh snapshot right away, so the old files (and any damaged tails) can go.
+        compact();
+        log.info("Found {} saved conversations in {} in {} ms.", found, directory, (System.nanoTime() - start) / 1000000);
+
+        running = true;
+        writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "state-journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(this::flushQuietly, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Write everything that is still pending, take a final snapshot (so the next start only reads that) and close the journal.
+     */
+    public void stop() {
+        ScheduledExecutorService writer;
+        synchronized (this) {
+            writer = this.writer;
+            this.writer = null;
+        }
+        if (writer == null)
+            return;
+
+        writer.shutdown();
+        try {
+            writer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            try {
+                flush();
+                compact();
+            } catch (IOException e) {
+                log.error("Could not save conversations on shutdown, the journal up to the last flush is kept: {}", e.toString());
+            }
+            running = false;
+            closeJournal();
+        }
+    }
+
+    /**
+     * Mark a conversation as changed, it's written with the next batch. Called on the request thread, never blocks.
+     * Several changes between two flushes only cost one record.
+     * @param state The changed conversation.
+     */
+    public void record(ConversationState state) {
+        if (running)
+            dirty.put(state.getSessionId(), state);
+    }
+
+    /**
+     * Load a conversation that isn't in memory (anymore), as it was last saved. Called by SessionManager on the request thread,
+     * reads one record from disk.
+     * @param sessionId Session ID of the conversation.
+     * @return The conversation, or null if it was never saved (or has expired).
+     */
+    public ConversationState load(String sessionId) {
+        // Evicted before its last change was written: the pending change is newer than anything saved.
+        // A batch takes conversations from dirty to inFlight, and only clears inFlight once their new location is saved.
+        ConversationState pending = dirty.get(sessionId);
+        if (pending == null)
+            pending = inFlight.get(sessionId);
+        if (pending != null)
+            return pending;
+
+        Location location = saved.get(sessionId);
+        while (location != null) {
+            try (FileChannel file = FileChannel.open(location.file, StandardOpenOption.READ)) {
+                return readRecord(readPayload(file, location));
+            } catch (NoSuchFileException e) {
+                // Compacted meanwhile: the snapshot is in the index before the older files are deleted.
+                Location moved = saved.get(sessionId);
+                if (moved == location) {
+                    log.warn("Saved conversation of {} is gone: {} was deleted.", sessionId, location.file);
+                    return null;
+                }
+                location = moved;
+            } catch (IOException e) {
+                log.warn("Skipping unreadable conversation record of {}: {}", sessionId, e.toString());
+                return null;
+            }
+        }
+        return null;
+    }
+
+    public long getRecordsWritten() {
+        return recordsWritten.get();
+    }
+
+    public long getSyncs() {
+        return syncs.get();
+    }
+
+    /**
+     * @return Conversations changed since the last flush.
+     */
+    public int getPending() {
+        return dirty.size();
+    }
+
+    /**
+     * @return Conversations on disk, whether they're in memory or not.
+     */
+    public int getSaved() {
+        return saved.size();
+    }
+
+    private void flushQuietly() {
+        try {
+            synchronized (this) {
+                flush();
+                // Periodic snapshots are skipped while nothing changes.
+                boolean due = System.currentTimeMillis() - lastSnapshot >= snapshotIntervalMillis && journalBytes > HEADER_BYTES;
+                if (due || journalBytes >= compactAfterBytes)
+                    compact();
+            }
+        } catch (Exception e) {
+            // E.g. disk full. The conversations stay dirty, so they're written again next time.
+            log.error("Could not write conversation state: {}", e.toString());
+        }
+    }
+
+    /**
+     * Append every dirty conversation to the journal as one batch, then sync once.
+     * @throws IOException If writing failed, the batch is marked dirty again.
+     */
+    private void flush() throws IOException {
+        if (dirty.isEmpty())
+            return;
+        if (journal == null)
+            rollJournal();      // The last journal couldn't be repaired after a failed write.
+
+        Path file = directory.resolve(fileName("journal", generation));
+        ByteArrayOutputStream batch = new ByteArrayOutputStream(64 * 1024);
+        DataOutputStream out = new DataOutputStream(batch);
+        Map<String, Location> records = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<String, ConversationState> entry : dirty.entrySet()) {
+                // Removed before reading, so a change made while we read marks it dirty again (and is written next time).
+                // Until the batch is on disk load() finds it in inFlight instead.
+                inFlight.put(entry.getKey(), entry.getValue());
+                if (dirty.remove(entry.getKey(), entry.getValue())) {
+                    byte[] payload = encode(entry.getValue());
+                    records.put(entry.getKey(), new Location(file, journalBytes + batch.size(), payload.length,
+                            entry.getValue().getLastAccess()));
+                    writeRecord(out, payload);
+                }
+            }
+
+            ByteBuffer buffer = ByteBuffer.wrap(batch.toByteArray());
+            while (buffer.hasRemaining())
+                journal.write(buffer);
+            journal.force(false);       // One sync for the whole batch.
+        } catch (IOException e) {
+            for (Map.Entry<String, ConversationState> entry : inFlight.entrySet())
+                dirty.putIfAbsent(entry.getKey(), entry.getValue());
+            inFlight.clear();
+            discardPartialBatch();
+            throw e;
+        }
+        saved.putAll(records);
+        inFlight.clear();
+        journalBytes += batch.size();
+        recordsWritten.addAndGet(records.size());
+        syncs.incrementAndGet();
+        log.debug("Wrote {} conversations ({} bytes) to journal {}.", records.size(), batch.size(), generation);
+    }
+
+    /**
+     * Cut a partly written batch off the journal. Replay stops at the first damaged record, so anything appended after
+     * the remains of a failed batch would be lost after a crash, no matter how often it was synced.
+     * If the journal can't be cut (e.g. the disk is gone), the next flush starts a new journal instead.
+     */
+    private void discardPartialBatch() {
+        try {
+            journal.truncate(journalBytes);
+            journal.position(journalBytes);
+        } catch (IOException e) {
+            log.warn("Could not cut a failed batch off journal {}, continuing in a new one: {}", generation, e.toString());
+            closeJournal();
+        }
+    }
+
+    /**
+     * Continue in a new journal without taking a snapshot. Replay reads the old journal up to its last intact record,
+     * then the new one.
+     * @throws IOException If the new journal can't be created.
+     */
+    private void rollJournal() throws IOException {
+        journal = openJournal(generation + 1);
+        generation++;
+        journalBytes = HEADER_BYTES;
+    }
+
+    /**
+     * Start the next journal and write every saved conversation to a snapshot, then delete the older files.
+     * Conversations in memory are written as they are now, the others (evicted, or not used since the restart) are copied
+     * from the older files, unless they haven't been used for the retention time.
+     * The snapshot is taken after switching journals, so it already contains everything in the older ones,
+     * and it's only used once it's completely on disk (written to a temporary file, synced, then renamed).
+     * @throws IOException If the snapshot could not be written, the older files are kept.
+     */
+    private void compact() throws IOException {
+        long next = generation + 1;
+        FileChannel nextJournal = openJournal(next);
+        closeJournal();
+        journal = nextJournal;
+        generation = next;
+        journalBytes = HEADER_BYTES;
+
+        Path snapshot = directory.resolve(fileName("snapshot", next));
+        Path temp = directory.resolve(snapshot.getFileName() + ".tmp");
+        int expired = 0;
+        long expiredBefore = System.currentTimeMillis() - retentionMillis;
+        Map<String, Location> index = new HashMap<>();
+        Map<Path, FileChannel> sources = new HashMap<>();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024));
+            writeHeader(out);
+            long position = HEADER_BYTES;
+            for (ConversationState state : SessionManager.getInstance().getAll()) {
+                byte[] payload = encode(state);
+                index.put(state.getSessionId(), new Location(snapshot, position, payload.length, state.getLastAccess()));
+                writeRecord(out, payload);
+                position += 8 + payload.length;
+            }
+            for (Map.Entry<String, Location> entry : saved.entrySet()) {
+                Location location = entry.getValue();
+                if (index.containsKey(entry.getKey()))
+                    continue;
+                if (location.lastSeen < expiredBefore) {
+                    expired++;
+                    continue;
+                }
+                byte[] payload;
+                try {
+                    FileChannel source = sources.get(location.file);
+                    if (source == null) {
+                        source = FileChannel.open(location.file, StandardOpenOption.READ);
+                        sources.put(location.file, source);
+                    }
+                    payload = readPayload(source, location);
+                } catch (IOException e) {
+                    log.warn("Skipping unreadable conversation record of {}: {}", entry.getKey(), e.toString());
+                    continue;
+                }
+                index.put(entry.getKey(), new Location(snapshot, position, payload.length, location.lastSeen));
+                writeRecord(out, payload);
+                position += 8 + payload.length;
+            }
+            out.flush();
+            channel.force(true);
+        } finally {
+            for (FileChannel source : sources.values())
+                source.close();
+        }
+        Files.move(temp, snapshot, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory();
+        lastSnapshot = System.currentTimeMillis();
+        saved.putAll(index);
+        // Expired conversations are only forgotten once the snapshot without them is safe.
+        saved.keySet().retainAll(index.keySet());
+
+        // Only now that the snapshot is safe, everything before it can go.
+        for (Map.Entry<Long, Path> file : listFiles("journal").entrySet()) {
+            if (file.getKey() < next)
+                Files.deleteIfExists(file.getValue());
+        }
+        for (Map.Entry<Long, Path> file : listFiles("snapshot").entrySet()) {
+            if (file.getKey() < next)
+                Files.deleteIfExists(file.getValue());
+        }
+        log.debug("Snapshot {} written with {} conversations ({} expired).", next, index.size(), expired);
+    }
+
+    /**
+     * Read the newest snapshot and every journal from then on, and keep where the last record of every conversation is.
+     * Conversations are only read back once their session ID is used again (see load()).
+     * @return Amount of saved conversations.
+     * @throws IOException If the directory can't be listed.
+     */
+    private int replay() throws IOException {
+        NavigableMap<Long, Path> snapshots = listFiles("snapshot");
+        NavigableMap<Long, Path> journals = listFiles("journal");
+
+        // Later records replace earlier ones for the same conversation.
+        Map<String, Location> records = new HashMap<>();
+        long from = 0;
+        if (!snapshots.isEmpty()) {
+            from = snapshots.lastKey();
+            readFile(snapshots.get(from), records);
+        }
+        for (Map.Entry<Long, Path> file : journals.entrySet()) {
+            if (file.getKey() >= from)
+                readFile(file.getValue(), records);
+        }
+
+        // Continue after the highest generation on disk, so no existing file is ever overwritten.
+        generation = journals.isEmpty() ? from : Math.max(from, journals.lastKey());
+
+        saved.putAll(records);
+        return saved.size();
+    }
+
+    /**
+     * Read every intact record of a journal or snapshot.
+     * @param file File to read.
+     * @param records Session ID -> where its record is, records are put in here.
+     */
+    private void readFile(Path file, Map<String, Location> records) {
+        int count = 0;
+        long position = HEADER_BYTES;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                log.warn("Skipping {}: not a conversation state file (or a newer version).", file);
+                return;
+            }
+
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;      // Clean end of file.
+                }
+                int checksum = in.readInt();
+                if (length < 0 || length > MAX_RECORD_BYTES)
+                    throw new IOException("invalid record length " + length);
+                byte[] record = new byte[length];
+                in.readFully(record);
+
+                crc.reset();
+                crc.update(record, 0, length);
+                if ((int) crc.getValue() != checksum)
+                    throw new IOException("checksum mismatch");
+
+                String sessionId = new DataInputStream(new ByteArrayInputStream(record)).readUTF();
+                try {
+                    records.put(sessionId, new Location(file, position, length, readLastSeen(record)));
+                } catch (IOException e) {
+                    log.warn("Skipping unreadable conversation record of {}: {}", sessionId, e.toString());
+                    records.remove(sessionId);
+                }
+                position += 8 + length;
+                count++;
+            }
+        } catch (EOFException e) {
+            log.warn("{} ends in an incomplete record (cut off by a crash?), using the {} records before it.", file, count);
+        } catch (IOException e) {
+            log.warn("{} is damaged after {} records ({}), using the records before it.", file, count, e.getMessage());
+        }
+        log.debug("Read {} records from {}.", count, file);
+    }
+
+    private static void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    /**
+     * Turn one conversation into a record. Values are stored by name, so files stay readable when emotions or traits are
+     * added or reordered. The last use comes last, records written before it existed end after the personality.
+     */
+    private static byte[] encode(ConversationState state) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream record = new DataOutputStream(bytes);
+        record.writeUTF(state.getSessionId());
+        record.writeBoolean(state.isInDebug());
+        record.writeBoolean(state.isAudioEnabled());
+        writeVector(record, state.getEmotions());
+        writeVector(record, state.getPersonality());
+        record.writeLong(state.getLastAccess());
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Write one record: length, CRC32, then the conversation itself.
+     */
+    private static void writeRecord(DataOutputStream out, byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        out.writeInt(payload.length);
+        out.writeInt((int) crc.getValue());
+        out.write(payload);
+    }
+
+    /**
+     * Read one record back from where it was written, and check it's still intact.
+     * @param file The journal or snapshot it's in, opened for reading.
+     * @param location Where it is.
+     * @return The conversation, as written by encode().
+     * @throws IOException If it can't be read or doesn't match its checksum.
+     */
+    private static byte[] readPayload(FileChannel file, Location location) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8 + location.length);
+        long position = location.offset;
+        while (buffer.hasRemaining()) {
+            int read = file.read(buffer, position);
+            if (read < 0)
+                throw new EOFException("record cut off in " + location.file);
+            position += read;
+        }
+        buffer.flip();
+        int length = buffer.getInt();
+        int checksum = buffer.getInt();
+        if (length != location.length)
+            throw new IOException("no record at " + location.offset + " in " + location.file);
+        byte[] payload = new byte[length];
+        buffer.get(payload);
+
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, length);
+        if ((int) crc.getValue() != checksum)
+            throw new IOException("checksum mismatch in " + location.file);
+        return payload;
+    }
+
+    private static void writeVector(DataOutputStream out, TraitVector values) throws IOException {
+        TraitRegistry registry = values.getRegistry();
+        out.writeLong(values.getUpdatedAt());
+        out.writeShort(registry.size());
+        for (int id = 0; id < registry.size(); id++) {
+            out.writeUTF(registry.nameOf(id));
+            out.writeFloat(values.get(id));
+        }
+    }
+
+    /**
+     * Turn a record back into a conversation. Values that aren't in the record keep what a new conversation starts with.
+     */
+    private static ConversationState readRecord(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        ConversationState state = new ConversationState(in.readUTF());
+        PersonalityManager.getInstance().initState(state);
+        state.setInDebug(in.readBoolean());
+        state.setAudioEnabled(in.readBoolean());
+        readVector(in, state.getEmotionValues(), TraitRegistry.EMOTIONS);
+        readVector(in, state.getPersonalityValues(), TraitRegistry.PERSONALITY);
+        return state;
+    }
+
+    /**
+     * Find out when a conversation was last used without decoding it. Records without that use the last change instead.
+     */
+    private static long readLastSeen(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        in.readUTF();
+        in.readBoolean();
+        in.readBoolean();
+        long lastChange = Math.max(skipVector(in), skipVector(in));
+        return in.available() >= 8 ? in.readLong() : lastChange;
+    }
+
+    /**
+     * @return When the skipped values were last changed.
+     */
+    private static long skipVector(DataInputStream in) throws IOException {
+        long updatedAt = in.readLong();
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            in.readUTF();
+            in.readFloat();
+        }
+        return updatedAt;
+    }
+
+    private static void readVector(DataInputStream in, TraitValues target, TraitRegistry registry) throws IOException {
+        long updatedAt = in.readLong();
+        int count = in.readUnsignedShort();
+        int[] ids = new int[count];
+        float[] values = new float[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = registry.idOf(in.readUTF());     // -1 for emotions/traits that no longer exist, those are skipped.
+            values[i] = in.readFloat();
+        }
+        target.restore(editor -> {
+            for (int i = 0; i < count; i++) {
+                if (ids[i] >= 0)
+                    editor.set(ids[i], values[i]);
+            }
+        }, updatedAt);
+    }
+
+    private FileChannel openJournal(long generation) throws IOException {
+        FileChannel channel = FileChannel.open(directory.resolve(fileName("journal", generation)),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        OutputStream out = Channels.newOutputStream(channel);
+        writeHeader(new DataOutputStream(out));
+        return channel;
+    }
+
+    private void closeJournal() {
+        if (journal == null)
+            return;
+        try {
+            journal.close();
+        } catch (IOException e) {
+            log.warn("Could not close journal {}: {}", generation, e.toString());
+        }
+        journal = null;
+    }
+
+    /**
+     * Make a rename durable. Not every platform can sync a directory (e.g. Windows), the rename itself is atomic regardless.
+     */
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            log.debug("Could not sync directory {}: {}", directory, e.toString());
+        }
+    }
+
+    /**
+     * @param kind "journal" or "snapshot".
+     * @return Generation -> file, in ascending order.
+     */
+    private NavigableMap<Long, Path> listFiles(String kind) throws IOException {
+        NavigableMap<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches() && matcher.group(1).equals(kind))
+                    files.put(Long.parseUnsignedLong(matcher.group(2), 16), file);
+            }
+        }
+        return files;
+    }
+
+    private static String fileName(String kind, long generation) {
+        return String.format("%s-%016x.%s", kind, generation, kind.equals("journal") ? "log" : "bin");
+    }
+
+    /**
+     * Where the last record of a conversation is on disk. A few dozen bytes, whatever the size of the conversation.
+     */
+    private static class Location {
+        private final Path file;
+        private final long offset;      // Of the record header (length, CRC32).
+        private final int length;       // Of the conversation after the header.
+        private final long lastSeen;
+
+        Location(Path file, long offset, int length, long lastSeen) {
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+            this.lastSeen = lastSeen;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.oichatbot.resources;
+
+import com.example.oichatbot.managers.AudioManager;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Serves the audio clips that chat replies refer to (see Message.audioUrl).
+ * Clips held in memory (extremes, recently synthesized speech) are written straight from memory, others are read from disk.
+ * Clips never change once they have an ID, so they can be cached forever by the browser.
+ * Supports (single) HTTP Range requests so players can seek and resume.
+ * The file is handed to Tomcat's sendfile when available (zero-copy), otherwise copied with FileChannel.transferTo().
+ */
+@CrossOrigin(origins = "*", allowedHeaders = "*")
+@RestController
+@RequestMapping("/test/audio")
+public class AudioResource {
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    /**
+     * Stream one audio clip.
+     * @param clipId ID of the clip, as handed out in a chat reply.
+     * @param request Used for conditional and Range headers.
+     * @param response Response the clip is written to.
+     * @throws IOException If the clip could not be read or the client went away.
+     */
+    @GetMapping("/{clipId}")
+    public void streamClip(@PathVariable String clipId, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        byte[] bytes = AudioManager.getInstance().findClipBytes(clipId);
+        Path file = (bytes == null) ? AudioManager.getInstance().findClipFile(clipId) : null;
+        if (file == null && bytes == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        // The ID is derived from the content, so it makes a perfect (strong) ETag.
+        String etag = "\"" + clipId + "\"";
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "public, max-age=31536000, immutable");
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (etag.equals(request.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        if (bytes != null) {
+            // Written straight from memory without any disk I/O.
+            long[] range = applyRange(request, response, bytes.length);
+            if (range != null && !"HEAD".equals(request.getMethod()))
+                response.getOutputStream().write(bytes, (int) range[0], (int) (range[1] - range[0] + 1));
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long[] range = applyRange(request, response, channel.size());
+            if (range == null || "HEAD".equals(request.getMethod()))
+                return;
+            long start = range[0];
+            long end = range[1];     // Inclusive.
+
+            if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+                // Let Tomcat write the file straight from the page cache to the socket once we return.
+                request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+                request.setAttribute(SENDFILE_START, start);
+                request.setAttribute(SENDFILE_END, end + 1);
+                return;
+            }
+
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = end - start + 1;
+            while (remaining > 0) {
+                long written = channel.transferTo(position, remaining, out);
+                if (written <= 0)
+                    break;
+                position += written;
+                remaining -= written;
+            }
+        }
+    }
+
+    /**
+     * Set status, content type and length headers for the requested part of a clip.
+     * @return {start, end} (both inclusive) of the part to send, or null if the range can't be satisfied (error already sent).
+     */
+    private long[] applyRange(HttpServletRequest request, HttpServletResponse response, long length) throws IOException {
+        long[] range = parseRange(request.getHeader(HttpHeaders.RANGE), length);
+        if (range == null) {
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+            response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return null;
+        }
+        if (range[0] > 0 || range[1] < length - 1) {
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + range[0] + "-" + range[1] + "/" + length);
+        }
+        response.setContentType("audio/mpeg");
+        response.setContentLengthLong(range[1] - range[0] + 1);
+        return range;
+    }
+
+    /**
+     * Parse a (single) byte range. Multiple ranges aren't supported and fall back to the whole clip.
+     * @param header Value of the Range header, may be null.
+     * @param length Total length of the clip.
+     * @return {start, end} (both inclusive), or null if the range can't be satisfied.
+     */
+    private long[] parseRange(String header, long length) {
+        long[] whole = new long[] {0, length - 1};
+        if (header == null || !header.startsWith("bytes=") || header.contains(","))
+            return whole;
+
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0)
+            return whole;
+
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                // Suffix range, e.g. "bytes=-500" for the last 500 bytes.
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0)
+                    return null;
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            }
+            else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+            }
+            return (start > end || start >= length) ? null : new long[] {start, end};
+        } catch (NumberFormatException e) {
+            return whole;
+        }
+    }
+}
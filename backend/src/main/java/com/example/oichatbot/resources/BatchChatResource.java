@@ -0,0 +1,80 @@
+package com.example.oichatbot.resources;
+
+import com.example.oichatbot.domains.BatchReply;
+import com.example.oichatbot.domains.ConversationState;
+import com.example.oichatbot.domains.Message;
+import com.example.oichatbot.managers.ChatManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Batch variant of /test/chat/post, meant for replaying whole transcripts (QA, warming up personas).
+ * All messages belong to one conversation and are answered as if they were sent one by one, but their upstream calls overlap.
+ * Replies are streamed back as newline-delimited JSON (one BatchReply per line) in order of completion.
+ */
+@CrossOrigin(origins = "*", allowedHeaders = "*", exposedHeaders = TestResource.SESSION_HEADER)
+@RestController
+@RequestMapping("/test/chat")
+public class BatchChatResource {
+    private static final Logger log = LoggerFactory.getLogger(BatchChatResource.class);
+    private static final String NDJSON = "application/x-ndjson";
+
+    @Value("${chatbot.batch.max-messages:1000}")
+    private Integer maxMessages;
+
+    @Value("${chatbot.batch.max-parallel:8}")
+    private Integer maxParallel;
+
+    @Value("${chatbot.batch.timeout-minutes:10}")
+    private Long timeoutMinutes;
+
+    /**
+     * Reply to an ordered list of messages.
+     * @param messages The user's messages, in order.
+     * @param sessionHeader Session ID sent as header, may be null.
+     * @param sessionCookie Session ID sent as cookie, may be null.
+     * @param response Used to hand the (new) session ID back to the client.
+     * @return Stream of replies, or 413 if there are more than chatbot.batch.max-messages messages.
+     */
+    @PostMapping(path = "/batch", consumes = "application/json", produces = NDJSON)
+    public ResponseEntity<ResponseBodyEmitter> chatBatch(@RequestBody List<Message> messages,
+                                                         @RequestHeader(value = TestResource.SESSION_HEADER, required = false) String sessionHeader,
+                                                         @CookieValue(value = TestResource.SESSION_COOKIE, required = false) String sessionCookie,
+                                                         HttpServletResponse response) {
+        if (messages.size() > maxMessages)
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+
+        ConversationState state = TestResource.resolveSession(sessionHeader, sessionCookie, response);
+        List<String> inputs = new ArrayList<>(messages.size());
+        for (Message message : messages)
+            inputs.add(message.getContent());
+
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(timeoutMinutes * 60 * 1000L);
+        log.info("Replaying {} messages in session {}.", inputs.size(), state.getSessionId());
+        ChatManager.getInstance().replyBatchAsync(state, inputs, maxParallel, reply -> send(emitter, reply))
+                .whenComplete((done, e) -> emitter.complete());
+
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(emitter);
+    }
+
+    private void send(ResponseBodyEmitter emitter, BatchReply reply) {
+        try {
+            emitter.send(reply, MediaType.APPLICATION_JSON);
+            emitter.send("\n", MediaType.TEXT_PLAIN);
+        } catch (IOException | IllegalStateException e) {
+            // Client went away, the remaining replies are still computed (emotions must stay consistent) but not sent.
+            log.debug("Could not send batch reply {}: {}", reply.getIndex(), e.toString());
+        }
+    }
+}
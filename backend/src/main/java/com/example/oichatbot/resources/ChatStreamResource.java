@@ -0,0 +1,145 @@
+package com.example.oichatbot.resources;
+
+import com.example.oichatbot.domains.ConversationState;
+import com.example.oichatbot.domains.Message;
+import com.example.oichatbot.managers.ChatManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Server-Sent Events channel for chat replies.
+ * A client keeps one stream open per conversation (GET /test/chat/stream) and posts its messages to /test/chat/send.
+ * Every reply is pushed as a "message" event (text and color) as soon as it has been parsed,
+ * followed by an "audio" event with the same ID once text-to-speech is done.
+ * That way users never wait for text-to-speech before they can read the reply.
+ * Reply IDs are "[epoch]-[number]": every stream gets a random epoch (sent in its "session" event) and numbers its replies from 1,
+ * so IDs never repeat when a client reconnects, e.g. to a restarted or another node.
+ */
+@CrossOrigin(origins = "*", allowedHeaders = "*", exposedHeaders = TestResource.SESSION_HEADER)
+@RestController
+@RequestMapping("/test/chat")
+public class ChatStreamResource {
+    private static final Logger log = LoggerFactory.getLogger(ChatStreamResource.class);
+
+    private final Map<String, Stream> streams = new ConcurrentHashMap<>();     // Session ID -> open stream.
+
+    @Value("${chatbot.stream.timeout-minutes:30}")
+    private Long streamTimeoutMinutes;
+
+    /**
+     * Open the event stream for a conversation. A previous stream of the same conversation is closed.
+     * EventSource can't set headers, so the session ID is passed as query parameter instead.
+     * The first event ("session") tells the client which session ID it ended up with, and the epoch of this stream's reply IDs.
+     * @param sessionParam Session ID sent as query parameter, may be null.
+     * @param sessionCookie Session ID sent as cookie, may be null.
+     * @param response Used to hand the (new) session ID back to the client.
+     * @return The stream.
+     * @throws IOException If the first event could not be sent.
+     */
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter openStream(@RequestParam(value = "session", required = false) String sessionParam,
+                                 @CookieValue(value = TestResource.SESSION_COOKIE, required = false) String sessionCookie,
+                                 HttpServletResponse response) throws IOException {
+        String sessionId = TestResource.resolveSession(sessionParam, sessionCookie, response).getSessionId();
+
+        SseEmitter emitter = new SseEmitter(streamTimeoutMinutes * 60 * 1000L);
+        Stream stream = new Stream(emitter);
+        emitter.onCompletion(() -> streams.remove(sessionId, stream));
+        emitter.onTimeout(() -> streams.remove(sessionId, stream));
+        emitter.onError(e -> streams.remove(sessionId, stream));
+
+        Stream previous = streams.put(sessionId, stream);
+        if (previous != null)
+            previous.emitter.complete();
+
+        Map<String, String> session = new LinkedHashMap<>();
+        session.put("sessionId", sessionId);
+        session.put("epoch", stream.epoch);
+        emitter.send(SseEmitter.event().name("session").data(session, MediaType.APPLICATION_JSON));
+        return emitter;
+    }
+
+    /**
+     * Send a message. The reply is pushed through the conversation's open stream.
+     * @param message Message to respond to.
+     * @param sessionHeader Session ID sent as header, may be null.
+     * @param sessionCookie Session ID sent as cookie, may be null.
+     * @param response Used to hand the session ID back to the client.
+     * @return 202 with the ID of the upcoming reply, or 409 if the conversation has no open stream (use /test/chat/post instead).
+     */
+    @PostMapping(path = "/send", consumes = "application/json", produces = "application/json")
+    public ResponseEntity<String> send(@RequestBody Message message,
+                                       @RequestHeader(value = TestResource.SESSION_HEADER, required = false) String sessionHeader,
+                                       @CookieValue(value = TestResource.SESSION_COOKIE, required = false) String sessionCookie,
+                                       HttpServletResponse response) {
+        ConversationState state = TestResource.resolveSession(sessionHeader, sessionCookie, response);
+        Stream stream = streams.get(state.getSessionId());
+        if (stream == null)
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+
+        String replyId = stream.epoch + "-" + stream.replies.incrementAndGet();
+        final boolean[] textHadAudio = new boolean[1];
+
+        ChatManager.getInstance().replyAsync(state, message.getContent(), reply -> {
+            // Text and color are ready, push them right away.
+            reply.setId(replyId);
+            textHadAudio[0] = !reply.getAudioUrl().isEmpty();
+            push(state.getSessionId(), stream, "message", reply);
+        }).thenAccept(reply -> {
+            // Only push audio that wasn't already part of the first event (e.g. extremes).
+            if (!textHadAudio[0] && !reply.getAudioUrl().isEmpty())
+                push(state.getSessionId(), stream, "audio", reply);
+        }).exceptionally(e -> {
+            log.warn("Could not reply to streamed message.", e);
+            push(state.getSessionId(), stream, "failure", replyId);
+            return null;
+        });
+
+        return ResponseEntity.accepted().body(replyId);
+    }
+
+    /**
+     * Amount of conversations with an open stream.
+     * @return Open streams.
+     */
+    @GetMapping("/stream/count")
+    public Integer countStreams() {
+        return streams.size();
+    }
+
+    private void push(String sessionId, Stream stream, String eventName, Object data) {
+        try {
+            stream.emitter.send(SseEmitter.event().name(eventName).data(data, MediaType.APPLICATION_JSON));
+        } catch (IOException | IllegalStateException e) {
+            // Client went away (or the stream was replaced), it will reconnect and ask again.
+            streams.remove(sessionId, stream);
+        }
+    }
+
+    /**
+     * One open stream and the numbering of the replies pushed through it.
+     */
+    private static class Stream {
+        private final SseEmitter emitter;
+        private final String epoch = Long.toHexString(ThreadLocalRandom.current().nextLong());     // Random, so no other stream (or node) uses it.
+        private final AtomicLong replies = new AtomicLong();
+
+        Stream(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+    }
+}
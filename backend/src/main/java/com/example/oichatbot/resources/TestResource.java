@@ -1,35 +1,42 @@
 package com.example.oichatbot.resources;
 
-import com.example.oichatbot.managers.DebugManager;
-import com.example.oichatbot.managers.DialogFlowBridge;
+import com.example.oichatbot.domains.ConversationState;
+import com.example.oichatbot.managers.ChatManager;
+import com.example.oichatbot.domains.IntentPage;
+import com.example.oichatbot.managers.IntentCatalogue;
 import com.example.oichatbot.domains.Message;
-import com.example.oichatbot.managers.ExceptionManager;
-import com.example.oichatbot.managers.PersonalityManager;
+import com.example.oichatbot.managers.SessionManager;
+import com.example.oichatbot.managers.SpeechCache;
 import com.google.api.gax.paging.Page;
-import com.google.cloud.dialogflow.v2.*;
 import com.google.cloud.storage.Bucket;
 import com.google.cloud.storage.Storage;
 import com.google.cloud.storage.StorageOptions;
-import org.springframework.web.bind.annotation.*;
-
-import org.springframework.core.io.UrlResource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
 import java.io.*;
-import java.net.MalformedURLException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.web.context.request.WebRequest;
 
 
-import java.io.File;
-import java.util.List;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
-@CrossOrigin(origins = "*", allowedHeaders = "*")
+@CrossOrigin(origins = "*", allowedHeaders = "*", exposedHeaders = TestResource.SESSION_HEADER)
 @RestController
 @RequestMapping("/test")
 public class TestResource {
+    static final String SESSION_HEADER = "X-Session-Id";     // Preferred way for clients to identify their conversation.
+    static final String SESSION_COOKIE = "chatbot_session";  // Fallback for clients that don't set the header.
+
+    private static final int MAX_INTENT_PAGE = 500;
 
     private Integer incrementTest = 0;
 
@@ -66,86 +73,91 @@ public class TestResource {
 
     /**
      * Determine the one best reply for any given singular chat message.
+     * The conversation is identified by the X-Session-Id header (or the session cookie). A new one is started if neither is present.
+     * Handled asynchronously: the servlet thread is released while DialogFlow and text-to-speech are working.
      * @param message Message to respond to.
-     * @return Message object containing the text response.
-     * @throws Exception
+     * @param sessionHeader Session ID sent as header, may be null.
+     * @param sessionCookie Session ID sent as cookie, may be null.
+     * @param response Used to hand the (new) session ID back to the client.
+     * @return Future with the Message object containing the text response.
      */
     @PostMapping(path = "/chat/post", consumes = "application/json", produces = "application/json")
-    public Message chatSimple(@RequestBody Message message) throws Exception {
-        // First check whether we're (already) in DEBUG, which means the back-end directly handles this request without DialogFlow.
-        if (DebugManager.getInstance().inDebug()) {
-            if (DebugManager.getInstance().wantsToExitDebug(message.getContent())) {
-                // Exit DEBUG mode.
-                String content = DebugManager.getInstance().exitDebug();
-                Message output = new Message(content, true, PersonalityManager.getInstance().determineSuggestedColor());
-                System.out.println("Exiting DEBUG mode.");
-                return output;
-            }
-            else {
-                // Detect DEBUG intent and do stuff.
-                String content = DebugManager.getInstance().parseCommand(message.getContent());
-                Message output = new Message(content, true, DebugManager.getInstance().getDebugColor());
-                System.out.println("Attempted to recognize as debug command: " + message.getContent());
-                System.out.println("Debug mode output: " + content);
-                return output;
-            }
-        }
-        else if (DebugManager.getInstance().wantsToEnterDebug(message.getContent())) {
-            // Enter DEBUG mode.
-            String content = DebugManager.getInstance().enterDebug();
-            Message output = new Message(content, true, DebugManager.getInstance().getDebugColor());
-            System.out.println("Entering DEBUG mode.");
-            return output;
-        }
-        else {
-            // User is not currently in DEBUG and doesn't want to be, so we send their message to DialogFlow.
-            // UNLESS we determine it's time for an extreme response/exception.
-            if (ExceptionManager.getInstance().shouldRespondExtreme()) {
-                return ExceptionManager.getInstance().chatExtreme(message.getContent());
-            }
-            else {
-                return DialogFlowBridge.getInstance().chat(message.getContent(), "en-US");
-            }
-        }
+    public CompletableFuture<Message> chatSimple(@RequestBody Message message,
+                                                 @RequestHeader(value = SESSION_HEADER, required = false) String sessionHeader,
+                                                 @CookieValue(value = SESSION_COOKIE, required = false) String sessionCookie,
+                                                 HttpServletResponse response) {
+        ConversationState state = resolveSession(sessionHeader, sessionCookie, response);
+        return ChatManager.getInstance().replyAsync(state, message.getContent());
     }
 
     /**
-     * Display a list of possible intents recognized by the DialogFlow API.
-     * @return List of recognized intents and possible responses.
-     * @throws Exception
+     * Find the conversation this request belongs to. The header wins over the cookie; invalid IDs are ignored.
+     * The (possibly new) session ID is always sent back as both header and cookie.
+     * @param sessionHeader Session ID sent as header, may be null.
+     * @param sessionCookie Session ID sent as cookie, may be null.
+     * @param response Response to attach the session ID to.
+     * @return The conversation state for this session.
      */
-    @RequestMapping("/list")
-    public String listIntents() throws Exception {
-        return listIntents("openinno").toString();
+    static ConversationState resolveSession(String sessionHeader, String sessionCookie, HttpServletResponse response) {
+        SessionManager sessions = SessionManager.getInstance();
+        String sessionId;
+        if (sessions.isValidSessionId(sessionHeader))
+            sessionId = sessionHeader;
+        else if (sessions.isValidSessionId(sessionCookie))
+            sessionId = sessionCookie;
+        else
+            sessionId = sessions.newSessionId();
+
+        response.setHeader(SESSION_HEADER, sessionId);
+        if (!sessionId.equals(sessionCookie)) {
+            Cookie cookie = new Cookie(SESSION_COOKIE, sessionId);
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            response.addCookie(cookie);
+        }
+        return sessions.getOrCreate(sessionId);
     }
 
-
     /**
-     * Retrieve a list of all possible recognized intents (commands) via the DialogFlow API.
-     * @param projectId Project ID, default is "openinno".
-     * @return List of possible intents the API can respond to.
-     * @throws Exception
+     * Display a page of the intents recognized by the DialogFlow API.
+     * Served from the intent catalogue, which is refreshed in the background, so polling this doesn't reach DialogFlow.
+     * Supports If-None-Match: clients that send the ETag of their last response get a 304 until the agent changes.
+     * @param offset Index of the first intent.
+     * @param limit Max amount of intents, at most MAX_INTENT_PAGE.
+     * @param request Used to check the If-None-Match header.
+     * @return Page of intents, 304 if unchanged, 503 if the catalogue hasn't been loaded yet,
+     * or 404 with status "disabled" if there is no agent to list (local intent backend).
      */
-    private static List<Intent> listIntents(String projectId) throws Exception {
-        return DialogFlowBridge.getInstance().listIntents(projectId);
+    @GetMapping(path = "/list", produces = "application/json")
+    public ResponseEntity<?> listIntents(@RequestParam(value = "offset", defaultValue = "0") int offset,
+                                                  @RequestParam(value = "limit", defaultValue = "50") int limit,
+                                                  WebRequest request) {
+        IntentCatalogue catalogue = IntentCatalogue.getInstance();
+        if (!catalogue.isEnabled())
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Collections.singletonMap("status", "disabled"));
+
+        offset = Math.max(0, offset);
+        limit = Math.max(1, Math.min(limit, MAX_INTENT_PAGE));
+
+        IntentPage page = catalogue.getPage(offset, limit);
+        if (page == null)
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "10").build();
+
+        // Every page has its own ETag, they all change together when the agent does.
+        String etag = "\"" + page.getVersion() + "-" + offset + "-" + limit + "\"";
+        if (request.checkNotModified(etag))
+            return null;        // Spring already set the 304.
+
+        return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(page);
     }
 
     /**
-     * Test method to download mp3 file.
-     * @return
+     * Show how well the text-to-speech cache is doing.
+     * @return Hit/miss counters and memory usage of the cache.
      */
-    @RequestMapping("/luuk")
-    public ResponseEntity<Resource> serveFile (){
-
-        File file = new File("output.mp3");
-        Resource resource = null;
-        try {
-            resource = new UrlResource(file.toURI());
-        } catch (MalformedURLException e) {
-            e.printStackTrace();
-        }
-        return ResponseEntity.ok().header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + resource.getFilename() + "\"").body(resource);
-
+    @GetMapping("/speech/cache")
+    public Map<String, Long> speechCacheStats() {
+        return SpeechCache.getInstance().getStats();
     }
 
 }
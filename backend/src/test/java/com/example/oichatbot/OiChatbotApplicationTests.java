@@ -3,7 +3,8 @@ package com.example.oichatbot;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+@SpringBootTest(properties = {"chatbot.intents.backend=local", "chatbot.tts.enabled=false",
+		"chatbot.state.enabled=false"})
 class OiChatbotApplicationTests {
 
 	@Test
@@ -0,0 +1,150 @@
+package com.example.oichatbot.domains;
+
+import com.example.oichatbot.managers.PersonalityManager;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The tracked leader always matches a full scan (furthest from zero, lowest ID and so Default on ties),
+ * also when many threads update the same values with compare-and-set.
+ */
+class TraitVectorTest {
+    private static final int DEFAULT = PersonalityManager.DEFAULT;
+    private static final int DESIRE = PersonalityManager.DESIRE;
+    private static final int CURIOSITY = PersonalityManager.CURIOSITY;
+
+    @Test
+    void leaderFollowsEveryChange() {
+        TraitValues values = new TraitValues(TraitRegistry.PERSONALITY, 0.0f, 1.0f);
+        assertLeader("Default", values.update(editor -> editor.set(DEFAULT, 0.2f)));
+        assertLeader("Desire", values.update(editor -> editor.set(DESIRE, 0.5f)));
+
+        // The leader weakening makes the runner-up lead.
+        assertLeader("Default", values.update(editor -> editor.set(DESIRE, 0.1f)));
+        assertLeader("Curiosity", values.update(editor -> {
+            editor.set(CURIOSITY, 0.9f);
+            editor.set(DEFAULT, 0.0f);
+        }));
+        assertLeader("Desire", values.update(editor -> {
+            editor.set(CURIOSITY, 0.0f);
+            editor.set(DESIRE, 0.3f);
+        }));
+    }
+
+    @Test
+    void defaultWinsTies() {
+        assertEquals(0, DEFAULT);
+        TraitValues values = new TraitValues(TraitRegistry.PERSONALITY, 0.0f, 1.0f);
+        assertLeader("Default", values.snapshot());     // All zero.
+
+        values.update(editor -> editor.set(CURIOSITY, 0.7f));
+        assertLeader("Desire", values.update(editor -> editor.set(DESIRE, 0.7f)));     // Lower ID than Curiosity.
+        assertLeader("Default", values.update(editor -> editor.set(DEFAULT, 0.7f)));
+
+        // Ties left behind when the leader weakens are broken the same way.
+        assertLeader("Desire", values.update(editor -> editor.set(DEFAULT, 0.1f)));
+        assertLeader("Default", values.update(editor -> {
+            editor.set(DESIRE, 0.0f);
+            editor.set(CURIOSITY, 0.0f);
+            editor.set(DEFAULT, 0.0f);
+        }));
+    }
+
+    @Test
+    void strongestIsFurthestFromZero() {
+        TraitVector.Editor editor = TraitVector.empty(TraitRegistry.PERSONALITY).edit(-1.0f, 1.0f);
+        editor.set(CURIOSITY, 0.7f);
+        editor.set(DESIRE, -0.8f);
+        assertLeader("Desire", editor.build());
+    }
+
+    @Test
+    void concurrentUpdatesKeepTheLeaderRight() throws Exception {
+        TraitValues values = new TraitValues(TraitRegistry.PERSONALITY, 0.0f, 1.0f);
+        int threads = 8;
+        int updates = 5000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < updates; i++) {
+                        // Coarse values, so ties happen often. Changes may be rerun when another thread wins the race.
+                        int id = random.nextInt(3);
+                        float value = random.nextInt(5) / 4.0f;
+                        int other = random.nextInt(3);
+                        float otherValue = random.nextInt(5) / 4.0f;
+                        TraitVector after = values.update(editor -> {
+                            editor.set(id, value);
+                            editor.set(other, otherValue);
+                        });
+                        assertEquals(scanLeader(after), after.getLeader());
+                        TraitVector seen = values.snapshot();
+                        assertEquals(scanLeader(seen), seen.getLeader());
+                    }
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(scanLeader(values.snapshot()), values.snapshot().getLeader());
+    }
+
+    @Test
+    void concurrentAddsAreNeverLost() throws Exception {
+        TraitValues values = new TraitValues(TraitRegistry.PERSONALITY, 0.0f, 10000.0f);
+        int threads = 8;
+        int adds = 1000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int id = t % 2 == 0 ? DESIRE : CURIOSITY;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < adds; i++)
+                        values.add(id, 1.0f);
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        TraitVector result = values.snapshot();
+        assertEquals(threads / 2 * adds, result.get(DESIRE));
+        assertEquals(threads / 2 * adds, result.get(CURIOSITY));
+        assertLeader("Desire", result);     // Tied with Curiosity, lower ID.
+    }
+
+    private static void assertLeader(String expected, TraitVector values) {
+        assertEquals(expected, values.getLeaderName());
+        assertEquals(scanLeader(values), values.getLeader());
+        assertTrue(values.getLeader() < values.getRegistry().size());
+    }
+
+    /**
+     * The leader the slow way: furthest from zero, lowest ID on ties.
+     */
+    private static int scanLeader(TraitVector values) {
+        int leader = 0;
+        for (int id = 1; id < values.getRegistry().size(); id++) {
+            if (Math.abs(values.get(id)) > Math.abs(values.get(leader)))
+                leader = id;
+        }
+        return leader;
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.oichatbot.managers;
+
+import com.example.oichatbot.domains.EmotionModifier;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A compiled, memory-mapped lexicon finds the same modifiers in the same order as a PhraseIndex built from the same list.
+ */
+class BinaryLexiconTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void singleWords() throws Exception {
+        List<EmotionModifier> modifiers = Arrays.asList(
+                modifier("Patience", "hello", 0.1f),
+                modifier("Anger", "stupid", 0.3f),
+                modifier("Happiness", "Thanks", 0.2f));
+        assertSameMatches(modifiers, "Hello there", "you STUPID bot, thanks", "hello hello", "nothing to see", "", "   ");
+    }
+
+    @Test
+    void phrasesAndOverlaps() throws Exception {
+        List<EmotionModifier> modifiers = Arrays.asList(
+                modifier("Anger", "shut up", 0.4f),
+                modifier("Anger", "shut up now", 0.6f),
+                modifier("Patience", "up now", -0.2f),
+                modifier("Patience", "now", -0.1f),
+                modifier("Happiness", "thank you very much", 0.5f),
+                modifier("Happiness", "very much", 0.1f));
+        assertSameMatches(modifiers, "shut up now", "please shut up", "shut shut up now now", "thank you very much",
+                "thank you, very much", "up now shut up", "Shut   Up   NOW");
+    }
+
+    @Test
+    void duplicateTerms() throws Exception {
+        // The same word for several emotions, and the same phrase written differently.
+        List<EmotionModifier> modifiers = Arrays.asList(
+                modifier("Patience", "hello", 0.1f),
+                modifier("Happiness", "hello", 0.05f),
+                modifier("Anger", " Shut  Up ", 0.4f),
+                modifier("Patience", "shut up", -0.3f),
+                modifier("Patience", "hello", 0.2f));
+        assertSameMatches(modifiers, "hello", "HELLO, shut up", "shut up hello shut up");
+
+        BinaryLexicon lexicon = compile(modifiers);
+        assertEquals(5, lexicon.size());
+        assertEquals(2, lexicon.countTerms());
+    }
+
+    @Test
+    void emptyLexicon() throws Exception {
+        BinaryLexicon lexicon = compile(Collections.emptyList());
+        assertEquals(0, lexicon.size());
+        assertEquals(0, lexicon.countTerms());
+        assertTrue(matches(lexicon, "hello shut up").isEmpty());
+
+        // Blank words are skipped, like PhraseIndex does.
+        assertSameMatches(Collections.singletonList(modifier("Anger", "  ", 0.5f)), "hello", " ");
+    }
+
+    @Test
+    void convertsBundledModifiers() throws Exception {
+        Path json = Paths.get("modifiers.json");
+        Path file = directory.resolve("modifiers.lex");
+        LexiconConverter.convert(json, file);
+
+        List<EmotionModifier> modifiers = LexiconConverter.readJson(json);
+        PhraseIndex index = PhraseIndex.build(modifiers);
+        BinaryLexicon lexicon = BinaryLexicon.open(file);
+        assertEquals(index.size(), lexicon.size());
+
+        // Every word and phrase on its own, and all of them in one long sentence.
+        StringBuilder everything = new StringBuilder();
+        for (EmotionModifier modifier : modifiers) {
+            String input = "well " + modifier.getRelevantWord() + " then";
+            assertEquals(matches(index, input), matches(lexicon, input), input);
+            everything.append(modifier.getRelevantWord()).append(' ');
+        }
+        assertFalse(matches(lexicon, everything.toString()).isEmpty());
+        assertEquals(matches(index, everything.toString()), matches(lexicon, everything.toString()));
+    }
+
+    private void assertSameMatches(List<EmotionModifier> modifiers, String... inputs) throws Exception {
+        PhraseIndex index = PhraseIndex.build(modifiers);
+        BinaryLexicon lexicon = compile(modifiers);
+        assertEquals(index.size(), lexicon.size());
+        for (String input : inputs)
+            assertEquals(matches(index, input), matches(lexicon, input), input);
+    }
+
+    private BinaryLexicon compile(List<EmotionModifier> modifiers) throws Exception {
+        Path file = directory.resolve("lexicon-" + modifiers.hashCode() + ".lex");
+        BinaryLexicon.write(modifiers, file);
+        return BinaryLexicon.open(file);
+    }
+
+    /**
+     * Matches as "emotion word modification", with the word normalized the way both lexicons match it.
+     */
+    private static List<String> matches(ModifierLexicon lexicon, String input) {
+        List<String> found = new ArrayList<>();
+        lexicon.match(input, modifier -> found.add(modifier.getRelevantEmotion() + " "
+                + String.join(" ", modifier.getRelevantWord().toLowerCase().trim().split("\\s+")) + " " + modifier.getModification()));
+        return found;
+    }
+
+    private static EmotionModifier modifier(String emotion, String word, float modification) {
+        return new EmotionModifier(emotion, word, modification);
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.oichatbot.managers;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Chat metrics end up in the registry they're bound to, and only there.
+ */
+class ChatMetricsTest {
+
+    @Test
+    void recordsInTheBoundRegistryOnly() {
+        SimpleMeterRegistry first = new SimpleMeterRegistry();
+        ChatMetrics.getInstance().bindTo(first);
+        assertEquals("ok", ChatMetrics.time(ChatMetrics.Stage.PARSE, () -> "ok"));
+        ChatMetrics.recordReply(ChatMetrics.Route.DEBUG, 1000);
+        assertEquals(1, first.get("chatbot.stage").tag("stage", "parse").timer().count());
+        assertEquals(1, first.get("chatbot.reply").tag("route", "debug").timer().count());
+
+        // A new application context binds again, the old registry no longer receives anything.
+        SimpleMeterRegistry second = new SimpleMeterRegistry();
+        ChatMetrics.getInstance().bindTo(second);
+        ChatMetrics.time(ChatMetrics.Stage.PARSE, () -> "ok");
+        assertEquals(1, first.get("chatbot.stage").tag("stage", "parse").timer().count());
+        assertEquals(1, second.get("chatbot.stage").tag("stage", "parse").timer().count());
+    }
+
+    @Test
+    void countsFailuresOfAsyncStages() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ChatMetrics.getInstance().bindTo(registry);
+
+        CompletableFuture<String> failing = new CompletableFuture<>();
+        ChatMetrics.timeAsync(ChatMetrics.Stage.DETECT_INTENT, true, failing);
+        failing.completeExceptionally(new IllegalStateException("upstream down"));
+        CompletableFuture<String> notCounted = new CompletableFuture<>();
+        ChatMetrics.timeAsync(ChatMetrics.Stage.SAY, false, notCounted);
+        notCounted.completeExceptionally(new IllegalStateException("no audio"));
+        ChatMetrics.failed(ChatMetrics.Stage.PARSE);     // No failure counter, ignored.
+
+        assertEquals(1, registry.get("chatbot.stage").tag("stage", "detect-intent").timer().count());
+        assertEquals(1.0, registry.get("chatbot.stage.failures").tag("stage", "detect-intent").counter().count());
+        assertEquals(0.0, registry.get("chatbot.stage.failures").tag("stage", "say").counter().count());
+        assertEquals(1, registry.get("chatbot.stage").tag("stage", "say").timer().count());
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.oichatbot.managers;
+
+import com.example.oichatbot.domains.ConversationState;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Debug commands as recognized by the token trie: entry/exit phrases, setting one or several traits, dump and reset.
+ */
+class DebugManagerTest {
+    private static final String NO_COMMAND = "(DEBUG): Warning! No known command recognized.";
+
+    private final DebugManager debug = DebugManager.getInstance();
+    private ConversationState state;
+
+    @BeforeEach
+    void newConversation() {
+        state = new ConversationState("debug-test");
+        PersonalityManager.getInstance().initState(state);
+    }
+
+    @Test
+    void entryAndExitPhrases() {
+        assertTrue(debug.wantsToEnterDebug("Enter debug mode!"));
+        assertTrue(debug.wantsToEnterDebug("analysis"));
+        assertFalse(debug.wantsToEnterDebug("debug this please"));
+        assertFalse(debug.wantsToEnterDebug("exit debug"));
+
+        assertTrue(debug.wantsToExitDebug("Go back to normal."));
+        assertTrue(debug.wantsToExitDebug("EXIT"));
+        assertFalse(debug.wantsToExitDebug("exit debug mode now"));
+        assertFalse(debug.wantsToExitDebug(""));
+    }
+
+    @Test
+    void setOneTrait() {
+        assertEquals("(DEBUG): Personality trait altered: Curiosity has been set to 0.5.", debug.parseCommand(state, "set curiosity to 0.5."));
+        assertEquals(0.5f, state.getPersonality().get(PersonalityManager.CURIOSITY));
+
+        // Clamped to the range of personality traits.
+        assertEquals("(DEBUG): Personality trait altered: Curiosity has been set to 1.0.", debug.parseCommand(state, "change Curiosity 7"));
+        assertEquals("(DEBUG): Emotion altered: Patience has been set to -1.0.", debug.parseCommand(state, "set patience=-3"));
+    }
+
+    @Test
+    void setSeveralTraits() {
+        String response = debug.parseCommand(state, "set desire 0.3, curiosity 0.9; patience=-0.5");
+        assertEquals("(DEBUG): Values altered: Desire = 0.3, Curiosity = 0.9, Patience = -0.5.", response);
+        assertEquals(0.3f, state.getPersonality().get(PersonalityManager.DESIRE));
+        assertEquals(0.9f, state.getPersonality().get(PersonalityManager.CURIOSITY));
+        assertEquals(-0.5f, state.getEmotions().get(PersonalityManager.PATIENCE));
+        assertEquals("Curiosity", state.getPersonality().getLeaderName());
+
+        // A number before its trait counts too, as long as no trait is waiting for one.
+        assertEquals("(DEBUG): Values altered: Desire = 0.4, Curiosity = 0.1.", debug.parseCommand(state, "set 0.4 desire curiosity 0.1"));
+    }
+
+    @Test
+    void setWithoutTraitOrValue() {
+        assertTrue(debug.parseCommand(state, "set nothing to 0.5").contains("no matching trait or emotion was found"));
+        assertTrue(debug.parseCommand(state, "set desire high").contains("\"Desire\" was found but no valid float value"));
+        assertEquals(1.0f, state.getPersonality().get(PersonalityManager.DESIRE));
+    }
+
+    @Test
+    void checkValue() {
+        assertEquals("(DEBUG): Personality trait \"Desire\" is currently set to: 1.0.", debug.parseCommand(state, "What's desire?"));
+        assertEquals("(DEBUG): Emotion \"Patience\" is currently set to: 1.0.", debug.parseCommand(state, "how is my patience"));
+    }
+
+    @Test
+    void dump() {
+        debug.parseCommand(state, "set curiosity 1, desire 0.5");
+        for (String command : new String[] {"dump", "state", "Show state.", "status"}) {
+            String response = debug.parseCommand(state, command);
+            assertTrue(response.startsWith("(DEBUG): State: "), command);
+
+            JsonObject dump = new Gson().fromJson(response.substring("(DEBUG): State: ".length()), JsonObject.class);
+            assertEquals("debug-test", dump.get("sessionId").getAsString());
+            assertEquals("Curiosity", dump.get("leadingPersonality").getAsString());
+            assertEquals(0.5f, dump.getAsJsonObject("personality").get("Desire").getAsFloat());
+            assertEquals(1.0f, dump.getAsJsonObject("emotions").get("Patience").getAsFloat());
+        }
+    }
+
+    @Test
+    void reset() {
+        ConversationState fresh = new ConversationState("fresh");
+        PersonalityManager.getInstance().initState(fresh);
+        debug.parseCommand(state, "set curiosity 1, desire 0, patience -1");
+        debug.parseCommand(state, "mute");
+        state.setInDebug(true);
+
+        assertTrue(debug.parseCommand(state, "reset").contains("reset to their defaults"));
+        assertEquals(fresh.getPersonality().toMap(), state.getPersonality().toMap());
+        assertEquals(fresh.getEmotions().toMap(), state.getEmotions().toMap());
+        assertEquals(fresh.getPersonality().getLeaderName(), state.getPersonality().getLeaderName());
+        assertTrue(state.isAudioEnabled());
+        assertTrue(state.isInDebug());
+    }
+
+    @Test
+    void oneWordCommands() {
+        // Used to throw StringIndexOutOfBoundsException.
+        assertEquals("(DEBUG): Audio output has been disabled.", debug.parseCommand(state, "mute"));
+        assertEquals("(DEBUG): Audio output has been disabled.", debug.parseCommand(state, "Mute!"));
+        assertFalse(state.isAudioEnabled());
+        assertEquals("(DEBUG): Audio output has been enabled.", debug.parseCommand(state, "unmute"));
+        assertEquals("(DEBUG): Audio output has been disabled.", debug.parseCommand(state, "toggle"));
+        assertEquals("(DEBUG): Audio output has been enabled.", debug.parseCommand(state, "play"));
+
+        for (String command : new String[] {"set", "get", "what", "x", "", "   ", ".", "debug", "exit"})
+            assertDoesNotThrow(() -> debug.parseCommand(state, command), command);
+        assertEquals(NO_COMMAND, debug.parseCommand(state, ""));
+        assertEquals(NO_COMMAND, debug.parseCommand(state, "debug"));
+        assertEquals(NO_COMMAND, debug.parseCommand(state, "hello there"));
+    }
+}
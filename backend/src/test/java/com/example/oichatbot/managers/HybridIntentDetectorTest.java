@@ -0,0 +1,119 @@
+package com.example.oichatbot.managers;
+
+import com.example.oichatbot.domains.AgentIntent;
+import com.example.oichatbot.domains.IntentResponse;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Local matching against the bundled DialogFlow export: which intents may be answered locally, contexts and fallbacks.
+ */
+class HybridIntentDetectorTest {
+    private static List<AgentIntent> intents;
+    private static LocalIntentMatcher matcher;
+
+    @BeforeAll
+    static void readExport() throws Exception {
+        intents = DialogFlowExportReader.read(Paths.get("..", "dialogflow", "DialogFlow export.zip"));
+        matcher = new LocalIntentMatcher(intents);
+    }
+
+    @Test
+    void readsParameters() {
+        assertTrue(intent("UserIntroduction").getHasParameters());
+        assertTrue(intent("(DESIRE) UserIntroduction").getHasParameters());
+        assertTrue(intent("ReserveRoom").getHasParameters());
+        assertTrue(intent("(DESIRE) ReserveRoom").getHasParameters());
+        assertTrue(intent("RepeatSpecificPhrase").getHasParameters());
+        assertFalse(intent("UserIntroduction").isAnswerableLocally());
+
+        // "$2.50" in a joke is not a parameter, the joke is only left to DialogFlow for its follow-up context.
+        assertFalse(intent("TellJoke").getHasParameters());
+        assertTrue(intent("TellJoke").getSetsOutputContexts());
+        assertTrue(intent("Default Fallback Intent").isAnswerableLocally());
+    }
+
+    @Test
+    void parameterizedIntentsGoToDialogFlow() {
+        LocalIntentMatcher.Match match = matcher.match("I am Steve.", "default");
+        assertEquals("UserIntroduction", match.getIntent().getName());
+        assertTrue(match.getConfidence() > 0.9f);
+
+        AtomicInteger upstream = new AtomicInteger();
+        HybridIntentDetector detector = new HybridIntentDetector(matcher,
+                stub(upstream, CompletableFuture.completedFuture(new IntentResponse("Hello Steve.", "UserIntroduction", 1.0f, false))),
+                0.5f, "en", 1000);
+        assertEquals("Hello Steve.", detector.detectIntentAsync("s1", "I am Steve.", "en-US", "default").join().getFulfillmentText());
+        assertEquals(1, upstream.get());
+        assertEquals(0, detector.getLocalReplies());
+    }
+
+    @Test
+    void rescueNeverFillsInPlaceholders() {
+        CompletableFuture<IntentResponse> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException("DialogFlow timed out"));
+        HybridIntentDetector detector = new HybridIntentDetector(matcher, stub(new AtomicInteger(), failed), 0.5f, "en", 1000);
+
+        IntentResponse response = detector.detectIntentAsync("s1", "I am Steve.", "en-US", "default").join();
+        assertEquals("Default Fallback Intent", response.getIntentName());
+        assertFalse(response.getFulfillmentText().contains("$"));
+        assertEquals(1, detector.getRescuedReplies());
+
+        response = detector.detectIntentAsync("s2", "I am Steve.", "en-US", "desire").join();
+        assertEquals("(DESIRE) Default Fallback Intent", response.getIntentName());
+    }
+
+    @Test
+    void contextRestrictedIntents() {
+        LocalIntentMatcher.Match match = matcher.match("I am Steve.", "desire");
+        assertEquals("(DESIRE) UserIntroduction", match.getIntent().getName());
+
+        // Outside the desire context its intents are never matched.
+        for (AgentIntent intent : intents) {
+            if (!intent.getInputContexts().isEmpty()) {
+                LocalIntentMatcher.Match other = matcher.match(intent.getTrainingPhrases().isEmpty() ? intent.getName()
+                        : intent.getTrainingPhrases().get(0), "default");
+                assertTrue(other == null || other.getIntent().getInputContexts().isEmpty(), intent.getName());
+            }
+        }
+    }
+
+    @Test
+    void fallbackPerContext() {
+        assertEquals("Default Fallback Intent", matcher.fallbackFor("default").getName());
+        assertEquals("(DESIRE) Default Fallback Intent", matcher.fallbackFor("desire").getName());
+        assertNull(matcher.match("qwxz vbnm", "default"));
+    }
+
+    private static AgentIntent intent(String name) {
+        for (AgentIntent intent : intents) {
+            if (intent.getName().equals(name))
+                return intent;
+        }
+        throw new AssertionError("Not in the export: " + name);
+    }
+
+    private static IntentDetector stub(AtomicInteger calls, CompletableFuture<IntentResponse> reply) {
+        return new IntentDetector() {
+            @Override
+            public CompletableFuture<IntentResponse> detectIntentAsync(String sessionId, String input, String languageCode, String context) {
+                calls.incrementAndGet();
+                return reply;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
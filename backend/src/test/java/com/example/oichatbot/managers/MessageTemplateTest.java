@@ -0,0 +1,101 @@
+package com.example.oichatbot.managers;
+
+import com.example.oichatbot.domains.PersonalitySnapshot;
+import com.example.oichatbot.domains.TraitRegistry;
+import com.example.oichatbot.domains.TraitValues;
+import com.example.oichatbot.domains.TraitVector;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Emotion blocks in fulfillment texts, in particular the malformed ones that used to throw or loop.
+ */
+class MessageTemplateTest {
+
+    /**
+     * Render a raw text with Patience at the given value.
+     */
+    private static String render(String raw, float patience) {
+        TraitValues emotions = new TraitValues(TraitRegistry.EMOTIONS, -1.0f, 1.0f);
+        emotions.add(PersonalityManager.PATIENCE, patience);
+        TraitVector personality = new TraitValues(TraitRegistry.PERSONALITY, 0.0f, 1.0f).snapshot();
+        PersonalitySnapshot snapshot = new PersonalitySnapshot(personality, emotions.snapshot(), null, null, null);
+        return MessageTemplate.compile(raw).render(snapshot);
+    }
+
+    @Test
+    void plainTextIsUnchanged() {
+        assertEquals("Did you know honey never spoils?", render("Did you know honey never spoils?", 0.0f));
+        assertEquals("", render("", 0.0f));
+    }
+
+    @Test
+    void blockIsShownOnlyWhenItsConditionHolds() {
+        String raw = "[Patience;<0.0;Ugh, fine. ]Here you go.";
+        assertEquals("Ugh, fine. Here you go.", render(raw, -0.5f));
+        assertEquals("Here you go.", render(raw, 0.5f));
+    }
+
+    @Test
+    void unclosedBracketIsShownAsText() {
+        assertEquals("Hello [Patience;>0.5;there", render("Hello [Patience;>0.5;there", 1.0f));
+        // A valid block before the unclosed one is still rendered.
+        assertEquals("Hi! [oops", render("[Patience;>0.5;Hi!] [oops", 1.0f));
+    }
+
+    @Test
+    void strayClosingBracketIsShownAsText() {
+        assertEquals("Hi] there friend", render("Hi] there [Patience;>0.5;friend]", 1.0f));
+        assertEquals("]", render("]", 1.0f));
+    }
+
+    @Test
+    void blockWithoutThreeSegmentsIsHidden() {
+        assertEquals("AB", render("A[Patience;>0.5]B", 1.0f));
+        assertEquals("AB", render("A[Patience]B", 1.0f));
+        assertEquals("AB", render("A[]B", 1.0f));
+    }
+
+    @Test
+    void blockWithInvalidConditionIsHidden() {
+        assertEquals("AB", render("A[Patience;=>0.5;x]B", 1.0f));
+        assertEquals("AB", render("A[Patience;!=0.5;x]B", 1.0f));
+        assertEquals("AB", render("A[Patience;>;x]B", 1.0f));
+        assertEquals("AB", render("A[Patience;0.5;x]B", 1.0f));
+    }
+
+    @Test
+    void everyOperatorIsSupported() {
+        assertEquals("x", render("[Patience;==0.5;x]", 0.5f));
+        assertEquals("x", render("[Patience;<=0.5;x]", 0.5f));
+        assertEquals("x", render("[Patience;>=0.5;x]", 0.5f));
+        assertEquals("", render("[Patience;<0.5;x]", 0.5f));
+        assertEquals("", render("[Patience;>0.5;x]", 0.5f));
+        assertEquals("x", render("[Patience;> -0.25;x]", 0.0f));
+    }
+
+    @Test
+    void nestedBlocksAreEvaluatedInsideTheirParent() {
+        String raw = "[Patience;>0.5;Sure thing! [Patience;>0.9;Anything for you. ]]It's sunny.";
+        assertEquals("Sure thing! Anything for you. It's sunny.", render(raw, 1.0f));
+        assertEquals("Sure thing! It's sunny.", render(raw, 0.7f));
+        assertEquals("It's sunny.", render(raw, 0.0f));
+        // A nested block that would hold on its own is hidden together with its parent.
+        assertEquals("", render("[Patience;<0.0;[Patience;>0.5;never]]", 1.0f));
+        // Only the first two separators split a block, the rest (also inside a nested block) is text.
+        assertEquals("a-c;-d", render("[Patience;>0;a[Patience;>0;-c;]-d]", 1.0f));
+    }
+
+    @Test
+    void unknownEmotionNeverMatches() {
+        assertEquals("AB", render("A[Grumpiness;>-2;x]B", 1.0f));
+        assertEquals("AB", render("A[Grumpiness;<2;x]B", -1.0f));
+    }
+
+    @Test
+    void blocksAreCounted() {
+        assertEquals(0, MessageTemplate.compile("no blocks] here [").getBlockCount());
+        assertEquals(2, MessageTemplate.compile("[Patience;>0;a[Patience;>0;b]]").getBlockCount());
+    }
+}
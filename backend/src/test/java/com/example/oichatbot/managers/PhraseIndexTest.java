@@ -0,0 +1,72 @@
+package com.example.oichatbot.managers;
+
+import com.example.oichatbot.domains.EmotionModifier;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Single words and multi-word phrases are found case-insensitively, including phrases that overlap or contain each other.
+ */
+class PhraseIndexTest {
+    private static final PhraseIndex INDEX = PhraseIndex.build(Arrays.asList(
+            modifier("Patience", "hello", 0.1f),
+            modifier("Anger", "shut up", 0.4f),
+            modifier("Anger", "shut up now", 0.6f),
+            modifier("Patience", "up now", -0.2f),
+            modifier("Patience", "now", -0.1f),
+            modifier("Happiness", "thank you very much", 0.5f),
+            modifier("Happiness", "very much", 0.1f),
+            modifier("Patience", "Shut Up", -0.3f)));
+
+    @Test
+    void singleWords() {
+        assertEquals(Arrays.asList("Patience hello"), matches("HELLO there"));
+        assertEquals(Arrays.asList("Patience hello", "Patience hello"), matches("hello  hello"));
+        assertEquals(Collections.emptyList(), matches("hellothere"));
+    }
+
+    @Test
+    void multiWordPhrases() {
+        assertEquals(Arrays.asList("Anger shut up", "Patience shut up"), matches("please Shut   UP"));
+        assertEquals(Arrays.asList("Happiness thank you very much", "Happiness very much"), matches("thank you very much"));
+
+        // Only consecutive words make a phrase.
+        assertEquals(Collections.emptyList(), matches("shut the door up"));
+        assertEquals(Collections.emptyList(), matches("shutup"));
+        assertEquals(Arrays.asList("Happiness very much"), matches("thank you so very much"));
+    }
+
+    @Test
+    void overlappingPhrases() {
+        // Single words come first, then the longest phrase ending at that word, then the phrases it contains.
+        assertEquals(Arrays.asList("Anger shut up", "Patience shut up", "Patience now", "Anger shut up now", "Patience up now"),
+                matches("shut up now"));
+
+        // A phrase that starts inside a failed one: "shut shut up" still ends in "shut up".
+        assertEquals(Arrays.asList("Anger shut up", "Patience shut up"), matches("shut shut up"));
+        assertEquals(Arrays.asList("Patience now", "Patience up now", "Anger shut up", "Patience shut up"),
+                matches("up now shut up"));
+    }
+
+    @Test
+    void sizeSkipsBlankEntries() {
+        assertEquals(8, INDEX.size());
+        assertEquals(0, PhraseIndex.build(Collections.singletonList(modifier("Anger", "   ", 0.5f))).size());
+    }
+
+    private static List<String> matches(String input) {
+        List<String> found = new ArrayList<>();
+        INDEX.match(input, modifier -> found.add(modifier.getRelevantEmotion() + " " + modifier.getRelevantWord().toLowerCase()));
+        return found;
+    }
+
+    private static EmotionModifier modifier(String emotion, String word, float modification) {
+        return new EmotionModifier(emotion, word, modification);
+    }
+}
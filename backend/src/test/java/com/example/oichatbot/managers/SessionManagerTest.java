@@ -0,0 +1,104 @@
+package com.example.oichatbot.managers;
+
+import com.example.oichatbot.domains.ConversationState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Conversations are evicted least recently used first and after their idle time, within a limit spread over the stripes.
+ */
+class SessionManagerTest {
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    private final SessionManager sessions = SessionManager.getInstance();
+
+    @AfterEach
+    void reset() {
+        sessions.setLoader(null);
+        sessions.configure(50000, 30 * 60 * 1000L, 64);
+    }
+
+    @Test
+    void leastRecentlyUsedIsEvicted() {
+        sessions.configure(2, HOUR, 1);
+        ConversationState first = sessions.getOrCreate("first");
+        ConversationState second = sessions.getOrCreate("second");
+        assertSame(first, sessions.getOrCreate("first"));       // Now "second" is the least recently used.
+
+        sessions.getOrCreate("third");
+        assertEquals(2, sessions.size());
+        assertSame(first, sessions.getOrCreate("first"));
+        assertNotSame(second, sessions.getOrCreate("second"));
+    }
+
+    @Test
+    void idleConversationsAreEvicted() throws InterruptedException {
+        sessions.configure(10, 50L, 1);
+        ConversationState idle = sessions.getOrCreate("idle");
+        Thread.sleep(100);
+
+        sessions.getOrCreate("active");
+        assertEquals(1, sessions.size());
+        assertNotSame(idle, sessions.getOrCreate("idle"));
+    }
+
+    @Test
+    void limitIsSpreadOverStripes() {
+        // 10 stripes are rounded up to 16, of 62 conversations each.
+        sessions.configure(1000, HOUR, 10);
+        for (int i = 0; i < 5000; i++)
+            sessions.getOrCreate("session-" + i);
+        assertEquals(16 * 62, sessions.size());
+        assertEquals(16 * 62, sessions.getAll().size());
+    }
+
+    @Test
+    void everyStripeHoldsAtLeastOne() {
+        sessions.configure(1, HOUR, 1);
+        sessions.getOrCreate("first");
+        sessions.getOrCreate("second");
+        assertEquals(1, sessions.size());
+
+        sessions.configure(0, HOUR, 1);
+        sessions.getOrCreate("first");
+        assertEquals(1, sessions.size());
+    }
+
+    @Test
+    void loaderIsOnlyAskedOnAMiss() {
+        sessions.configure(10, HOUR, 1);
+        AtomicInteger calls = new AtomicInteger();
+        ConversationState saved = new ConversationState("saved");
+        sessions.setLoader(sessionId -> {
+            calls.incrementAndGet();
+            return sessionId.equals("saved") ? saved : null;
+        });
+
+        assertSame(saved, sessions.getOrCreate("saved"));
+        assertSame(saved, sessions.getOrCreate("saved"));
+        assertEquals(1, calls.get());
+
+        ConversationState fresh = sessions.getOrCreate("fresh");
+        assertEquals("fresh", fresh.getSessionId());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void validSessionIds() {
+        assertTrue(sessions.isValidSessionId(sessions.newSessionId()));
+        assertTrue(sessions.isValidSessionId("abc_DEF-123"));
+        assertFalse(sessions.isValidSessionId(null));
+        assertFalse(sessions.isValidSessionId(""));
+        assertFalse(sessions.isValidSessionId("../etc/passwd"));
+        assertFalse(sessions.isValidSessionId("a b"));
+        assertFalse(sessions.isValidSessionId("0123456789012345678901234567890123456"));     // 37 characters.
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.oichatbot.managers;
+
+import com.example.oichatbot.domains.ConversationState;
+import com.example.oichatbot.domains.TraitRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Conversations survive eviction, compaction and restarts, and replay stops cleanly at a damaged tail.
+ */
+class StateJournalTest {
+    private static final long MB = 1024 * 1024;
+
+    private final StateJournal journal = StateJournal.getInstance();
+    private final SessionManager sessions = SessionManager.getInstance();
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void keepOneSessionInMemory() {
+        sessions.configure(1, 30 * 60 * 1000L, 1);
+    }
+
+    @AfterEach
+    void reset() {
+        journal.stop();
+        sessions.setChangeListener(null);
+        sessions.setLoader(null);
+        sessions.configure(50000, 30 * 60 * 1000L, 64);
+    }
+
+    @Test
+    void evictedConversationSurvivesCompactionAndRestart() throws Exception {
+        journal.start(directory, 10, 10, 64 * MB, 30);
+        setPatience("first", 0.7f);
+        sessions.getOrCreate("second");     // Evicts "first".
+        assertEquals(1, sessions.size());
+
+        // Stopping takes a snapshot while "first" isn't in memory.
+        journal.stop();
+        sessions.configure(1, 30 * 60 * 1000L, 1);
+        journal.start(directory, 10, 10, 64 * MB, 30);
+        assertEquals(2, journal.getSaved());
+        assertEquals(0.7f, patience(sessions.getOrCreate("first")), 1e-6f);
+    }
+
+    @Test
+    void evictedConversationIsLoadedAgain() throws Exception {
+        journal.start(directory, 10, 10, 64 * MB, 30);
+        setPatience("first", 0.7f);
+        sessions.getOrCreate("second");
+
+        ConversationState first = sessions.getOrCreate("first");
+        assertEquals(0.7f, patience(first), 1e-6f);
+
+        // The loaded conversation keeps being recorded.
+        long written = journal.getRecordsWritten();
+        first.getEmotionValues().set("Patience", 0.2f);
+        awaitWritten(written + 1);
+    }
+
+    @Test
+    void expiredConversationsAreDropped() throws Exception {
+        journal.start(directory, 10, 10, 64 * MB, 0);
+        setPatience("first", 0.7f);
+        sessions.getOrCreate("second");
+
+        journal.stop();
+        sessions.configure(1, 30 * 60 * 1000L, 1);
+        journal.start(directory, 10, 10, 64 * MB, 0);
+        assertEquals(initialPatience(), patience(sessions.getOrCreate("first")), 1e-6f);
+    }
+
+    @Test
+    void tornTailIsSkipped() throws Exception {
+        replayDamaged(file -> file.setLength(file.length() - 3));
+    }
+
+    @Test
+    void checksumMismatchIsSkipped() throws Exception {
+        replayDamaged(file -> {
+            file.seek(file.length() - 1);
+            int last = file.read();
+            file.seek(file.length() - 1);
+            file.write(last ^ 0xff);
+        });
+    }
+
+    /**
+     * Write two conversations in two batches, copy the files as a crash would leave them, damage the last record and replay.
+     */
+    private void replayDamaged(Damage damage) throws Exception {
+        journal.start(directory, 10, 10, 64 * MB, 30);
+        setPatience("first", 0.7f);
+        setPatience("second", 0.4f);
+
+        Path crashed = Files.createDirectory(directory.resolve("crashed"));
+        Path lastJournal = null;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*-*.*")) {
+            for (Path file : files) {
+                Path copy = Files.copy(file, crashed.resolve(file.getFileName()));
+                if (file.getFileName().toString().startsWith("journal-")
+                        && (lastJournal == null || copy.getFileName().compareTo(lastJournal.getFileName()) > 0))
+                    lastJournal = copy;
+            }
+        }
+        try (RandomAccessFile file = new RandomAccessFile(lastJournal.toFile(), "rw")) {
+            damage.apply(file);
+        }
+
+        journal.stop();
+        sessions.configure(1, 30 * 60 * 1000L, 1);
+        journal.start(crashed, 10, 10, 64 * MB, 30);
+        assertEquals(1, journal.getSaved());
+        assertEquals(0.7f, patience(sessions.getOrCreate("first")), 1e-6f);
+        assertEquals(initialPatience(), patience(sessions.getOrCreate("second")), 1e-6f);
+    }
+
+    private void setPatience(String sessionId, float value) throws InterruptedException {
+        long written = journal.getRecordsWritten();
+        sessions.getOrCreate(sessionId).getEmotionValues().set("Patience", value);
+        awaitWritten(written + 1);
+    }
+
+    private void awaitWritten(long records) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (journal.getRecordsWritten() < records && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        assertTrue(journal.getRecordsWritten() >= records, "Journal wasn't flushed in time.");
+    }
+
+    private static float initialPatience() {
+        ConversationState fresh = new ConversationState("fresh");
+        PersonalityManager.getInstance().initState(fresh);
+        return patience(fresh);
+    }
+
+    private static float patience(ConversationState state) {
+        return state.getEmotions().get(TraitRegistry.EMOTIONS.idOf("Patience"));
+    }
+
+    private interface Damage {
+        void apply(RandomAccessFile file) throws IOException;
+    }
+}
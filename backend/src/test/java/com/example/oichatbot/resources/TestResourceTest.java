@@ -0,0 +1,74 @@
+package com.example.oichatbot.resources;
+
+import com.example.oichatbot.domains.ConversationState;
+import com.example.oichatbot.managers.SessionManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.http.Cookie;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Which session a request belongs to: the header wins over the cookie, invalid IDs start a new session,
+ * and the ID always goes back as header (and as cookie unless the client already has it).
+ */
+class TestResourceTest {
+
+    @Test
+    void headerWinsOverCookie() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        ConversationState state = TestResource.resolveSession("from-header", "from-cookie", response);
+        assertEquals("from-header", state.getSessionId());
+        assertEquals("from-header", response.getHeader(TestResource.SESSION_HEADER));
+        assertEquals("from-header", sessionCookie(response).getValue());
+    }
+
+    @Test
+    void cookieWithoutHeader() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        ConversationState state = TestResource.resolveSession(null, "from-cookie", response);
+        assertEquals("from-cookie", state.getSessionId());
+        assertEquals("from-cookie", response.getHeader(TestResource.SESSION_HEADER));
+        assertNull(sessionCookie(response));        // Already set.
+    }
+
+    @Test
+    void invalidHeaderFallsBackToCookie() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        ConversationState state = TestResource.resolveSession("not a valid id", "from-cookie", response);
+        assertEquals("from-cookie", state.getSessionId());
+    }
+
+    @Test
+    void newSessionWithoutValidId() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        ConversationState state = TestResource.resolveSession("../../etc", "", response);
+        assertTrue(SessionManager.getInstance().isValidSessionId(state.getSessionId()));
+        assertEquals(state.getSessionId(), response.getHeader(TestResource.SESSION_HEADER));
+
+        Cookie cookie = sessionCookie(response);
+        assertNotNull(cookie);
+        assertEquals(state.getSessionId(), cookie.getValue());
+        assertEquals("/", cookie.getPath());
+        assertTrue(cookie.isHttpOnly());
+
+        MockHttpServletResponse other = new MockHttpServletResponse();
+        assertNotEquals(state.getSessionId(), TestResource.resolveSession(null, null, other).getSessionId());
+    }
+
+    @Test
+    void sameIdSameConversation() {
+        ConversationState first = TestResource.resolveSession("same-id", null, new MockHttpServletResponse());
+        ConversationState second = TestResource.resolveSession(null, "same-id", new MockHttpServletResponse());
+        assertEquals(first, second);
+    }
+
+    private static Cookie sessionCookie(MockHttpServletResponse response) {
+        return response.getCookie(TestResource.SESSION_COOKIE);
+    }
+}